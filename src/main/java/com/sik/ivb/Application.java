@@ -1,7 +1,13 @@
 package com.sik.ivb;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * @author sik
@@ -14,38 +20,77 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 
-import com.sik.ivb.api.UpdateRecord;
-import com.sik.ivb.events.EventManager;
 import com.sik.ivb.exception.MarkIVException;
-import com.sik.ivb.google.calendar.MarkIVCalendarFeed;
-import com.sik.ivb.utils.MarkIVHelper;
+import com.sik.ivb.site.Site;
+import com.sik.ivb.utils.PropsUtils;
 
+/**
+ * Updates every configured site from one scheduler. The main properties
+ * file either configures a single site itself or lists the sites' own
+ * properties files (SiteProps, comma separated); the sites are loaded and
+ * updated on a pool of SiteThreads threads, and one site failing does not
+ * stop the others.
+ */
 @SpringBootApplication
 @EnableScheduling
 public class Application {
 
-	DateTimeFormatter dtf = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
 	private static final String DAYTIME = "0 0 7-23 * * *"; // hourly 7am-11pm
 	private static final String END_OF_DAY = "0 30 23 * * *"; // daily @ 11:30pm
+	private static final String PROPS_FILE = "/home/sik/markiv/conf/markiv.properties";
+	private static final int DEFAULT_SITE_THREADS = 2;
 	private static final Logger LOG = LogManager.getLogger(Application.class);
 
-	MarkIVHelper m4h;
-	private EventManager em;
-	private MarkIVCalendarFeed feed;
-	private LocalDateTime webLastUpdateTime;
+	private final ExecutorService pool;
+	private final List<Site> sites = new ArrayList<Site>();
 
 	public Application() {
-		LOG.info("Mark IV Mgt - Initialised");
-		this.feed = new MarkIVCalendarFeed();
-		this.em = new EventManager(this.feed.getFeed());
-		this.m4h = new MarkIVHelper(em);
-		this.webLastUpdateTime = LocalDateTime.ofEpochSecond(0, 0, null);
+		this(PROPS_FILE);
+	}
+
+	/**
+	 * @param propsFile a site's properties, or the list of sites' (SiteProps)
+	 */
+	public Application(final String propsFile) {
+		final Properties props = new PropsUtils().readProperties(propsFile);
+		final String siteProps = props == null ? null : props.getProperty("SiteProps");
+		final List<String> siteFiles = new ArrayList<String>();
+		if (siteProps == null || siteProps.trim().isEmpty()) {
+			siteFiles.add(propsFile);
+		} else {
+			for (final String siteFile : siteProps.split(",")) {
+				siteFiles.add(siteFile.trim());
+			}
+		}
+		final int threads = props == null ? DEFAULT_SITE_THREADS
+				: Integer.parseInt(props.getProperty("SiteThreads", String.valueOf(DEFAULT_SITE_THREADS)).trim());
+		this.pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, siteFiles.size())));
+
+		final List<Callable<Site>> loads = new ArrayList<Callable<Site>>();
+		for (final String siteFile : siteFiles) {
+			loads.add(() -> new Site(siteFile));
+		}
+		final List<Future<Site>> loaded = this.invokeAll(loads);
+		for (int i = 0; i < loaded.size(); i++) {
+			try {
+				this.sites.add(loaded.get(i).get());
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MarkIVException("Interrupted loading sites");
+			} catch (final ExecutionException e) {
+				if (siteFiles.size() == 1) {
+					throw new MarkIVException("Site failed to load: " + siteFiles.get(i), e.getCause());
+				}
+				LOG.error("Site failed to load - skipped: " + siteFiles.get(i), e.getCause());
+			}
+		}
+		LOG.info("Mark IV Mgt - Initialised " + this.sites.size() + " site(s)");
 	}
 
 	public static void main(String[] args) throws Exception {
 		new SpringApplication(Application.class).run(args);
 	}
-	
+
 	@Scheduled(cron = DAYTIME)
 	public void m4Update() throws MarkIVException {
 		update(false);
@@ -56,54 +101,39 @@ public class Application {
 		update(true);
 	}
 
-	protected void update(final boolean forceUpdate) {
-		LOG.info("Mark IV Mgt - Checking calendar....");
-
-		em.updateFromFeed(new MarkIVCalendarFeed().getFeed());
-
-		UpdateRecord lu = em.getLatestUpdate();
-
-		LOG.info("Cal updated: " + lu.getLastUpdated().format(dtf) + 
-				" - Web updated: " + this.webLastUpdateTime.format(dtf));
-
-		if (forceUpdate || lu.getLastUpdated().isAfter(this.webLastUpdateTime)) {
-
-			if (!forceUpdate) {
-				LOG.info("Last update: " + lu.getLastUpdated().format(dtf)
-						+ " (" + lu.getEvent().getEventType() + ":"
-						+ lu.getEvent().getSummary() + ")");
-			}
-
-			LOG.info("Mark IV Mgt - Building Gigs Page");
-			m4h.buildGigsPage();
-
-			LOG.info("Mark IV Mgt - Building Availability Page");
-			m4h.buildAvailPage();
-			
-			LOG.info("Mark IV Mgt - Availablity Stats");
-			m4h.doAvailabilityStats();
-			
-			LOG.info("Mark IV Mgt - Building News Page");
-			m4h.buildNewsPage();
-
-			LOG.info("Mark IV Mgt - Building Gallery Page");
-			m4h.buildGalleryPage();
+	public List<Site> getSites() {
+		return this.sites;
+	}
 
-			LOG.info("Mark IV Mgt - Uploading");
+	/**
+	 * Update every site, at most SiteThreads at once - a site that fails is
+	 * logged and retried on the next schedule
+	 * @param forceUpdate
+	 */
+	protected void update(final boolean forceUpdate) {
+		final List<Callable<Boolean>> updates = new ArrayList<Callable<Boolean>>();
+		for (final Site site : this.sites) {
+			updates.add(() -> site.update(forceUpdate));
+		}
+		final List<Future<Boolean>> done = this.invokeAll(updates);
+		for (int i = 0; i < done.size(); i++) {
 			try {
-				if (m4h.uploadFiles()) {
-					this.webLastUpdateTime = LocalDateTime.now();
-					LOG.info("Mark IV Mgt - Last update time set to: "
-							+ this.webLastUpdateTime.toString());
-				}
-				
-			} catch (MarkIVException e) {
-				throw new MarkIVException("Caught Exception: ", e);
+				done.get(i).get();
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MarkIVException("Interrupted updating sites");
+			} catch (final ExecutionException e) {
+				LOG.error(this.sites.get(i).getName() + " - Update failed", e.getCause());
 			}
-			
-			LOG.info("Mark IV Mgt - Completed");
-		} else {
-			LOG.info("Mark IV Mgt - Skipped - no calendar updates");
+		}
+	}
+
+	private <T> List<Future<T>> invokeAll(final List<Callable<T>> tasks) {
+		try {
+			return this.pool.invokeAll(tasks);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MarkIVException("Interrupted running site tasks");
 		}
 	}
 }
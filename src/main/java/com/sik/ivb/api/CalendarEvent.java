@@ -8,6 +8,10 @@ import java.time.LocalDateTime;
 
 import com.sik.ivb.exception.MarkIVException;
 
+/**
+ * An event occurrence. Subclasses may compute the fields - equality and
+ * toString go through the getters.
+ */
 public class CalendarEvent {
 	private LocalDateTime startDate;
 	private LocalDateTime endDate;
@@ -19,6 +23,7 @@ public class CalendarEvent {
 	private EventType eventType;
 	private Boolean eventPrivate;
 	private Boolean confirmed;
+	private String source;
 	
 	    
 	public CalendarEvent() {}
@@ -113,10 +118,22 @@ public class CalendarEvent {
         return this;
     }
     
+    /**
+     * @return the calendar the event came from, null for a single feed
+     */
+    public String getSource() {
+        return this.source;
+    }
+
+    public CalendarEvent withSource(final String source) {
+        this.source = source;
+        return this;
+    }
+
     public CalendarEvent validate() {
-		if (this.startDate ==  null ||
-				this.endDate == null ||
-				this.summary == null) {
+		if (this.getStartDate() ==  null ||
+				this.getEndDate() == null ||
+				this.getSummary() == null) {
 			throw new MarkIVException("Invalid CalendarEvent! Minimum start date, end date & summary required");
 		}
 		return this;
@@ -126,12 +143,12 @@ public class CalendarEvent {
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
-		result = prime * result + ((this.endDate == null) ? 0 : this.endDate.hashCode());
+		result = prime * result + ((this.getEndDate() == null) ? 0 : this.getEndDate().hashCode());
 		result = prime * result
-				+ ((this.location == null) ? 0 : this.location.hashCode());
-		result = prime * result + ((this.summary == null) ? 0 : this.summary.hashCode());
+				+ ((this.getLocation() == null) ? 0 : this.getLocation().hashCode());
+		result = prime * result + ((this.getSummary() == null) ? 0 : this.getSummary().hashCode());
 		result = prime * result
-				+ ((this.startDate == null) ? 0 : this.startDate.hashCode());
+				+ ((this.getStartDate() == null) ? 0 : this.getStartDate().hashCode());
 		return result;
 	}
 
@@ -141,28 +158,28 @@ public class CalendarEvent {
 			return true;
 		if (obj == null)
 			return false;
-		if (this.getClass() != obj.getClass())
+		if (!(obj instanceof CalendarEvent))
 			return false;
 		final CalendarEvent other = (CalendarEvent) obj;
-		if (this.endDate == null) {
-			if (other.endDate != null)
+		if (this.getEndDate() == null) {
+			if (other.getEndDate() != null)
 				return false;
-		} else if (!this.endDate.equals(other.endDate))
+		} else if (!this.getEndDate().equals(other.getEndDate()))
 			return false;
-		if (this.location == null) {
-			if (other.location != null)
+		if (this.getLocation() == null) {
+			if (other.getLocation() != null)
 				return false;
-		} else if (!this.location.equals(other.location))
+		} else if (!this.getLocation().equals(other.getLocation()))
 			return false;
-		if (this.summary == null) {
-			if (other.summary != null)
+		if (this.getSummary() == null) {
+			if (other.getSummary() != null)
 				return false;
-		} else if (!this.summary.equals(other.summary))
+		} else if (!this.getSummary().equals(other.getSummary()))
 			return false;
-		if (this.startDate == null) {
-			if (other.startDate != null)
+		if (this.getStartDate() == null) {
+			if (other.getStartDate() != null)
 				return false;
-		} else if (!this.startDate.equals(other.startDate))
+		} else if (!this.getStartDate().equals(other.getStartDate()))
 			return false;
 		return true;
 	}
@@ -171,23 +188,25 @@ public class CalendarEvent {
     public String toString() {
         final StringBuilder builder = new StringBuilder();
         builder.append("CalendarEvent [startDate=");
-        builder.append(this.startDate);
+        builder.append(this.getStartDate());
         builder.append(", endDate=");
-        builder.append(this.endDate);
+        builder.append(this.getEndDate());
         builder.append(", remarks=");
-        builder.append(this.summary);
+        builder.append(this.getSummary());
         builder.append(", notes=");
-        builder.append(this.notes);
+        builder.append(this.getNotes());
         builder.append(", location=");
-        builder.append(this.location);
+        builder.append(this.getLocation());
         builder.append(", lastUpdated=");
-        builder.append(this.lastUpdated);
+        builder.append(this.getLastUpdated());
         builder.append(", eventType=");
-        builder.append(this.eventType);
+        builder.append(this.getEventType());
         builder.append(", eventPrivate=");
-        builder.append(this.eventPrivate);
+        builder.append(this.isEventPrivate());
         builder.append(", confirmed=");
-        builder.append(this.confirmed);
+        builder.append(this.isConfirmed());
+        builder.append(", source=");
+        builder.append(this.getSource());
         builder.append("]");
         return builder.toString();
     }
@@ -6,5 +6,6 @@ package com.sik.ivb.api;
 public enum RepeatType {
 	MONTHLY,
 	WEEKLY,
-	DAILY
+	DAILY,
+	YEARLY
 }
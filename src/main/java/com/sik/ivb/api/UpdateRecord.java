@@ -1,6 +1,7 @@
 package com.sik.ivb.api;
 
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 
 /**
  * @author sik
@@ -12,7 +13,7 @@ public class UpdateRecord {
     private LocalDateTime lastUpdated;
     public UpdateRecord() {
         super();
-        this.lastUpdated = LocalDateTime.ofEpochSecond(0L, 0, null);
+        this.lastUpdated = LocalDateTime.ofEpochSecond(0L, 0, ZoneOffset.UTC);
     }
     public UpdateRecord(final CalendarEvent lastUpdatedBy, final LocalDateTime lastUpdated) {
         super();
@@ -0,0 +1,132 @@
+package com.sik.ivb.events;
+/**
+ * @author sik
+ */
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import com.sik.ivb.api.CalendarEvent;
+import com.sik.ivb.api.EventType;
+
+/**
+ * Day indexed view of the events over a horizon, built in one sweep over the
+ * start sorted events: for each day a bitset of the event types present and
+ * the events themselves. An event is on every day from the day it starts to
+ * the day it ends. Lookups are O(1) per day.
+ */
+public class AvailabilityMap {
+	private final LocalDate firstDay;
+	private final int days;
+	private final int[] types;
+	private final List<List<CalendarEvent>> events;
+
+	/**
+	 * @param sortedEvents events overlapping the horizon, sorted by start
+	 * @param firstDay
+	 * @param days
+	 */
+	public AvailabilityMap(final List<CalendarEvent> sortedEvents, final LocalDate firstDay, final int days) {
+		this.firstDay = firstDay;
+		this.days = days;
+		this.types = new int[days];
+		this.events = new ArrayList<List<CalendarEvent>>(days);
+
+		final List<CalendarEvent> active = new ArrayList<CalendarEvent>();
+		int next = 0;
+		for (int d = 0; d < days; d++) {
+			final LocalDate day = firstDay.plusDays(d);
+			for (; next < sortedEvents.size()
+					&& !sortedEvents.get(next).getStartDate().toLocalDate().isAfter(day); next++) {
+				active.add(sortedEvents.get(next));
+			}
+			final Iterator<CalendarEvent> itr = active.iterator();
+			while (itr.hasNext()) {
+				if (itr.next().getEndDate().toLocalDate().isBefore(day)) {
+					itr.remove();
+				}
+			}
+			if (active.isEmpty()) {
+				this.events.add(Collections.<CalendarEvent>emptyList());
+				continue;
+			}
+			int bits = 0;
+			for (final CalendarEvent e : active) {
+				bits |= bit(e.getEventType());
+			}
+			this.types[d] = bits;
+			this.events.add(Collections.unmodifiableList(new ArrayList<CalendarEvent>(active)));
+		}
+	}
+
+	public LocalDate getFirstDay() {
+		return this.firstDay;
+	}
+
+	public int getDays() {
+		return this.days;
+	}
+
+	/**
+	 * Does the map cover the supplied days?
+	 * @param from
+	 * @param days
+	 * @return
+	 */
+	public boolean covers(final LocalDate from, final int days) {
+		final long offset = ChronoUnit.DAYS.between(this.firstDay, from);
+		return offset >= 0 && offset + days <= this.days;
+	}
+
+	/**
+	 * Events on the day, in start order - empty if none or outside the map
+	 * @param day
+	 * @return
+	 */
+	public List<CalendarEvent> getEvents(final LocalDate day) {
+		final int d = this.index(day);
+		return d < 0 ? Collections.<CalendarEvent>emptyList() : this.events.get(d);
+	}
+
+	public boolean isClear(final LocalDate day) {
+		final int d = this.index(day);
+		return d < 0 || this.types[d] == 0;
+	}
+
+	/**
+	 * Is there an event of the type on the day?
+	 * @param day
+	 * @param type
+	 * @return
+	 */
+	public boolean has(final LocalDate day, final EventType type) {
+		final int d = this.index(day);
+		return d >= 0 && (this.types[d] & bit(type)) != 0;
+	}
+
+	/**
+	 * Days with no events at all
+	 * @return
+	 */
+	public int getClearDays() {
+		int clear = 0;
+		for (final int t : this.types) {
+			if (t == 0) {
+				clear++;
+			}
+		}
+		return clear;
+	}
+
+	private int index(final LocalDate day) {
+		final long d = ChronoUnit.DAYS.between(this.firstDay, day);
+		return d < 0 || d >= this.days ? -1 : (int) d;
+	}
+
+	private static int bit(final EventType type) {
+		return 1 << type.ordinal();
+	}
+}
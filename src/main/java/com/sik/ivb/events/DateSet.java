@@ -0,0 +1,211 @@
+package com.sik.ivb.events;
+/**
+ * @author sik
+ */
+import java.util.Arrays;
+
+import com.sik.ivb.utils.M4DateUtils;
+
+/**
+ * Sorted, primitive set of recurrence instances as used by EXDATE and
+ * RECURRENCE-ID. Following RFC 5545 a DATE-TIME entry excludes the instance
+ * starting at exactly that time, a DATE (VALUE=DATE) entry excludes any
+ * instance starting on that day. Lookups are binary searches on local epoch
+ * seconds/days, so nothing is allocated per occurrence.
+ * <p>
+ * Entries are appended as they are parsed and sorted and deduplicated once,
+ * when the set is first read. Sets are filled by one thread before they are
+ * shared; after that they are only read.
+ */
+public class DateSet {
+	static final long SECONDS_PER_DAY = 86400L;
+	private static final int INITIAL_CAPACITY = 4;
+	private static final long[] NONE = new long[0];
+
+	private long[] instants = NONE;
+	private int instantCount;
+	private long[] days = NONE;
+	private int dayCount;
+	private volatile boolean sealed = true;
+
+	/**
+	 * Add an entry
+	 * @param epochSecond local epoch seconds
+	 * @param dateOnly the value was a DATE - matches the whole day
+	 */
+	void add(final long epochSecond, final boolean dateOnly) {
+		if (dateOnly) {
+			this.days = append(this.days, this.dayCount++, Math.floorDiv(epochSecond, SECONDS_PER_DAY));
+		} else {
+			this.instants = append(this.instants, this.instantCount++, epochSecond);
+		}
+		this.sealed = false;
+	}
+
+	/**
+	 * Add all of the other set's entries - a merge of the two sorted sets
+	 * @param other
+	 */
+	void addAll(final DateSet other) {
+		other.seal();
+		this.seal();
+		this.instants = union(this.instants, other.instants);
+		this.instantCount = this.instants.length;
+		this.days = union(this.days, other.days);
+		this.dayCount = this.days.length;
+	}
+
+	/**
+	 * Does the set exclude the instance starting at the supplied time?
+	 * @param epochSecond local epoch seconds
+	 * @return
+	 */
+	public boolean contains(final long epochSecond) {
+		this.seal();
+		return Arrays.binarySearch(this.instants, epochSecond) >= 0
+				|| (this.days.length > 0
+						&& Arrays.binarySearch(this.days, Math.floorDiv(epochSecond, SECONDS_PER_DAY)) >= 0);
+	}
+
+	/**
+	 * @return the DATE-TIME entries, local epoch seconds - not a copy
+	 */
+	long[] getInstants() {
+		this.seal();
+		return this.instants;
+	}
+
+	/**
+	 * @return the DATE entries, local epoch days - not a copy
+	 */
+	long[] getDays() {
+		this.seal();
+		return this.days;
+	}
+
+	public boolean isEmpty() {
+		this.seal();
+		return this.instantCount == 0 && this.dayCount == 0;
+	}
+
+	public int size() {
+		this.seal();
+		return this.instantCount + this.dayCount;
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof DateSet)) {
+			return false;
+		}
+		final DateSet other = (DateSet) obj;
+		this.seal();
+		other.seal();
+		return Arrays.equals(this.instants, other.instants) && Arrays.equals(this.days, other.days);
+	}
+
+	@Override
+	public int hashCode() {
+		this.seal();
+		return 31 * Arrays.hashCode(this.instants) + Arrays.hashCode(this.days);
+	}
+
+	@Override
+	public String toString() {
+		this.seal();
+		final M4DateUtils dateUtils = new M4DateUtils();
+		final StringBuilder builder = new StringBuilder("[");
+		for (final long instant : this.instants) {
+			builder.append(builder.length() > 1 ? ", " : "").append(dateUtils.fromEpochSecond(instant));
+		}
+		for (final long day : this.days) {
+			builder.append(builder.length() > 1 ? ", " : "")
+					.append(dateUtils.fromEpochSecond(day * SECONDS_PER_DAY).toLocalDate());
+		}
+		return builder.append("]").toString();
+	}
+
+	/**
+	 * Sort and deduplicate the entries added since the last read - a read of
+	 * the volatile flag once sealed, the lock only taken to seal
+	 */
+	private void seal() {
+		if (!this.sealed) {
+			this.sealLocked();
+		}
+	}
+
+	private synchronized void sealLocked() {
+		if (this.sealed) {
+			return;
+		}
+		this.instants = distinct(this.instants, this.instantCount);
+		this.instantCount = this.instants.length;
+		this.days = distinct(this.days, this.dayCount);
+		this.dayCount = this.days.length;
+		this.sealed = true;
+	}
+
+	/**
+	 * @param values
+	 * @param size entries in use - the array is full once sealed, so a sealed
+	 *        array, which may be shared, is never written
+	 * @param value
+	 * @return values, or a larger copy of them, with the value at size
+	 */
+	private static long[] append(final long[] values, final int size, final long value) {
+		final long[] grown = size < values.length
+				? values
+				: Arrays.copyOf(values, Math.max(INITIAL_CAPACITY, size * 2));
+		grown[size] = value;
+		return grown;
+	}
+
+	/**
+	 * @return the first size values sorted, without duplicates, in an array
+	 *         of exactly that length
+	 */
+	private static long[] distinct(final long[] values, final int size) {
+		if (size == 0) {
+			return NONE;
+		}
+		Arrays.sort(values, 0, size);
+		int n = 1;
+		for (int i = 1; i < size; i++) {
+			if (values[i] != values[n - 1]) {
+				values[n++] = values[i];
+			}
+		}
+		return n == values.length ? values : Arrays.copyOf(values, n);
+	}
+
+	/**
+	 * @return the entries of two sorted, distinct arrays, sorted and distinct
+	 */
+	private static long[] union(final long[] a, final long[] b) {
+		if (b.length == 0) {
+			return a;
+		}
+		if (a.length == 0) {
+			return b;
+		}
+		final long[] merged = new long[a.length + b.length];
+		int i = 0;
+		int j = 0;
+		int n = 0;
+		while (i < a.length || j < b.length) {
+			if (j >= b.length || (i < a.length && a[i] < b[j])) {
+				merged[n++] = a[i++];
+			} else if (i >= a.length || b[j] < a[i]) {
+				merged[n++] = b[j++];
+			} else {
+				merged[n++] = a[i++];
+				j++;
+			}
+		}
+		return n == merged.length ? merged : Arrays.copyOf(merged, n);
+	}
+}
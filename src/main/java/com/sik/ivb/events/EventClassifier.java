@@ -0,0 +1,204 @@
+package com.sik.ivb.events;
+/**
+ * @author sik
+ */
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import com.sik.ivb.api.M4Fields;
+
+/**
+ * Classifies event text against keyword vocabularies - gig, unavailable,
+ * private, confirmed, wedding - in a single pass. The keywords are compiled into an
+ * Aho-Corasick automaton over case folded characters, with the failure links
+ * folded into a full transition table, so each character of the text costs
+ * one table lookup whatever the number of keywords and no lower case copy is
+ * made.
+ * <p>
+ * The vocabularies are read from properties (GigKeywords,
+ * UnavailableKeywords, PrivateKeywords, ConfirmedKeywords, WeddingKeywords -
+ * comma separated) and default to the M4Fields keywords.
+ */
+public class EventClassifier {
+	public static final int GIG = 1;
+	public static final int UNAVAILABLE = 1 << 1;
+	public static final int PRIVATE = 1 << 2;
+	public static final int CONFIRMED = 1 << 3;
+	public static final int WEDDING = 1 << 4;
+
+	public static final String GIG_KEYWORDS = "GigKeywords";
+	public static final String UNAVAILABLE_KEYWORDS = "UnavailableKeywords";
+	public static final String PRIVATE_KEYWORDS = "PrivateKeywords";
+	public static final String CONFIRMED_KEYWORDS = "ConfirmedKeywords";
+	public static final String WEDDING_KEYWORDS = "WeddingKeywords";
+
+	private static final int ASCII = 128;
+	private static final int ROOT = 0;
+	private static final int OTHER = 0;
+
+	public static final EventClassifier DEFAULT = fromProperties(null);
+
+	private final int[] asciiColumns = new int[ASCII];
+	private final Map<Character, Integer> columns = new HashMap<Character, Integer>();
+	private final int width;
+	private final int[] transitions;
+	private final int[] outputs;
+
+	/**
+	 * @param gig keywords marking a gig
+	 * @param unavailable keywords marking unavailability
+	 * @param priv keywords marking a private event
+	 * @param confirmed keywords marking a confirmed event
+	 * @param wedding keywords marking a wedding
+	 */
+	public EventClassifier(final List<String> gig, final List<String> unavailable, final List<String> priv,
+			final List<String> confirmed, final List<String> wedding) {
+		final List<String> keywords = new ArrayList<String>();
+		final List<Integer> categories = new ArrayList<Integer>();
+		this.addAll(keywords, categories, gig, GIG);
+		this.addAll(keywords, categories, unavailable, UNAVAILABLE);
+		this.addAll(keywords, categories, priv, PRIVATE);
+		this.addAll(keywords, categories, confirmed, CONFIRMED);
+		this.addAll(keywords, categories, wedding, WEDDING);
+		this.width = this.columns.size() + this.distinctAscii() + 1;
+
+		// trie
+		final List<int[]> trie = new ArrayList<int[]>();
+		final List<Integer> out = new ArrayList<Integer>();
+		trie.add(new int[this.width]);
+		out.add(0);
+		for (int k = 0; k < keywords.size(); k++) {
+			int state = ROOT;
+			for (int i = 0; i < keywords.get(k).length(); i++) {
+				final int col = this.column(keywords.get(k).charAt(i));
+				if (trie.get(state)[col] == ROOT) {
+					trie.get(state)[col] = trie.size();
+					trie.add(new int[this.width]);
+					out.add(0);
+				}
+				state = trie.get(state)[col];
+			}
+			out.set(state, out.get(state) | categories.get(k));
+		}
+
+		// breadth first: fold the failure links into the transitions
+		final int states = trie.size();
+		this.transitions = new int[states * this.width];
+		this.outputs = new int[states];
+		final int[] fail = new int[states];
+		final int[] queue = new int[states];
+		int head = 0;
+		int tail = 0;
+		for (int col = 0; col < this.width; col++) {
+			final int next = col == OTHER ? ROOT : trie.get(ROOT)[col];
+			this.transitions[col] = next;
+			if (next != ROOT) {
+				fail[next] = ROOT;
+				queue[tail++] = next;
+			}
+		}
+		this.outputs[ROOT] = out.get(ROOT);
+		while (head < tail) {
+			final int state = queue[head++];
+			this.outputs[state] = out.get(state) | this.outputs[fail[state]];
+			for (int col = 0; col < this.width; col++) {
+				final int next = col == OTHER ? ROOT : trie.get(state)[col];
+				if (next != ROOT) {
+					fail[next] = this.transitions[fail[state] * this.width + col];
+					queue[tail++] = next;
+					this.transitions[state * this.width + col] = next;
+				} else {
+					this.transitions[state * this.width + col] = this.transitions[fail[state] * this.width + col];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Vocabularies from the properties, the defaults for those missing
+	 * @param props may be null
+	 * @return
+	 */
+	public static EventClassifier fromProperties(final Properties props) {
+		return new EventClassifier(
+				keywords(props, GIG_KEYWORDS, M4Fields.GIG),
+				keywords(props, UNAVAILABLE_KEYWORDS, M4Fields.UNAVAILABLE + M4Fields.COMMA + M4Fields.NOT_AVAILABLE),
+				keywords(props, PRIVATE_KEYWORDS, M4Fields.PRIVATE),
+				keywords(props, CONFIRMED_KEYWORDS, M4Fields.CONFIRMED),
+				keywords(props, WEDDING_KEYWORDS, M4Fields.WEDDING));
+	}
+
+	/**
+	 * The categories whose keywords appear in the text
+	 * @param text may be null
+	 * @return bitmask of GIG, UNAVAILABLE, PRIVATE, CONFIRMED, WEDDING
+	 */
+	public int classify(final CharSequence text) {
+		if (text == null) {
+			return 0;
+		}
+		int state = ROOT;
+		int found = 0;
+		for (int i = 0; i < text.length(); i++) {
+			state = this.transitions[state * this.width + this.column(text.charAt(i))];
+			found |= this.outputs[state];
+		}
+		return found;
+	}
+
+	private int column(final char c) {
+		final char folded = Character.toLowerCase(c);
+		if (folded < ASCII) {
+			return this.asciiColumns[folded];
+		}
+		final Integer col = this.columns.get(folded);
+		return col == null ? OTHER : col;
+	}
+
+	private void addAll(final List<String> keywords, final List<Integer> categories, final List<String> words,
+			final int category) {
+		for (final String word : words) {
+			final String folded = word.trim().toLowerCase();
+			if (folded.isEmpty()) {
+				continue;
+			}
+			keywords.add(folded);
+			categories.add(category);
+			for (int i = 0; i < folded.length(); i++) {
+				final char c = folded.charAt(i);
+				if (c < ASCII) {
+					if (this.asciiColumns[c] == OTHER) {
+						this.asciiColumns[c] = -1;
+					}
+				} else if (!this.columns.containsKey(c)) {
+					this.columns.put(c, this.columns.size() + 1);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Number the ASCII characters used after the others
+	 */
+	private int distinctAscii() {
+		int next = this.columns.size() + 1;
+		for (int c = 0; c < ASCII; c++) {
+			if (this.asciiColumns[c] == -1) {
+				this.asciiColumns[c] = next++;
+			}
+		}
+		return next - this.columns.size() - 1;
+	}
+
+	private static List<String> keywords(final Properties props, final String key, final String defaults) {
+		final String value = props == null ? null : props.getProperty(key);
+		final List<String> words = new ArrayList<String>();
+		for (final String word : (value == null ? defaults : value).split(M4Fields.COMMA)) {
+			words.add(word);
+		}
+		return words;
+	}
+}
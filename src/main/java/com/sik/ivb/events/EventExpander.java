@@ -0,0 +1,140 @@
+package com.sik.ivb.events;
+/**
+ * @author sik
+ */
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.PrimitiveIterator;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sik.ivb.api.CalendarEvent;
+import com.sik.ivb.api.M4Fields;
+import com.sik.ivb.exception.MarkIVException;
+import com.sik.ivb.google.calendar.CalField;
+import com.sik.ivb.utils.M4DateUtils;
+
+/**
+ * Expands RawEvents into occurrences: singles and bounded recurring events
+ * when the feed is loaded, open ended series per date range query. Stateless,
+ * so shared by the event manager and its snapshots.
+ */
+class EventExpander {
+	private static final Logger LOG = LogManager.getLogger(EventExpander.class);
+
+	private final M4DateUtils dateUtils = new M4DateUtils();
+	private final EventUtility eu;
+
+	EventExpander(final EventUtility eu) {
+		this.eu = eu;
+	}
+
+	/**
+	 * Add the event's (recent) occurrences to events - an open ended
+	 * recurring event is expanded on demand instead
+	 */
+	void expandEvent(final RawEvent evt,
+			final EventStore.Builder events) {
+		if (evt.getStart() == RawEvent.NO_DATE) {
+			throw new MarkIVException("DTSTART is null for event: " + evt);
+		}
+		if (this.eu.rrulePresent(evt)) {
+			if (!this.eu.rruleOpenEnded(evt)) {
+				this.doRepeats(evt, this.recurrenceOf(evt), this.dateUtils.toEpochSecond(this.recentCutOff()),
+						Long.MAX_VALUE, events);
+			}
+		} else {
+			LocalDateTime sDate = this.dateUtils.fromEpochSecond(evt.getStart());
+			LocalDateTime eDate = evt.getEnd() == RawEvent.NO_DATE
+					? this.dateUtils.setEndOf(sDate)
+					: this.dateUtils.fromEpochSecond(evt.getEnd());
+			if (this.dateUtils.isRecent(eDate)) {
+				this.debug("\tAdding single: " + evt.get(CalField.SUMMARY) + M4Fields.COLON + sDate);
+				events.add(evt, EventStore.toMicros(sDate), EventStore.toMicros(eDate));
+			} 
+		}
+	}
+
+	/**
+	 * Add the occurrences of a recurring event overlapping [from, to),
+	 * skipping EXDATEs
+	 */
+	private void doRepeats(final RawEvent evt, final Recurrence recurrence,
+			final long from, final long to, final EventStore.Builder events) {
+		this.debug("About to add repeats for Repeat Rule: " + evt.getRRule());
+		this.debug("Event: " + evt);
+		final PrimitiveIterator.OfLong starts = recurrence.occurrences(from, to);
+
+		while (starts.hasNext()) {
+			final long start = starts.nextLong();
+			final LocalDateTime sDate = this.dateUtils.fromEpochSecond(start);
+			if (!evt.isExcluded(start)) {
+				// ends just before DTEND, as subtractOneMillisecond does
+				final long end = evt.getEnd() == RawEvent.NO_DATE
+						? EventStore.toMicros(this.dateUtils.setEndOf(sDate))
+						: (start + recurrence.getDuration()) * EventStore.MICROS_PER_SECOND - 1;
+				this.debug("\tAdding rept'g evt:" + evt.get(CalField.SUMMARY) + " on " + sDate.toString());
+				events.add(evt, start * EventStore.MICROS_PER_SECOND, end);
+			} else {
+				this.debug("\tExcluded date: " + sDate + " - not added because it's in " + evt.getExDates()
+						+ " or overridden " + evt.getOverrides());
+			}
+		}
+	}
+
+	/**
+	 * Add the occurrences of the open ended series overlapping [from, to]
+	 */
+	void expandOpenSeries(final List<RawEvent> openSeries, final LocalDateTime from, final LocalDateTime to,
+			final List<CalendarEvent> events) {
+		final long fromSecond = this.dateUtils.toEpochSecond(from);
+		final long toSecond = this.dateUtils.toEpochSecond(to) + 1;
+		final EventStore.Builder occurrences = new EventStore.Builder();
+		for (final RawEvent evt : openSeries) {
+			this.doRepeats(evt, this.recurrenceOf(evt), fromSecond, toSecond, occurrences);
+		}
+		for (final CalendarEvent e : occurrences.build(this.eu).asList()) {
+			if (!e.getStartDate().isAfter(to) && !e.getEndDate().isBefore(from)) {
+				events.add(e);
+			}
+		}
+	}
+
+	/**
+	 * The series as one event at its DTSTART - what it is and when it was
+	 * last updated
+	 * @param evt
+	 * @return
+	 */
+	CalendarEvent describe(final RawEvent evt) {
+		final long end = evt.getEnd() == RawEvent.NO_DATE
+				? EventStore.toMicros(this.dateUtils.setEndOf(this.dateUtils.fromEpochSecond(evt.getStart())))
+				: evt.getEnd() * EventStore.MICROS_PER_SECOND - 1;
+		final EventStore.Builder one = new EventStore.Builder();
+		one.add(evt, evt.getStart() * EventStore.MICROS_PER_SECOND, end);
+		return one.build(this.eu).asList().get(0);
+	}
+
+	private Recurrence recurrenceOf(final RawEvent evt) {
+		final long duration;
+		if (evt.getEnd() != RawEvent.NO_DATE) {
+			duration = evt.getEnd() - evt.getStart();
+		} else {
+			duration = this.dateUtils.toEpochSecond(this.dateUtils.setEndOf(
+					this.dateUtils.fromEpochSecond(evt.getStart()))) - evt.getStart();
+			this.debug("End date missing on: " + evt + " - using end of day");
+		}
+		return new Recurrence(evt.getRRule(), evt.getStart(), duration);
+	}
+
+	LocalDateTime recentCutOff() {
+		return LocalDateTime.now().minusDays(M4DateUtils.OBSOLETE_DAY_LIMIT);
+	}
+
+	private void debug(String msg) {
+		if (LOG.isDebugEnabled()) {
+			LOG.debug(msg);
+		}
+	}
+}
@@ -1,238 +1,541 @@
 package com.sik.ivb.events;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 //import org.joda.time.LocalDateTime;
 
 import com.sik.ivb.api.CalendarEvent;
-import com.sik.ivb.api.CalendarEventComparator;
 import com.sik.ivb.api.EventType;
 import com.sik.ivb.api.M4Date;
 import com.sik.ivb.api.M4Fields;
-import com.sik.ivb.api.RepeatType;
 import com.sik.ivb.api.UpdateRecord;
 import com.sik.ivb.exception.MarkIVException;
-import com.sik.ivb.google.calendar.CalFields;
-import com.sik.ivb.utils.M4DateUtils;
+import com.sik.ivb.google.calendar.CalField;
+import com.sik.ivb.google.calendar.MarkIVCalendarFeed;
 
 public class EventManager {
 	private static final Logger LOG = LogManager.getLogger(EventManager.class);
 
-	private List<CalendarEvent> allEvents;
-	private final M4DateUtils dateUtils = new M4DateUtils();
-	private final EventUtility eu = new EventUtility();
+	private final EventUtility eu;
+	private final int parallelThreshold;
+	private final boolean incremental;
+	private Map<String, UidRecord> uidRecords = new HashMap<String, UidRecord>();
+	private EventStore.Builder occurrences = new EventStore.Builder();
+	private final EventExpander expander;
+	private final AtomicReference<EventSnapshot> snapshot;
+	private Map<String, EventManager> calendars = new LinkedHashMap<String, EventManager>();
+	private Path snapshotFile;
+	private ExecutorService fetchPool;
+	private int fetchThreads;
 	
 	public EventManager(InputStream feed) {
+		this(feed, 0, false);
+	}
+
+	public EventManager(ByteBuffer feed) {
+		this(feed, 0, false);
+	}
+
+	/**
+	 * @param feed
+	 * @param parallelThreshold feeds larger than this many bytes are split at
+	 *        VEVENT boundaries and parsed on the fork/join pool (0 = never)
+	 * @param incremental after the first load only re-expand VEVENTs whose
+	 *        LAST-MODIFIED/SEQUENCE changed (takes precedence over parallel)
+	 */
+	public EventManager(InputStream feed, int parallelThreshold, boolean incremental) {
+		this(feed, parallelThreshold, incremental, EventClassifier.DEFAULT);
+	}
+
+	public EventManager(ByteBuffer feed, int parallelThreshold, boolean incremental) {
+		this(feed, parallelThreshold, incremental, EventClassifier.DEFAULT);
+	}
+
+	/**
+	 * @param feed
+	 * @param parallelThreshold
+	 * @param incremental
+	 * @param classifier keyword vocabularies for type, private and confirmed
+	 */
+	public EventManager(InputStream feed, int parallelThreshold, boolean incremental,
+			EventClassifier classifier) {
+		this(parallelThreshold, incremental, classifier);
 		this.updateFromFeed(feed);
 	}
 
-	public void updateFromFeed(InputStream feed) {
-		this.allEvents = this.buildEvents(eu.buildMapFromCalendarFeed(feed));
+	public EventManager(ByteBuffer feed, int parallelThreshold, boolean incremental,
+			EventClassifier classifier) {
+		this(parallelThreshold, incremental, classifier);
+		this.updateFromFeed(feed);
 	}
-	
-	public List<CalendarEvent> getAllEvents() {
-		return this.allEvents;
+
+	/**
+	 * Events from several calendars
+	 * @param feeds a feed per calendar
+	 * @param threads most calendars fetched and parsed at once
+	 * @param parallelThreshold
+	 * @param incremental
+	 * @param classifier
+	 * @see #updateFromFeeds(List, int)
+	 */
+	public EventManager(List<MarkIVCalendarFeed> feeds, int threads, int parallelThreshold, boolean incremental,
+			EventClassifier classifier) {
+		this(parallelThreshold, incremental, classifier);
+		this.loadFromFeeds(feeds, threads);
 	}
-	
+
 	/**
-	 * Get events after @param startTime
-	 * 
-	 * @param startTime
-	 * @return
+	 * An empty calendar - fill it with restore or loadFromFeeds
+	 * @param parallelThreshold
+	 * @param incremental
+	 * @param classifier
 	 */
-	public List<CalendarEvent> getEventsAfter(final long startTime) {
-		final LocalDateTime fromDate = LocalDateTime.ofEpochSecond(startTime, 0, null);
-		final List<CalendarEvent> filteredEvents = new ArrayList<CalendarEvent>();
-		for (final CalendarEvent e : this.allEvents) {
-			if (e.getStartDate().isAfter(fromDate)) {
-				filteredEvents.add(e);
-			}
+	public EventManager(int parallelThreshold, boolean incremental, EventClassifier classifier) {
+		this.parallelThreshold = parallelThreshold;
+		this.incremental = incremental;
+		this.eu = new EventUtility(classifier);
+		this.expander = new EventExpander(this.eu);
+		this.snapshot = new AtomicReference<EventSnapshot>(
+				new EventSnapshot(0L, EventStore.EMPTY, Collections.<RawEvent>emptyList(), this.expander));
+	}
+
+	/**
+	 * Refresh from the configured source: the mapped FeedFile, or FeedUrl
+	 * revalidated with ETag/If-Modified-Since.
+	 * @param feed
+	 * @return false if the feed was not modified (HTTP 304) and nothing was parsed
+	 */
+	public synchronized boolean updateFromFeed(MarkIVCalendarFeed feed) {
+		if (feed.isFileFeed()) {
+			this.updateFromFeed(feed.getMappedFeed());
+			return true;
 		}
-		return filteredEvents;
+		final InputStream in = feed.getFeedIfModified();
+		if (in == null) {
+			LOG.info("Calendar feed not modified - parse skipped");
+			return false;
+		}
+		this.updateFromFeed(in);
+		feed.commitValidators();
+		return true;
 	}
 
 	/**
-	 * Get events on @param dateTime
-	 * 
-	 * @param dateTime
-	 * @return
+	 * Refresh from several calendars. Each calendar is fetched, parsed and
+	 * expanded into its own sorted store by a manager of its own, on a pool of
+	 * at most threads threads, so the refresh takes about as long as the
+	 * slowest calendar rather than all of them. The stores are then k-way
+	 * merged, each event tagged with its calendar's name. A single feed is
+	 * refreshed as by updateFromFeed.
+	 * @param feeds a feed per calendar - the same ones each time, they hold the
+	 *        validators for conditional GETs
+	 * @param threads
+	 * @return false if no calendar was modified and nothing was parsed
 	 */
-	public List<CalendarEvent> getEventsOn(final M4Date dateTime) {
-		final List<CalendarEvent> filteredEvents = new ArrayList<CalendarEvent>();
-		for (final CalendarEvent event : this.allEvents) {
-			this.debug(">>>>> event=" + event);
-			
-			if (eu.isDateInEvent(dateTime, event)
-					|| eu.isEventInDate(dateTime, event)) {
-				filteredEvents.add(event);
+	public synchronized boolean updateFromFeeds(final List<MarkIVCalendarFeed> feeds, final int threads) {
+		if (feeds.size() == 1 && this.calendars.isEmpty()) {
+			return this.updateFromFeed(feeds.get(0));
+		}
+		final Map<String, EventManager> previous = this.calendars;
+		final Map<String, EventManager> current = new LinkedHashMap<String, EventManager>();
+		final List<Callable<Boolean>> updates = new ArrayList<Callable<Boolean>>(feeds.size());
+		for (final MarkIVCalendarFeed feed : feeds) {
+			final EventManager calendar = previous.get(feed.getName());
+			if (calendar == null) {
+				final EventManager added = new EventManager(this.parallelThreshold, this.incremental, this.getClassifier());
+				updates.add(() -> added.loadFromFeed(feed));
+				current.put(feed.getName(), added);
+			} else {
+				updates.add(() -> calendar.updateFromFeed(feed));
+				current.put(feed.getName(), calendar);
 			}
 		}
-		return filteredEvents;
-	}
+		boolean modified = !current.keySet().equals(previous.keySet());
+		try {
+			for (final Future<Boolean> update : this.fetchPool(threads).invokeAll(updates)) {
+				modified |= update.get();
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MarkIVException("Interrupted refreshing calendars");
+		} catch (final ExecutionException e) {
+			throw e.getCause() instanceof MarkIVException
+					? (MarkIVException) e.getCause()
+					: new MarkIVException("Error refreshing calendars", e.getCause());
+		}
+		this.calendars = current;
+		if (!modified) {
+			LOG.info("No calendar modified - merge skipped");
+			return false;
+		}
 
-	
+		final List<String> sources = new ArrayList<String>(current.size());
+		final List<EventStore> runs = new ArrayList<EventStore>(current.size());
+		final List<RawEvent> openSeries = new ArrayList<RawEvent>();
+		for (final Map.Entry<String, EventManager> calendar : current.entrySet()) {
+			final EventSnapshot run = calendar.getValue().getSnapshot();
+			sources.add(calendar.getKey());
+			runs.add(run.getStore());
+			openSeries.addAll(run.getOpenSeries());
+		}
+		final EventStore store = EventStore.merge(sources, runs);
+		LOG.info(store.size() + " CalendarEvent(s) merged from " + sources.size() + " calendars " + sources);
+		this.publish(store, openSeries);
+		return true;
+	}
 
 	/**
-	 * Get events by type
-	 * 
-	 * @param data
-	 *            .calendarExportFilename
-	 * @param eventType
-	 * @param startTime
-	 * @param suppressDupes
+	 * The pool the calendars are fetched on - made on first use and kept for
+	 * later refreshes, remade only if the number of threads changes
+	 * @param threads
 	 * @return
 	 */
-	public List<CalendarEvent> getByType(final EventType eventType,
-			final long startTime, final boolean suppressDupes) {
-		final List<CalendarEvent> filteredEvents = new ArrayList<CalendarEvent>();
-		for (final CalendarEvent e : this.allEvents) {
-			if (e.getStartDate().isAfter(LocalDateTime.ofEpochSecond(startTime, 0, null))) {
-				if (e.getEventType() == eventType) {
-					if (!suppressDupes || !eu.eventExists(e, filteredEvents)) {
-						filteredEvents.add(e);
-					}
-				}
+	private ExecutorService fetchPool(final int threads) {
+		final int size = Math.max(1, threads);
+		if (this.fetchPool == null || this.fetchThreads != size) {
+			if (this.fetchPool != null) {
+				this.fetchPool.shutdown();
 			}
+			this.fetchPool = Executors.newFixedThreadPool(size, task -> {
+				final Thread fetcher = new Thread(task, "calendar-fetch");
+				fetcher.setDaemon(true);
+				return fetcher;
+			});
+			this.fetchThreads = size;
 		}
-		return filteredEvents;
+		return this.fetchPool;
 	}
-	
+
 	/**
-	 * Get confirmed gigs
-	 * @return
+	 * Load the calendars in full, even those whose cached copy is current -
+	 * for a first load, or to replace a restored snapshot
+	 * @param feeds
+	 * @param threads
+	 * @see #updateFromFeeds(List, int)
 	 */
-	public List<CalendarEvent> getConfirmedGigs() {
-		final List<CalendarEvent> filteredEvents = new ArrayList<CalendarEvent>();
-		for (final CalendarEvent e : this.getByType(EventType.GIG, System.currentTimeMillis(), true)) {
-			if (e.isConfirmed()) {
-				filteredEvents.add(e);
+	public synchronized void loadFromFeeds(final List<MarkIVCalendarFeed> feeds, final int threads) {
+		this.calendars = new LinkedHashMap<String, EventManager>();
+		if (feeds.size() == 1) {
+			this.loadFromFeed(feeds.get(0));
+		} else {
+			this.updateFromFeeds(feeds, threads);
+		}
+	}
+
+	/**
+	 * Warm start: publish the snapshot an earlier run saved in the file, and
+	 * save each refresh's snapshot there from now on
+	 * @param file
+	 * @return false if there was no usable snapshot - the calendar is unchanged
+	 */
+	public synchronized boolean restore(final Path file) {
+		this.snapshotFile = file;
+		if (!Files.isReadable(file)) {
+			return false;
+		}
+		try {
+			final EventSnapshot restored = SnapshotFile.read(file, this.expander);
+			if (restored == null) {
+				LOG.warn("Snapshot file of another format - ignored: " + file);
+				return false;
 			}
+			this.snapshot.set(restored);
+			LOG.info(restored.getAllEvents().size() + " CalendarEvent(s) restored from " + file);
+			return true;
+		} catch (final IOException | RuntimeException e) {
+			LOG.warn("Snapshot file unreadable - ignored: " + file + " (" + e + ")");
+			return false;
 		}
-		return filteredEvents;
 	}
 
 	/**
-	 * Get latest update
-	 * 
-	 * @return
+	 * First load: the whole feed, even if the cached copy is current
 	 */
-	public UpdateRecord getLatestUpdate() {
-		final UpdateRecord ur = new UpdateRecord();
-		for (final CalendarEvent e : this.allEvents) {
-			if (e.getLastUpdated().isAfter(ur.getLastUpdated())) {
-				ur.setLastUpdated(e.getLastUpdated());
-				ur.setEvent(e);
+	private boolean loadFromFeed(MarkIVCalendarFeed feed) {
+		if (feed.isFileFeed()) {
+			this.updateFromFeed(feed.getMappedFeed());
+		} else {
+			this.updateFromFeed(feed.getFeed());
+			feed.commitValidators();
+		}
+		return true;
+	}
+
+	public synchronized void updateFromFeed(InputStream feed) {
+		if (this.incremental) {
+			this.mergeChanges(eu.buildRawEvents(feed));
+		} else if (this.parallelThreshold > 0) {
+			try {
+				final byte[] buffered = feed.readAllBytes();
+				feed.close();
+				this.updateFromFeed(ByteBuffer.wrap(buffered));
+				return;
+			} catch (final IOException e) {
+				throw new MarkIVException("I/O Error buffering feed: " + e.getMessage());
 			}
+		} else {
+			final List<RawEvent> series = new ArrayList<RawEvent>();
+			this.publish(this.buildEvents(eu.buildRawEvents(feed), series), series);
 		}
-		return ur;
 	}
 
+	public synchronized void updateFromFeed(ByteBuffer feed) {
+		final int size = feed.remaining();
+		if (this.incremental) {
+			this.mergeChanges(eu.buildRawEvents(feed));
+		} else if (this.parallelThreshold > 0 && size > this.parallelThreshold) {
+			final List<RawEvent> rawEvents = ForkJoinPool.commonPool()
+					.invoke(new FeedSplitTask(feed, this.parallelThreshold, eu::parseRawEvents));
+			final List<RawEvent> series = new ArrayList<RawEvent>();
+			final EventStore events = this.expandEvents(rawEvents, series, true);
+			LOG.info(events.size() + " CalendarEvent(s) generated from " + size
+					+ " bytes (parallel)");
+			this.publish(events, series);
+		} else {
+			final List<RawEvent> series = new ArrayList<RawEvent>();
+			this.publish(this.buildEvents(eu.buildRawEvents(feed), series), series);
+		}
+	}
 	
+	public EventClassifier getClassifier() {
+		return this.eu.getClassifier();
+	}
 
-	private List<CalendarEvent> buildEvents(
-			final List<HashMap<String, String>> rawEventsMapList) {
-		final List<CalendarEvent> events = new ArrayList<CalendarEvent>();
+	/**
+	 * The current snapshot - hold on to it to run several queries against
+	 * the same version of the calendar
+	 * @return
+	 */
+	public EventSnapshot getSnapshot() {
+		return this.snapshot.get();
+	}
 
-		final Iterator<HashMap<String, String>> itr = rawEventsMapList
-				.iterator();
-		while (itr.hasNext()) {
-			final Map<String, String> evt = itr.next();
+	/**
+	 * @see EventSnapshot#getAllEvents()
+	 */
+	public List<CalendarEvent> getAllEvents() {
+		return this.snapshot.get().getAllEvents();
+	}
 
-			if (eu.rrulePresent(evt)) {
-				doRepeats(evt, events);
-			} else {
-				LocalDateTime sDate = this.dateUtils.formatDate(this.dateUtils
-						.stdDate(evt.get(CalFields.DTSTART)));
-				LocalDateTime eDate = this.dateUtils.formatDate(this.dateUtils
-						.stdDate(evt.get(CalFields.DTEND)));
-				if (this.dateUtils.isRecent(eDate)) {
-					this.debug("\tAdding single: " + evt.get(CalFields.SUMMARY) + M4Fields.COLON + evt.get(CalFields.DTSTART));
-					eu.addEvent(events, evt, sDate, eDate);
-				} 
-			}
-		}
+	/**
+	 * @see EventSnapshot#getEventsBetween(LocalDateTime, LocalDateTime)
+	 */
+	public List<CalendarEvent> getEventsBetween(final LocalDateTime from, final LocalDateTime to) {
+		return this.snapshot.get().getEventsBetween(from, to);
+	}
+
+	/**
+	 * @see EventSnapshot#getEventsAfter(long)
+	 */
+	public List<CalendarEvent> getEventsAfter(final long startTime) {
+		return this.snapshot.get().getEventsAfter(startTime);
+	}
+
+	/**
+	 * @see EventSnapshot#getEventsOn(M4Date)
+	 */
+	public List<CalendarEvent> getEventsOn(final M4Date dateTime) {
+		return this.snapshot.get().getEventsOn(dateTime);
+	}
+
+	/**
+	 * @see EventSnapshot#getAvailability(LocalDate, int)
+	 */
+	public AvailabilityMap getAvailability(final LocalDate from, final int days) {
+		return this.snapshot.get().getAvailability(from, days);
+	}
+
+	/**
+	 * @see EventSnapshot#getByType(EventType, long, boolean)
+	 */
+	public List<CalendarEvent> getByType(final EventType eventType,
+			final long startTime, final boolean suppressDupes) {
+		return this.snapshot.get().getByType(eventType, startTime, suppressDupes);
+	}
+
+	/**
+	 * @see EventSnapshot#getConfirmedGigs()
+	 */
+	public List<CalendarEvent> getConfirmedGigs() {
+		return this.snapshot.get().getConfirmedGigs();
+	}
+
+	/**
+	 * @see EventSnapshot#query(EventQuery)
+	 */
+	public Stream<CalendarEvent> query(final EventQuery query) {
+		return this.snapshot.get().query(query);
+	}
 
-		Collections.sort(events, new CalendarEventComparator());
+	/**
+	 * @see EventSnapshot#getLatestUpdate()
+	 */
+	public UpdateRecord getLatestUpdate() {
+		return this.snapshot.get().getLatestUpdate();
+	}
+
+	private EventStore buildEvents(
+			final List<RawEvent> rawEvents, final List<RawEvent> series) {
+		final EventStore events = this.expandEvents(rawEvents, series, false);
 
 		LOG.info(events.size() + " CalendarEvent(s) generated");
 
 		return events;
 	}
 
-	private void doRepeats(final Map<String, String> evt,
-			List<CalendarEvent> events) {
-		RepeatType rType = null;
-		int increment = -1;
-		LocalDateTime untilDate = null;
-		if (evt.get(CalFields.RRULE_DAILY) != null) {
-			untilDate = this.dateUtils.setEndOf(this.dateUtils.formatDate(this.dateUtils.stdDate(evt.get(CalFields.RRULE_DAILY))));
-			rType = RepeatType.DAILY;
-			increment = 1;
-		} else if (evt.get(CalFields.RRULE_WEEKLY) != null) {
-			untilDate = this.dateUtils.setEndOf(this.dateUtils.formatDate(this.dateUtils.stdDate(evt.get(CalFields.RRULE_WEEKLY))));
-			rType = RepeatType.WEEKLY;
-			increment = 7;
-		} else if (evt.get(CalFields.RRULE_MONTHLY) != null) {
-			untilDate = this.dateUtils.setEndOf(this.dateUtils.formatDate(this.dateUtils.stdDate(evt.get(CalFields.RRULE_MONTHLY))));
-			rType = RepeatType.MONTHLY;
-			increment = 1;
-		} else {
-			throw new MarkIVException("Invalid RRULE found");
+	/**
+	 * Expand the raw events into an event store, collecting the open ended
+	 * series. In parallel the events are expanded on the fork/join pool; the
+	 * builders are combined in feed order and the store's sort is stable so
+	 * the result is identical to the sequential one.
+	 */
+	private EventStore expandEvents(final List<RawEvent> rawEvents,
+			final List<RawEvent> series, final boolean parallel) {
+		this.linkOverrides(rawEvents);
+		for (final RawEvent evt : rawEvents) {
+			if (eu.rruleOpenEnded(evt)) {
+				this.debug("\tOpen ended series: " + evt.get(CalField.SUMMARY) + " - " + evt.getRRule());
+				series.add(evt);
+			}
+		}
+		if (parallel) {
+			return rawEvents.parallelStream()
+					.collect(EventStore.Builder::new,
+							(events, evt) -> this.expander.expandEvent(evt, events),
+							EventStore.Builder::addAll)
+					.build(eu);
+		}
+		final EventStore.Builder events = new EventStore.Builder();
+		final Iterator<RawEvent> itr = rawEvents
+				.iterator();
+		while (itr.hasNext()) {
+			this.expander.expandEvent(itr.next(), events);
 		}
 
-		LocalDateTime sDate = null;
-		LocalDateTime eDate = null;
+		return events.build(eu);
+	}
 
-		if (evt.get(CalFields.DTSTART) != null) {
-			sDate = this.dateUtils.formatDate(this.dateUtils.stdDate(evt.get(CalFields.DTSTART)));
-		} else {
-			throw new MarkIVException("DTSTART is null for event: " + evt);
+	/**
+	 * Record each recurring event's overridden instances (VEVENTs with the
+	 * same UID and a RECURRENCE-ID) so it does not generate them as well
+	 * @param rawEvents
+	 */
+	private void linkOverrides(final List<RawEvent> rawEvents) {
+		final Map<String, DateSet> overrides = new HashMap<String, DateSet>();
+		for (final RawEvent evt : rawEvents) {
+			if (evt.getRecurrenceId() != RawEvent.NO_DATE && evt.get(CalField.UID) != null) {
+				overrides.computeIfAbsent(evt.get(CalField.UID), uid -> new DateSet())
+						.add(evt.getRecurrenceId(), evt.isRecurrenceDate());
+			}
 		}
-		if (evt.get(CalFields.DTEND) != null) {
-			eDate = this.dateUtils.subtractOneMillisecond(this.dateUtils.formatDate(this.dateUtils.stdDate(evt.get(CalFields.DTEND))));
-		} else {
-			eDate = this.dateUtils.setEndOf(sDate);
-			LOG.warn("WARNING - End date missing on: " + evt + " - using: "
-					+ eDate);
+		if (overrides.isEmpty()) {
+			return;
+		}
+		for (final RawEvent evt : rawEvents) {
+			final DateSet ids = overrides.get(evt.get(CalField.UID));
+			if (ids != null && evt.getRecurrenceId() == RawEvent.NO_DATE && eu.rrulePresent(evt)) {
+				evt.getOverrides().addAll(ids);
+			}
 		}
+	}
 
-		if (this.dateUtils.isBefore(untilDate, eDate)) {
-			LOG.warn("UntilDate < EndDate - setting untilDate to endDate - UID=" + evt.get("UID"));
-			debug("Evt=" + evt);
-			debug("UntilDate=" + untilDate);
-			debug("EndDate=" + eDate);
+	/**
+	 * Incremental refresh: keep the occurrences of VEVENTs whose UID (and
+	 * RECURRENCE-ID) has the same LAST-MODIFIED/SEQUENCE as last time,
+	 * re-expand new or changed ones and drop those no longer in the feed. The
+	 * sorted occurrences are kept between refreshes: the changed and deleted
+	 * VEVENTs' rows are dropped from them and the new occurrences, sorted on
+	 * their own, merged in - a linear pass, not a sort of the whole calendar.
+	 * @param rawEvents
+	 */
+	private void mergeChanges(final List<RawEvent> rawEvents) {
+		this.linkOverrides(rawEvents);
+		final Map<String, UidRecord> seen = new LinkedHashMap<String, UidRecord>(rawEvents.size() * 2);
+		final Set<RawEvent> stale = Collections.newSetFromMap(new IdentityHashMap<RawEvent, Boolean>());
+		final EventStore.Builder expanded = new EventStore.Builder();
+		int changed = 0;
+		for (final RawEvent evt : rawEvents) {
+			String key = eu.getEventKey(evt);
+			for (int dup = 1; seen.containsKey(key); dup++) {
+				key = eu.getEventKey(evt) + M4Fields.COMMA + dup;
+			}
+			final UidRecord previous = this.uidRecords.remove(key);
+			if (previous != null && previous.isSameVersion(evt)) {
+				seen.put(key, previous);
+				continue;
+			}
+			if (previous != null) {
+				stale.add(previous.getEvent());
+			}
+			this.expander.expandEvent(evt, expanded);
+			seen.put(key, new UidRecord(evt, eu.rruleOpenEnded(evt)));
+			changed++;
+		}
+		for (final UidRecord deleted : this.uidRecords.values()) {
+			stale.add(deleted.getEvent());
+		}
+		final int deletedCount = this.uidRecords.size();
+		this.uidRecords = seen;
 
-			untilDate = eDate;
+		final long cutOff = EventStore.toMicros(this.expander.recentCutOff());
+		this.occurrences = this.occurrences.replace(stale, expanded, cutOff);
+		final List<RawEvent> openSeries = new ArrayList<RawEvent>();
+		for (final UidRecord record : seen.values()) {
+			if (record.getSeries() != null) {
+				openSeries.add(record.getSeries());
+			}
 		}
+		final EventStore store = this.occurrences.build(eu);
+		this.publish(store, openSeries);
 
-		this.debug("About to add repeats for Repeat Rule: " + rType
-				+ " - Increment: " + increment + " - Until: "
-				+ untilDate);
-		this.debug("Event: " + evt);
-		List<LocalDateTime> excludedDates = eu.getExcludedDates(evt);
+		LOG.info("Incremental refresh: " + changed + " new/changed, " + deletedCount + " deleted VEVENT(s) - "
+				+ expanded.size() + " occurrence(s) expanded - " + store.size() + " CalendarEvent(s)");
+	}
 
-		while (this.dateUtils.isOnBefore(eDate, untilDate)) {
-			if (this.dateUtils.isRecent(eDate)) {
-				if (!excludedDates.contains(sDate)) {
-					this.debug("\tAdding rept'g evt:" + evt.get(CalFields.SUMMARY) + " on " + sDate.toString());
-					eu.addEvent(events, evt, sDate, eDate);
-				} else {
-					this.debug("\tExcluded date: " + sDate + " - not added because it's in " + excludedDates);
-				}
-			} 
-			sDate = this.dateUtils.dateRoll(sDate, rType, increment);
-			eDate = this.dateUtils.dateRoll(eDate, rType, increment);
+	/**
+	 * Make the next version of the calendar visible to readers, and save it
+	 * if restored from a snapshot file - callers hold the manager's lock, so
+	 * versions are published in order
+	 * @param store
+	 * @param openSeries
+	 */
+	private void publish(final EventStore store, final List<RawEvent> openSeries) {
+		final EventSnapshot published = new EventSnapshot(this.snapshot.get().getVersion() + 1, store, openSeries,
+				this.expander);
+		this.snapshot.set(published);
+		if (this.snapshotFile != null) {
+			try {
+				SnapshotFile.write(published, this.snapshotFile);
+			} catch (final IOException e) {
+				LOG.warn("Snapshot not saved to " + this.snapshotFile + ": " + e.getMessage());
+			}
 		}
 	}
-	
+
 	private void debug(String msg) {
 		if (LOG.isDebugEnabled()) {
 			LOG.debug(msg);
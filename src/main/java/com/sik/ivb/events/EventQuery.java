@@ -0,0 +1,181 @@
+package com.sik.ivb.events;
+/**
+ * @author sik
+ */
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.Set;
+
+import com.sik.ivb.api.CalendarEvent;
+import com.sik.ivb.api.EventType;
+
+/**
+ * Which events to fetch: a start time range, event types, the confirmed and
+ * private flags, one per day, an order and a limit. Run by
+ * EventManager.query / EventSnapshot.query against the indexes - the range
+ * is a binary search over the type's (or confirmed gigs') rows and the
+ * flags are checked on the store's columns, so nothing is decoded until a
+ * match is consumed. Occurrences of open ended series in the range (up to
+ * EventSnapshot.OPEN_SERIES_DAYS ahead if it has no end) are merged in.
+ */
+public class EventQuery {
+	private LocalDateTime from;
+	private LocalDateTime to;
+	private final Set<EventType> types = EnumSet.noneOf(EventType.class);
+	private Boolean confirmed;
+	private Boolean eventPrivate;
+	private boolean firstPerDay;
+	private boolean latestFirst;
+	private long limit = Long.MAX_VALUE;
+
+	public LocalDateTime getFrom() {
+		return this.from;
+	}
+
+	/**
+	 * @param from events starting at or after, null for no lower bound
+	 * @return
+	 */
+	public EventQuery withFrom(final LocalDateTime from) {
+		this.from = from;
+		return this;
+	}
+
+	public LocalDateTime getTo() {
+		return this.to;
+	}
+
+	/**
+	 * @param to events starting before, null for no upper bound
+	 * @return
+	 */
+	public EventQuery withTo(final LocalDateTime to) {
+		this.to = to;
+		return this;
+	}
+
+	public Set<EventType> getTypes() {
+		return this.types;
+	}
+
+	/**
+	 * @param types any of these types - all types if none are given
+	 * @return
+	 */
+	public EventQuery withTypes(final EventType... types) {
+		this.types.clear();
+		for (final EventType type : types) {
+			this.types.add(type);
+		}
+		return this;
+	}
+
+	public Boolean isConfirmed() {
+		return this.confirmed;
+	}
+
+	/**
+	 * @param confirmed only confirmed, only unconfirmed, or null for either
+	 * @return
+	 */
+	public EventQuery withConfirmed(final Boolean confirmed) {
+		this.confirmed = confirmed;
+		return this;
+	}
+
+	public Boolean isEventPrivate() {
+		return this.eventPrivate;
+	}
+
+	/**
+	 * @param eventPrivate only private, only public, or null for either
+	 * @return
+	 */
+	public EventQuery withEventPrivate(final Boolean eventPrivate) {
+		this.eventPrivate = eventPrivate;
+		return this;
+	}
+
+	public boolean isFirstPerDay() {
+		return this.firstPerDay;
+	}
+
+	/**
+	 * @param firstPerDay only the first matching event, in the query's order,
+	 *        starting on each day
+	 * @return
+	 */
+	public EventQuery withFirstPerDay(final boolean firstPerDay) {
+		this.firstPerDay = firstPerDay;
+		return this;
+	}
+
+	public boolean isLatestFirst() {
+		return this.latestFirst;
+	}
+
+	/**
+	 * @param latestFirst descending start order rather than ascending
+	 * @return
+	 */
+	public EventQuery withLatestFirst(final boolean latestFirst) {
+		this.latestFirst = latestFirst;
+		return this;
+	}
+
+	public long getLimit() {
+		return this.limit;
+	}
+
+	public EventQuery withLimit(final long limit) {
+		this.limit = limit;
+		return this;
+	}
+
+	/**
+	 * @param event
+	 * @return the event is of the types and flags - the range isn't checked
+	 */
+	boolean matches(final CalendarEvent event) {
+		return (this.types.isEmpty() || this.types.contains(event.getEventType()))
+				&& (this.confirmed == null || this.confirmed.equals(event.isConfirmed()))
+				&& (this.eventPrivate == null || this.eventPrivate.equals(event.isEventPrivate()));
+	}
+
+	/**
+	 * @return a copy of the query without its one per day and limit
+	 */
+	EventQuery unlimited() {
+		final EventQuery all = new EventQuery()
+				.withFrom(this.from)
+				.withTo(this.to)
+				.withConfirmed(this.confirmed)
+				.withEventPrivate(this.eventPrivate)
+				.withLatestFirst(this.latestFirst);
+		all.types.addAll(this.types);
+		return all;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder();
+		builder.append("EventQuery [from=");
+		builder.append(this.from);
+		builder.append(", to=");
+		builder.append(this.to);
+		builder.append(", types=");
+		builder.append(this.types);
+		builder.append(", confirmed=");
+		builder.append(this.confirmed);
+		builder.append(", eventPrivate=");
+		builder.append(this.eventPrivate);
+		builder.append(", firstPerDay=");
+		builder.append(this.firstPerDay);
+		builder.append(", latestFirst=");
+		builder.append(this.latestFirst);
+		builder.append(", limit=");
+		builder.append(this.limit);
+		builder.append("]");
+		return builder.toString();
+	}
+}
@@ -0,0 +1,340 @@
+package com.sik.ivb.events;
+/**
+ * @author sik
+ */
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.sik.ivb.api.CalendarEvent;
+import com.sik.ivb.api.CalendarEventComparator;
+import com.sik.ivb.api.EventType;
+import com.sik.ivb.api.M4Date;
+import com.sik.ivb.api.UpdateRecord;
+
+/**
+ * Immutable, versioned state of the calendar as of one feed refresh: the
+ * event store, its interval index and the open ended series. The event
+ * manager publishes a new snapshot per refresh; a reader holding one sees a
+ * consistent calendar however many refreshes happen meanwhile. The
+ * availability map is derived on demand and cached with the snapshot.
+ */
+public class EventSnapshot {
+	/**
+	 * How far ahead the open ended series are expanded for a lookup with no
+	 * end - the availability page's horizon
+	 */
+	public static final int OPEN_SERIES_DAYS = 400;
+	private static final Comparator<CalendarEvent> START_ORDER = new CalendarEventComparator();
+
+	private final long version;
+	private final EventStore store;
+	private final IntervalIndex index;
+	private final TypeIndex types;
+	private final List<RawEvent> openSeries;
+	private final EventExpander expander;
+	private volatile AvailabilityMap availability;
+
+	/**
+	 * @param version
+	 * @param store
+	 * @param openSeries open ended recurring events, expanded per query
+	 * @param expander
+	 */
+	EventSnapshot(final long version, final EventStore store, final List<RawEvent> openSeries,
+			final EventExpander expander) {
+		this.version = version;
+		this.store = store;
+		this.index = new IntervalIndex(store);
+		this.types = new TypeIndex(store);
+		this.openSeries = Collections.unmodifiableList(new ArrayList<RawEvent>(openSeries));
+		this.expander = expander;
+	}
+
+	/**
+	 * Incremented by each refresh
+	 * @return
+	 */
+	public long getVersion() {
+		return this.version;
+	}
+
+	EventStore getStore() {
+		return this.store;
+	}
+
+	List<RawEvent> getOpenSeries() {
+		return this.openSeries;
+	}
+
+	/**
+	 * Materialized events - occurrences of open ended (no UNTIL or COUNT)
+	 * recurring events are only generated by the date range queries. Read
+	 * only views over the event store.
+	 * @return
+	 */
+	public List<CalendarEvent> getAllEvents() {
+		return this.store.asList();
+	}
+
+	/**
+	 * Events overlapping [from, to] - starting on or before to and ending on
+	 * or after from - including the occurrences of open ended recurring
+	 * events, sorted. Served from the interval index in O(log N + k).
+	 * @param from
+	 * @param to
+	 * @return
+	 */
+	public List<CalendarEvent> getEventsBetween(final LocalDateTime from, final LocalDateTime to) {
+		final List<CalendarEvent> filteredEvents = this.index.overlapping(from, to);
+		if (!this.openSeries.isEmpty()) {
+			final List<CalendarEvent> events = new ArrayList<CalendarEvent>(filteredEvents);
+			this.expander.expandOpenSeries(this.openSeries, from, to, events);
+			Collections.sort(events, START_ORDER);
+			return events;
+		}
+		return filteredEvents;
+	}
+	
+	/**
+	 * Get events after @param startTime - a read only slice of the events
+	 * found by binary search
+	 * 
+	 * @param startTime local epoch seconds (M4DateUtils.toEpochSecond)
+	 * @return
+	 */
+	public List<CalendarEvent> getEventsAfter(final long startTime) {
+		final List<CalendarEvent> events = this.store.asList().subList(
+				this.store.firstStartAfter(startTime * EventStore.MICROS_PER_SECOND), this.store.size());
+		return this.withOccurrences(events, this.occurrencesAfter(startTime, null), false);
+	}
+
+	/**
+	 * Get events on @param dateTime
+	 * 
+	 * @param dateTime
+	 * @return
+	 */
+	public List<CalendarEvent> getEventsOn(final M4Date dateTime) {
+		return this.getEventsBetween(dateTime.getStartTime(), dateTime.getEndTime());
+	}
+
+	/**
+	 * Day by day events and event types for the supplied days. Built in one
+	 * sweep and kept with the snapshot; a map covering a longer horizon is
+	 * reused.
+	 * @param from
+	 * @param days
+	 * @return
+	 */
+	public AvailabilityMap getAvailability(final LocalDate from, final int days) {
+		final AvailabilityMap current = this.availability;
+		if (current != null && current.covers(from, days)) {
+			return current;
+		}
+		final AvailabilityMap map = new AvailabilityMap(
+				this.getEventsBetween(from.atStartOfDay(), from.plusDays(days).atStartOfDay().minusNanos(1)),
+				from, days);
+		this.availability = map;
+		return map;
+	}
+
+	/**
+	 * Get events by type, including the occurrences of open ended series up
+	 * to OPEN_SERIES_DAYS ahead
+	 * 
+	 * @param eventType
+	 * @param startTime local epoch seconds (M4DateUtils.toEpochSecond)
+	 * @param suppressDupes only the first event of the type on a day
+	 * @return a read only view of the type's events
+	 */
+	public List<CalendarEvent> getByType(final EventType eventType,
+			final long startTime, final boolean suppressDupes) {
+		return this.withOccurrences(
+				this.types.startingAfter(eventType, startTime * EventStore.MICROS_PER_SECOND, suppressDupes),
+				this.occurrencesAfter(startTime, new EventQuery().withTypes(eventType)), suppressDupes);
+	}
+	
+	/**
+	 * Get confirmed gigs from now on, the first on each day, including the
+	 * occurrences of open ended series up to OPEN_SERIES_DAYS ahead
+	 * @return
+	 */
+	public List<CalendarEvent> getConfirmedGigs() {
+		final LocalDateTime now = LocalDateTime.now();
+		return this.withOccurrences(
+				this.types.confirmedGigsAfter(EventStore.toMicros(now), true),
+				this.occurrencesAfter(now.toEpochSecond(ZoneOffset.UTC),
+						new EventQuery().withTypes(EventType.GIG).withConfirmed(true)),
+				true);
+	}
+
+	/**
+	 * Events matching the query, lazily evaluated against the indexes - only
+	 * the events consumed are decoded. Occurrences of open ended series in
+	 * the query's range, or up to OPEN_SERIES_DAYS ahead if it has no end,
+	 * are merged in.
+	 * @param query
+	 * @return sequential stream in the query's order
+	 */
+	public Stream<CalendarEvent> query(final EventQuery query) {
+		final List<CalendarEvent> occurrences = this.occurrences(query.getFrom(), query.getTo());
+		occurrences.removeIf(e -> !query.matches(e));
+		if (occurrences.isEmpty()) {
+			return this.types.query(query).mapToObj(this.store.asList()::get);
+		}
+		final Comparator<CalendarEvent> order = query.isLatestFirst() ? START_ORDER.reversed() : START_ORDER;
+		if (query.isLatestFirst()) {
+			Collections.reverse(occurrences);
+		}
+		final Iterator<CalendarEvent> materialized = this.types.query(query.unlimited())
+				.mapToObj(this.store.asList()::get).iterator();
+		Stream<CalendarEvent> events = StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+				new Merged(materialized, occurrences.iterator(), order), Spliterator.ORDERED), false);
+		if (query.isFirstPerDay()) {
+			// merged in start order, so each day's are adjacent
+			final LocalDate[] lastDay = { null };
+			events = events.filter(e -> {
+				final LocalDate day = e.getStartDate().toLocalDate();
+				if (day.equals(lastDay[0])) {
+					return false;
+				}
+				lastDay[0] = day;
+				return true;
+			});
+		}
+		return query.getLimit() < Long.MAX_VALUE ? events.limit(query.getLimit()) : events;
+	}
+
+	/**
+	 * Occurrences of the open ended series starting in [from, to), sorted
+	 * @param from null for the recent cut off
+	 * @param to null for OPEN_SERIES_DAYS from now
+	 * @return a new list
+	 */
+	private List<CalendarEvent> occurrences(final LocalDateTime from, final LocalDateTime to) {
+		final List<CalendarEvent> events = new ArrayList<CalendarEvent>();
+		final LocalDateTime lo = from == null ? this.expander.recentCutOff() : from;
+		final LocalDateTime hi = to == null ? LocalDateTime.now().plusDays(OPEN_SERIES_DAYS) : to;
+		if (this.openSeries.isEmpty() || !lo.isBefore(hi)) {
+			return events;
+		}
+		this.expander.expandOpenSeries(this.openSeries, lo, hi, events);
+		events.removeIf(e -> e.getStartDate().isBefore(lo) || !e.getStartDate().isBefore(hi));
+		events.sort(START_ORDER);
+		return events;
+	}
+
+	/**
+	 * @param startTime local epoch seconds
+	 * @param query the types and flags, or null for any
+	 * @return the occurrences starting after the time
+	 */
+	private List<CalendarEvent> occurrencesAfter(final long startTime, final EventQuery query) {
+		final LocalDateTime after = LocalDateTime.ofEpochSecond(startTime, 0, ZoneOffset.UTC);
+		final List<CalendarEvent> events = this.occurrences(after, null);
+		events.removeIf(e -> !e.getStartDate().isAfter(after) || query != null && !query.matches(e));
+		return events;
+	}
+
+	/**
+	 * The events merged with the occurrences, both in start order
+	 * @param events
+	 * @param occurrences
+	 * @param firstPerDay only the first of those starting on each day
+	 * @return
+	 */
+	private List<CalendarEvent> withOccurrences(final List<CalendarEvent> events,
+			final List<CalendarEvent> occurrences, final boolean firstPerDay) {
+		if (occurrences.isEmpty()) {
+			return events;
+		}
+		final List<CalendarEvent> merged = new ArrayList<CalendarEvent>(events.size() + occurrences.size());
+		final Iterator<CalendarEvent> it = new Merged(events.iterator(), occurrences.iterator(), START_ORDER);
+		LocalDate lastDay = null;
+		while (it.hasNext()) {
+			final CalendarEvent e = it.next();
+			final LocalDate day = e.getStartDate().toLocalDate();
+			if (!firstPerDay || !day.equals(lastDay)) {
+				merged.add(e);
+				lastDay = day;
+			}
+		}
+		return Collections.unmodifiableList(merged);
+	}
+
+	/**
+	 * Linear merge of two sorted runs - the first run's event first on a tie
+	 */
+	private static final class Merged implements Iterator<CalendarEvent> {
+		private final Iterator<CalendarEvent> a;
+		private final Iterator<CalendarEvent> b;
+		private final Comparator<CalendarEvent> order;
+		private CalendarEvent nextA;
+		private CalendarEvent nextB;
+
+		private Merged(final Iterator<CalendarEvent> a, final Iterator<CalendarEvent> b,
+				final Comparator<CalendarEvent> order) {
+			this.a = a;
+			this.b = b;
+			this.order = order;
+			this.nextA = a.hasNext() ? a.next() : null;
+			this.nextB = b.hasNext() ? b.next() : null;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return this.nextA != null || this.nextB != null;
+		}
+
+		@Override
+		public CalendarEvent next() {
+			if (!this.hasNext()) {
+				throw new NoSuchElementException();
+			}
+			final CalendarEvent e;
+			if (this.nextB == null || this.nextA != null && this.order.compare(this.nextA, this.nextB) <= 0) {
+				e = this.nextA;
+				this.nextA = this.a.hasNext() ? this.a.next() : null;
+			} else {
+				e = this.nextB;
+				this.nextB = this.b.hasNext() ? this.b.next() : null;
+			}
+			return e;
+		}
+	}
+
+	/**
+	 * Get latest update - of the materialized events and the open ended
+	 * series
+	 * 
+	 * @return
+	 */
+	public UpdateRecord getLatestUpdate() {
+		final UpdateRecord ur = new UpdateRecord();
+		for (final CalendarEvent e : this.store.asList()) {
+			if (e.getLastUpdated().isAfter(ur.getLastUpdated())) {
+				ur.setLastUpdated(e.getLastUpdated());
+				ur.setEvent(e);
+			}
+		}
+		for (final RawEvent evt : this.openSeries) {
+			final CalendarEvent e = this.expander.describe(evt);
+			if (e.getLastUpdated().isAfter(ur.getLastUpdated())) {
+				ur.setLastUpdated(e.getLastUpdated());
+				ur.setEvent(e);
+			}
+		}
+		return ur;
+	}
+}
@@ -0,0 +1,687 @@
+package com.sik.ivb.events;
+/**
+ * @author sik
+ */
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+
+import com.sik.ivb.api.CalendarEvent;
+import com.sik.ivb.api.EventType;
+import com.sik.ivb.exception.MarkIVException;
+import com.sik.ivb.google.calendar.CalField;
+
+/**
+ * Immutable, columnar store of event occurrences. Per occurrence only the
+ * start and end (local epoch microseconds) and the index of its VEVENT are
+ * kept; the VEVENT's type and flags (a byte), text (ids into a shared string
+ * dictionary) and last update time are kept once however many times it
+ * recurs. Occurrences are sorted by start then end and handed out as
+ * lightweight read only CalendarEvent views. Stores built from several
+ * calendars are merged, each VEVENT tagged with its source.
+ * <p>
+ * Microsecond resolution truncates the end of day (23:59:59.999999999) to
+ * 23:59:59.999999.
+ */
+public class EventStore {
+	static final long MICROS_PER_SECOND = 1000000L;
+	private static final int NANOS_PER_MICRO = 1000;
+	private static final int TYPE_MASK = 0x03;
+	private static final int PRIVATE = 0x04;
+	private static final int CONFIRMED = 0x08;
+	private static final int NONE = -1;
+	private static final EventType[] TYPES = EventType.values();
+
+	static final EventStore EMPTY = new Builder().build(new EventUtility());
+
+	// occurrences - package visible so the interval index can share them
+	final long[] starts;
+	final long[] ends;
+	private final int[] eventIds;
+
+	// VEVENTs
+	private final byte[] flags;
+	private final int[] summaries;
+	private final int[] locations;
+	private final int[] notes;
+	private final int[] updatedBy;
+	private final long[] lastUpdated;
+	private final int[] sources;
+	private String[] dictionary;
+
+	private final List<CalendarEvent> view = new View();
+
+	private EventStore(final long[] starts, final long[] ends, final int[] eventIds, final int events) {
+		this.starts = starts;
+		this.ends = ends;
+		this.eventIds = eventIds;
+		this.flags = new byte[events];
+		this.summaries = new int[events];
+		this.locations = new int[events];
+		this.notes = new int[events];
+		this.updatedBy = new int[events];
+		this.lastUpdated = new long[events];
+		this.sources = new int[events];
+	}
+
+	public int size() {
+		return this.starts.length;
+	}
+
+	/**
+	 * Number of distinct VEVENTs the occurrences came from
+	 * @return
+	 */
+	public int getEventCount() {
+		return this.flags.length;
+	}
+
+	/**
+	 * The occurrences as CalendarEvents, in start order. The list is read only
+	 * and creates a view per get - hold on to the ones needed rather than the
+	 * list's elements' identity.
+	 * @return
+	 */
+	public List<CalendarEvent> asList() {
+		return this.view;
+	}
+
+	/**
+	 * The supplied occurrences as CalendarEvents - a read only view, not a
+	 * copy
+	 * @param rows occurrence indexes
+	 * @param from first of the rows to include
+	 * @param to end of the rows to include, exclusive
+	 * @return
+	 */
+	List<CalendarEvent> asList(final int[] rows, final int from, final int to) {
+		return new Rows(rows, from, to);
+	}
+
+	/**
+	 * Index of the first occurrence starting after the time, or size() if
+	 * none do - a binary search
+	 * @param micros local epoch microseconds
+	 * @return
+	 */
+	public int firstStartAfter(final long micros) {
+		int lo = 0;
+		int hi = this.starts.length;
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (this.starts[mid] <= micros) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	public long getStartMicros(final int i) {
+		return this.starts[i];
+	}
+
+	public long getEndMicros(final int i) {
+		return this.ends[i];
+	}
+
+	public LocalDateTime getStartDate(final int i) {
+		return toDateTime(this.starts[i]);
+	}
+
+	public LocalDateTime getEndDate(final int i) {
+		return toDateTime(this.ends[i]);
+	}
+
+	public String getSummary(final int i) {
+		return this.text(this.summaries[this.eventIds[i]]);
+	}
+
+	public String getLocation(final int i) {
+		return this.text(this.locations[this.eventIds[i]]);
+	}
+
+	public String getNotes(final int i) {
+		return this.text(this.notes[this.eventIds[i]]);
+	}
+
+	public String getLastUpdatedBy(final int i) {
+		return this.text(this.updatedBy[this.eventIds[i]]);
+	}
+
+	/**
+	 * @param i
+	 * @return the calendar the occurrence came from, null for a single feed
+	 */
+	public String getSource(final int i) {
+		return this.text(this.sources[this.eventIds[i]]);
+	}
+
+	public LocalDateTime getLastUpdated(final int i) {
+		return LocalDateTime.ofEpochSecond(this.lastUpdated[this.eventIds[i]], 0, ZoneOffset.UTC);
+	}
+
+	public EventType getEventType(final int i) {
+		return TYPES[this.flags[this.eventIds[i]] & TYPE_MASK];
+	}
+
+	public boolean isEventPrivate(final int i) {
+		return (this.flags[this.eventIds[i]] & PRIVATE) != 0;
+	}
+
+	public boolean isConfirmed(final int i) {
+		return (this.flags[this.eventIds[i]] & CONFIRMED) != 0;
+	}
+
+	private String text(final int id) {
+		return id == NONE ? null : this.dictionary[id];
+	}
+
+	private void setDictionary(final Map<String, Integer> words) {
+		this.dictionary = new String[words.size()];
+		for (final Map.Entry<String, Integer> word : words.entrySet()) {
+			this.dictionary[word.getValue()] = word.getKey();
+		}
+	}
+
+	/**
+	 * Write the columns and dictionary - read back by readFrom
+	 * @param out
+	 * @throws IOException
+	 */
+	void writeTo(final DataOutput out) throws IOException {
+		out.writeInt(this.starts.length);
+		out.writeInt(this.flags.length);
+		writeLongs(out, this.starts);
+		writeLongs(out, this.ends);
+		writeInts(out, this.eventIds);
+		out.write(this.flags);
+		writeInts(out, this.summaries);
+		writeInts(out, this.locations);
+		writeInts(out, this.notes);
+		writeInts(out, this.updatedBy);
+		writeInts(out, this.sources);
+		writeLongs(out, this.lastUpdated);
+		out.writeInt(this.dictionary.length);
+		for (final String word : this.dictionary) {
+			final byte[] utf8 = word.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(utf8.length);
+			out.write(utf8);
+		}
+	}
+
+	/**
+	 * Read a store written by writeTo - the columns are bulk copied out of
+	 * the buffer, so it may be a mapped file
+	 * @param in big endian, positioned at the store
+	 * @return
+	 */
+	static EventStore readFrom(final ByteBuffer in) {
+		final int size = in.getInt();
+		final int events = in.getInt();
+		final long[] starts = readLongs(in, size);
+		final long[] ends = readLongs(in, size);
+		final int[] eventIds = readInts(in, size);
+		final EventStore store = new EventStore(starts, ends, eventIds, events);
+		in.get(store.flags);
+		readInts(in, store.summaries);
+		readInts(in, store.locations);
+		readInts(in, store.notes);
+		readInts(in, store.updatedBy);
+		readInts(in, store.sources);
+		readLongs(in, store.lastUpdated);
+		store.dictionary = new String[in.getInt()];
+		for (int i = 0; i < store.dictionary.length; i++) {
+			final byte[] utf8 = new byte[in.getInt()];
+			in.get(utf8);
+			store.dictionary[i] = new String(utf8, StandardCharsets.UTF_8);
+		}
+		return store;
+	}
+
+	private static void writeInts(final DataOutput out, final int[] values) throws IOException {
+		for (int i = 0; i < values.length; i++) {
+			out.writeInt(values[i]);
+		}
+	}
+
+	private static void writeLongs(final DataOutput out, final long[] values) throws IOException {
+		for (int i = 0; i < values.length; i++) {
+			out.writeLong(values[i]);
+		}
+	}
+
+	private static long[] readLongs(final ByteBuffer in, final int n) {
+		return readLongs(in, new long[n]);
+	}
+
+	private static long[] readLongs(final ByteBuffer in, final long[] values) {
+		in.asLongBuffer().get(values);
+		in.position(in.position() + values.length * Long.BYTES);
+		return values;
+	}
+
+	private static int[] readInts(final ByteBuffer in, final int n) {
+		return readInts(in, new int[n]);
+	}
+
+	private static int[] readInts(final ByteBuffer in, final int[] values) {
+		in.asIntBuffer().get(values);
+		in.position(in.position() + values.length * Integer.BYTES);
+		return values;
+	}
+
+	/**
+	 * Merge stores into one, tagging each store's occurrences with its source
+	 * calendar - a k-way merge over the stores' next occurrences, equal ones
+	 * taken from the earlier store, so the result is the same as a stable sort
+	 * of their concatenation
+	 * @param sources a name per store
+	 * @param runs stores to merge
+	 * @return
+	 */
+	static EventStore merge(final List<String> sources, final List<EventStore> runs) {
+		final int k = runs.size();
+		final int[] offsets = new int[k];
+		int size = 0;
+		int events = 0;
+		for (int r = 0; r < k; r++) {
+			offsets[r] = events;
+			size += runs.get(r).size();
+			events += runs.get(r).getEventCount();
+		}
+
+		// heap of the runs with occurrences left, ordered by their next one
+		final int[] heads = new int[k];
+		final int[] heap = new int[k];
+		int n = 0;
+		for (int r = 0; r < k; r++) {
+			if (runs.get(r).size() > 0) {
+				heap[n] = r;
+				siftUp(heap, n++, runs, heads);
+			}
+		}
+		final long[] starts = new long[size];
+		final long[] ends = new long[size];
+		final int[] eventIds = new int[size];
+		for (int i = 0; i < size; i++) {
+			final int r = heap[0];
+			final EventStore run = runs.get(r);
+			final int row = heads[r]++;
+			starts[i] = run.starts[row];
+			ends[i] = run.ends[row];
+			eventIds[i] = offsets[r] + run.eventIds[row];
+			if (heads[r] == run.size()) {
+				heap[0] = heap[--n];
+			}
+			siftDown(heap, n, runs, heads);
+		}
+
+		final Map<String, Integer> words = new HashMap<String, Integer>();
+		final EventStore store = new EventStore(starts, ends, eventIds, events);
+		for (int r = 0; r < k; r++) {
+			final EventStore run = runs.get(r);
+			final int source = Builder.intern(words, sources.get(r));
+			for (int id = 0; id < run.getEventCount(); id++) {
+				final int to = offsets[r] + id;
+				store.flags[to] = run.flags[id];
+				store.summaries[to] = Builder.intern(words, run.text(run.summaries[id]));
+				store.locations[to] = Builder.intern(words, run.text(run.locations[id]));
+				store.notes[to] = Builder.intern(words, run.text(run.notes[id]));
+				store.updatedBy[to] = Builder.intern(words, run.text(run.updatedBy[id]));
+				store.lastUpdated[to] = run.lastUpdated[id];
+				store.sources[to] = source;
+			}
+		}
+		store.setDictionary(words);
+		return store;
+	}
+
+	private static void siftUp(final int[] heap, int i, final List<EventStore> runs, final int[] heads) {
+		while (i > 0) {
+			final int parent = (i - 1) >>> 1;
+			if (!before(heap[i], heap[parent], runs, heads)) {
+				return;
+			}
+			swap(heap, i, parent);
+			i = parent;
+		}
+	}
+
+	private static void siftDown(final int[] heap, final int n, final List<EventStore> runs, final int[] heads) {
+		int i = 0;
+		while (true) {
+			final int left = 2 * i + 1;
+			if (left >= n) {
+				return;
+			}
+			final int child = left + 1 < n && before(heap[left + 1], heap[left], runs, heads) ? left + 1 : left;
+			if (!before(heap[child], heap[i], runs, heads)) {
+				return;
+			}
+			swap(heap, i, child);
+			i = child;
+		}
+	}
+
+	/**
+	 * Is run a's next occurrence before run b's - by start, end, then run
+	 */
+	private static boolean before(final int a, final int b, final List<EventStore> runs, final int[] heads) {
+		final EventStore runA = runs.get(a);
+		final EventStore runB = runs.get(b);
+		final int byStart = Long.compare(runA.starts[heads[a]], runB.starts[heads[b]]);
+		if (byStart != 0) {
+			return byStart < 0;
+		}
+		final int byEnd = Long.compare(runA.ends[heads[a]], runB.ends[heads[b]]);
+		return byEnd != 0 ? byEnd < 0 : a < b;
+	}
+
+	private static void swap(final int[] heap, final int i, final int j) {
+		final int swap = heap[i];
+		heap[i] = heap[j];
+		heap[j] = swap;
+	}
+
+	/**
+	 * Local epoch microseconds
+	 * @param dateTime
+	 * @return
+	 */
+	static long toMicros(final LocalDateTime dateTime) {
+		return dateTime.toEpochSecond(ZoneOffset.UTC) * MICROS_PER_SECOND + dateTime.getNano() / NANOS_PER_MICRO;
+	}
+
+	static LocalDateTime toDateTime(final long micros) {
+		return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, MICROS_PER_SECOND),
+				(int) Math.floorMod(micros, MICROS_PER_SECOND) * NANOS_PER_MICRO, ZoneOffset.UTC);
+	}
+
+	private final class View extends AbstractList<CalendarEvent> implements RandomAccess {
+		@Override
+		public CalendarEvent get(final int i) {
+			if (i < 0 || i >= EventStore.this.starts.length) {
+				throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + EventStore.this.starts.length);
+			}
+			return new StoredEvent(EventStore.this, i);
+		}
+
+		@Override
+		public int size() {
+			return EventStore.this.starts.length;
+		}
+	}
+
+	private final class Rows extends AbstractList<CalendarEvent> implements RandomAccess {
+		private final int[] rows;
+		private final int from;
+		private final int size;
+
+		private Rows(final int[] rows, final int from, final int to) {
+			this.rows = rows;
+			this.from = from;
+			this.size = to - from;
+		}
+
+		@Override
+		public CalendarEvent get(final int i) {
+			if (i < 0 || i >= this.size) {
+				throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + this.size);
+			}
+			return new StoredEvent(EventStore.this, this.rows[this.from + i]);
+		}
+
+		@Override
+		public int size() {
+			return this.size;
+		}
+	}
+
+	/**
+	 * Collects occurrences, in any order, for an EventStore. Not thread safe -
+	 * parallel expansion gives each thread its own and combines them with
+	 * addAll.
+	 */
+	static class Builder {
+		private static final int INITIAL_CAPACITY = 16;
+
+		private long[] starts = new long[INITIAL_CAPACITY];
+		private long[] ends = new long[INITIAL_CAPACITY];
+		private RawEvent[] events = new RawEvent[INITIAL_CAPACITY];
+		private int size;
+		private boolean sorted = true;
+
+		/**
+		 * Add an occurrence of the event
+		 * @param evt
+		 * @param start local epoch microseconds
+		 * @param end local epoch microseconds
+		 */
+		void add(final RawEvent evt, final long start, final long end) {
+			if (evt.get(CalField.SUMMARY) == null) {
+				throw new MarkIVException("Invalid CalendarEvent! Minimum start date, end date & summary required");
+			}
+			if (this.size == this.starts.length) {
+				this.grow(this.size + 1);
+			}
+			this.starts[this.size] = start;
+			this.ends[this.size] = end;
+			this.events[this.size++] = evt;
+			this.sorted = false;
+		}
+
+		/**
+		 * Add all the other builder's occurrences
+		 * @param other
+		 */
+		void addAll(final Builder other) {
+			this.addAll(other, Long.MIN_VALUE);
+		}
+
+		/**
+		 * Add the other builder's occurrences ending after the cut-off
+		 * @param other
+		 * @param endsAfter local epoch microseconds
+		 */
+		void addAll(final Builder other, final long endsAfter) {
+			if (this.size + other.size > this.starts.length) {
+				this.grow(this.size + other.size);
+			}
+			for (int i = 0; i < other.size; i++) {
+				if (other.ends[i] > endsAfter) {
+					this.starts[this.size] = other.starts[i];
+					this.ends[this.size] = other.ends[i];
+					this.events[this.size++] = other.events[i];
+					this.sorted = false;
+				}
+			}
+		}
+
+		/**
+		 * A sorted copy of these occurrences with those of the stale VEVENTs
+		 * dropped and the other builder's merged in - one linear pass over the
+		 * two sorted runs, equal occurrences taken from this one
+		 * @param stale VEVENTs changed or deleted since this was built
+		 * @param other the changed VEVENTs' occurrences
+		 * @param endsAfter local epoch microseconds - earlier occurrences are dropped
+		 * @return
+		 */
+		Builder replace(final Set<RawEvent> stale, final Builder other, final long endsAfter) {
+			this.sort();
+			other.sort();
+			final Builder merged = new Builder();
+			merged.grow(this.size + other.size);
+			int l = this.next(0, stale, endsAfter);
+			int r = other.next(0, Collections.<RawEvent>emptySet(), endsAfter);
+			while (l < this.size || r < other.size) {
+				if (r >= other.size || (l < this.size && compare(this, l, other, r) <= 0)) {
+					merged.copy(this, l);
+					l = this.next(l + 1, stale, endsAfter);
+				} else {
+					merged.copy(other, r);
+					r = other.next(r + 1, Collections.<RawEvent>emptySet(), endsAfter);
+				}
+			}
+			return merged;
+		}
+
+		/**
+		 * @return the first row from on that isn't stale and ends after the cut-off
+		 */
+		private int next(int from, final Set<RawEvent> stale, final long endsAfter) {
+			while (from < this.size && (this.ends[from] <= endsAfter || stale.contains(this.events[from]))) {
+				from++;
+			}
+			return from;
+		}
+
+		private void copy(final Builder from, final int row) {
+			this.starts[this.size] = from.starts[row];
+			this.ends[this.size] = from.ends[row];
+			this.events[this.size++] = from.events[row];
+		}
+
+		/**
+		 * Sort the occurrences in place by start then end - stable, so equal
+		 * ones keep the order they were added in
+		 */
+		private void sort() {
+			if (this.sorted) {
+				return;
+			}
+			final int[] order = this.sortedOrder();
+			final long[] sortedStarts = new long[this.starts.length];
+			final long[] sortedEnds = new long[this.ends.length];
+			final RawEvent[] sortedEvents = new RawEvent[this.events.length];
+			for (int i = 0; i < this.size; i++) {
+				sortedStarts[i] = this.starts[order[i]];
+				sortedEnds[i] = this.ends[order[i]];
+				sortedEvents[i] = this.events[order[i]];
+			}
+			this.starts = sortedStarts;
+			this.ends = sortedEnds;
+			this.events = sortedEvents;
+			this.sorted = true;
+		}
+
+		int size() {
+			return this.size;
+		}
+
+		/**
+		 * Sort the occurrences by start then end - stable, so equal ones keep
+		 * the order they were added in - and encode their VEVENTs
+		 * @param eu
+		 * @return
+		 */
+		EventStore build(final EventUtility eu) {
+			this.sort();
+			final long[] sortedStarts = Arrays.copyOf(this.starts, this.size);
+			final long[] sortedEnds = Arrays.copyOf(this.ends, this.size);
+			final int[] eventIds = new int[this.size];
+			final Map<RawEvent, Integer> ids = new IdentityHashMap<RawEvent, Integer>();
+			final RawEvent[] distinct = new RawEvent[this.size];
+			for (int i = 0; i < this.size; i++) {
+				Integer id = ids.get(this.events[i]);
+				if (id == null) {
+					id = ids.size();
+					ids.put(this.events[i], id);
+					distinct[id] = this.events[i];
+				}
+				eventIds[i] = id;
+			}
+
+			final Map<String, Integer> words = new HashMap<String, Integer>();
+			final EventStore store = new EventStore(sortedStarts, sortedEnds, eventIds, ids.size());
+			for (int id = 0; id < ids.size(); id++) {
+				final RawEvent evt = distinct[id];
+				int flag = eu.getEventType(evt).ordinal();
+				if (eu.isEventPrivate(evt)) {
+					flag |= PRIVATE;
+				}
+				if (eu.isConfirmed(evt)) {
+					flag |= CONFIRMED;
+				}
+				store.flags[id] = (byte) flag;
+				store.summaries[id] = intern(words, evt.get(CalField.SUMMARY));
+				store.locations[id] = intern(words, evt.get(CalField.LOCATION));
+				store.notes[id] = intern(words, evt.get(CalField.DESCRIPTION));
+				store.updatedBy[id] = intern(words, evt.get(CalField.ORGANIZER));
+				store.lastUpdated[id] = eu.getLastUpdated(evt).toEpochSecond(ZoneOffset.UTC);
+				store.sources[id] = NONE;
+			}
+			store.setDictionary(words);
+			return store;
+		}
+
+		private void grow(final int minCapacity) {
+			final int capacity = Math.max(minCapacity, this.starts.length * 2);
+			this.starts = Arrays.copyOf(this.starts, capacity);
+			this.ends = Arrays.copyOf(this.ends, capacity);
+			this.events = Arrays.copyOf(this.events, capacity);
+		}
+
+		/**
+		 * Row numbers in (start, end) order - a bottom up merge sort
+		 */
+		private int[] sortedOrder() {
+			int[] order = new int[this.size];
+			for (int i = 0; i < this.size; i++) {
+				order[i] = i;
+			}
+			int[] merged = new int[this.size];
+			for (int width = 1; width < this.size; width <<= 1) {
+				for (int lo = 0; lo < this.size; lo += width << 1) {
+					final int mid = Math.min(lo + width, this.size);
+					final int hi = Math.min(lo + (width << 1), this.size);
+					int l = lo;
+					int r = mid;
+					for (int k = lo; k < hi; k++) {
+						merged[k] = r >= hi || (l < mid && this.compare(order[l], order[r]) <= 0)
+								? order[l++]
+								: order[r++];
+					}
+				}
+				final int[] swap = order;
+				order = merged;
+				merged = swap;
+			}
+			return order;
+		}
+
+		private int compare(final int a, final int b) {
+			return compare(this, a, this, b);
+		}
+
+		private static int compare(final Builder x, final int a, final Builder y, final int b) {
+			final int byStart = Long.compare(x.starts[a], y.starts[b]);
+			return byStart != 0 ? byStart : Long.compare(x.ends[a], y.ends[b]);
+		}
+
+		private static int intern(final Map<String, Integer> words, final String word) {
+			if (word == null) {
+				return NONE;
+			}
+			final Integer id = words.get(word);
+			if (id != null) {
+				return id;
+			}
+			words.put(word, words.size());
+			return words.size() - 1;
+		}
+	}
+}
@@ -1,14 +1,10 @@
 package com.sik.ivb.events;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -16,41 +12,30 @@ import org.apache.logging.log4j.Logger;
 
 import com.sik.ivb.api.CalendarEvent;
 import com.sik.ivb.api.EventType;
-import com.sik.ivb.api.M4Date;
 import com.sik.ivb.api.M4Fields;
 import com.sik.ivb.exception.MarkIVException;
-import com.sik.ivb.google.calendar.CalFields;
+import com.sik.ivb.google.calendar.CalField;
 import com.sik.ivb.utils.M4DateUtils;
 
 public class EventUtility {
 
 	private static final Logger LOG = LogManager.getLogger(EventUtility.class);
 	private final M4DateUtils dateUtils = new M4DateUtils();
-	
-	/**
-	 * Is the Date in the CalendarEvent?
-	 * @param date
-	 * @param event
-	 * @return
-	 */
-	protected boolean isDateInEvent(final M4Date date, final CalendarEvent event) {
-		this.debug(">>>> " + event.getStartDate() + "-" + event.getEndDate() + " : " + date);
-		return (this.dateUtils.isOnAfter(date.getStartTime(),
-				event.getStartDate()) && this.dateUtils.isOnBefore(
-				date.getEndTime(), event.getEndDate()));
+	private final EventClassifier classifier;
+
+	public EventUtility() {
+		this(EventClassifier.DEFAULT);
 	}
 
 	/**
-	 * Is the Event in the Date?
-	 * @param date
-	 * @param event
-	 * @return
+	 * @param classifier keyword vocabularies for type, private and confirmed
 	 */
-	protected boolean isEventInDate(final M4Date date, final CalendarEvent event) {
-		this.debug(">>>> " + event.getStartDate() + "-" + event.getEndDate() + " : " + date);
-		return (this.dateUtils.isOnAfter(event.getStartDate(),
-				date.getStartTime()) && this.dateUtils.isOnBefore(
-				event.getEndDate(), date.getEndTime()));
+	public EventUtility(final EventClassifier classifier) {
+		this.classifier = classifier;
+	}
+
+	public EventClassifier getClassifier() {
+		return this.classifier;
 	}
 	
 	/**
@@ -58,177 +43,71 @@ public class EventUtility {
 	 * @param evt
 	 * @return
 	 */
-	protected LocalDateTime getLastUpdated(final Map<String, String> evt) {
-		return this.dateUtils.formatDate(this.dateUtils.stdDate(evt
-				.get(CalFields.LAST_MODIFIED)));
+	protected LocalDateTime getLastUpdated(final RawEvent evt) {
+		return this.dateUtils.fromEpochSecond(evt.getLastModified() == RawEvent.NO_DATE
+				? 0L : evt.getLastModified());
 	}
 
 	/**
-	 * Is there a Repeat Rule present?
+	 * Key identifying a VEVENT across feeds: UID plus RECURRENCE-ID for
+	 * overridden instances of a recurring event
 	 * @param evt
 	 * @return
 	 */
-	protected boolean rrulePresent(Map<String, String> evt) {
-		return !(evt.get(CalFields.RRULE_DAILY) == null
-				&& evt.get(CalFields.RRULE_WEEKLY) == null 
-				&& evt.get(CalFields.RRULE_MONTHLY) == null);
+	protected String getEventKey(final RawEvent evt) {
+		return evt.getRecurrenceId() == RawEvent.NO_DATE
+				? evt.get(CalField.UID)
+				: evt.get(CalField.UID) + M4Fields.SEMICOLON + evt.getRecurrenceId();
 	}
 
 	/**
-	 * Is the event private?
-	 * @param e
-	 * @return
-	 */
-	protected Boolean isEventPrivate(final Map<String, String> e) {
-		Boolean isPrivate;
-		if (e.get(CalFields.SUMMARY).toLowerCase().contains(M4Fields.PRIVATE)
-				|| e.get(CalFields.SUMMARY).toLowerCase().contains(M4Fields.WEDDING)
-				|| e.get(CalFields.LOCATION).toLowerCase().contains(M4Fields.PRIVATE)
-				|| (e.get(CalFields.CLASS) != null && e.get(CalFields.CLASS).toLowerCase().contains(M4Fields.PRIVATE))) {
-			isPrivate = true;
-		} else {
-			isPrivate = false;
-		}
-		return isPrivate;
-	}
-	
-	/**
-	 * Is the event a gig?
-	 * @param e
+	 * Is there a Repeat Rule present?
+	 * @param evt
 	 * @return
 	 */
-	public boolean isGig(CalendarEvent e) {
-		return e.getSummary().toLowerCase().contains(M4Fields.GIG);
+	protected boolean rrulePresent(RawEvent evt) {
+		return evt.getRRule() != null
+				&& evt.getRRule().getFreq() != null;
 	}
 
 	/**
-	 * Is the event private?
-	 * @param e
-	 * @return
-	 */
-	public boolean isEventPrivate(CalendarEvent e) {
-		return (e.isEventPrivate() || e.getLocation().toLowerCase().contains(M4Fields.PRIVATE)
-				|| e.getNotes().toLowerCase().contains(M4Fields.PRIVATE));
-	}
-	
-	/**
-	 * Is the event confirmed?
-	 * @param evy
+	 * Is there a Repeat Rule with neither UNTIL nor COUNT?
+	 * @param evt
 	 * @return
 	 */
-	private Boolean isConfirmed(Map<String, String> evt) {
-		return evt.get(CalFields.SUMMARY).toLowerCase().contains(M4Fields.CONFIRMED);
+	protected boolean rruleOpenEnded(RawEvent evt) {
+		return this.rrulePresent(evt)
+				&& evt.getRRule().getUntil() == RRule.NO_UNTIL
+				&& evt.getRRule().getCount() == 0;
 	}
 
-	public Boolean isConfirmed(CalendarEvent evt) {
-		return (evt.getSummary().toLowerCase().contains(M4Fields.CONFIRMED));
-	}
-	
 	/**
-	 * Check event exists with same Start Date (YYYYMMDD) & Type
-	 * 
+	 * Is the event private - or a wedding?
 	 * @param e
-	 * @param filteredEvents
 	 * @return
 	 */
-	protected boolean eventExists(CalendarEvent e,
-			List<CalendarEvent> filteredEvents) {
-		for (CalendarEvent fe : filteredEvents) {
-			if (fe.getEventType() == e.getEventType() && startDatesEqual(e, fe)) {
-				return true;
-			}
-		}
-		return false;
+	protected Boolean isEventPrivate(final RawEvent e) {
+		return (this.categories(e) & (EventClassifier.PRIVATE | EventClassifier.WEDDING)) != 0;
 	}
-
+	
 	/**
+	 * Is the event private - its classified flag, which covers the summary
+	 * and location, or its notes?
 	 * @param e
-	 * @param fe
 	 * @return
 	 */
-	protected boolean startDatesEqual(CalendarEvent e, CalendarEvent fe) {
-		if (e.getStartDate().getYear() != fe.getStartDate().getYear()) {
-			return false;
-		} else if (e.getStartDate().getMonth() != fe.getStartDate().getMonth()) {
-			return false;
-		} else if (e.getStartDate().getDayOfMonth() != fe.getStartDate().getDayOfMonth()) {
-			return false;
-		} else {
-			return true;
-		}
-	}
-
-	/**
-	 * Process calendar line
-	 * @param line
-	 * @param eventMap
-	 */
-	protected void processLine(final String line,
-			final Map<String, String> eventMap) {
-		int sp = 0;
-		String key = null;
-		String value = null;
-		if (line.startsWith(CalFields.DTSTART + M4Fields.SEMICOLON) || line.startsWith(CalFields.DTEND + M4Fields.SEMICOLON)
-				|| line.startsWith(CalFields.EXDATE + M4Fields.SEMICOLON)) {
-			sp = line.indexOf(M4Fields.SEMICOLON);
-		} else if (line.startsWith(CalFields.RRULE + M4Fields.COLON)) {
-			sp = line.lastIndexOf(M4Fields.EQUALS);
-		} else {
-			sp = line.indexOf(M4Fields.COLON);
-		}
-		if (sp > 0) {
-			key = line.substring(0, sp);
-			value = line.substring(sp + 1);
-			if (key.equals(CalFields.EXDATE)) {
-				if (eventMap.get(CalFields.EXDATE) == null) {
-					eventMap.put(key, this.dateUtils.stdDate(value));
-				} else {
-					eventMap.put(key, eventMap.get(key) + M4Fields.COMMA + this.dateUtils.stdDate(value));
-				}
-			} else {
-				eventMap.put(key, value);
-			}
-		}
+	public boolean isEventPrivate(CalendarEvent e) {
+		return (e.isEventPrivate()
+				|| (this.classifier.classify(e.getNotes()) & EventClassifier.PRIVATE) != 0);
 	}
 	
 	/**
-	 * @param evt
+	 * Is the event confirmed?
+	 * @param evy
 	 * @return
 	 */
-	protected List<LocalDateTime> getExcludedDates(Map<String, String> evt) {
-		List<LocalDateTime> retVal = new ArrayList<LocalDateTime>();
-		if (evt.get(CalFields.EXDATE) != null) {
-			String[] exDates = evt.get(CalFields.EXDATE).split(M4Fields.COMMA);
-			for (String xd : exDates) {
-				retVal.add(this.dateUtils.formatDate(xd));
-			}
-		}
-		return retVal;
-	}
-	
-	/**
-	 * Add CalendarEvent to the list
-	 * @param events
-	 * @param evt
-	 * @param sDate
-	 * @param eDate
-	 */
-	protected void addEvent(List<CalendarEvent> events,
-			final Map<String, String> evt, 
-			LocalDateTime sDate,
-			LocalDateTime eDate) {
-		events.add(new CalendarEvent()
-				.withStartDate(sDate)
-				.withEndDate(eDate)
-				.withSummary(evt.get(CalFields.SUMMARY))
-				.withLocation(evt.get(CalFields.LOCATION))
-				.withNotes(evt.get(CalFields.DESCRIPTION))
-				.withLastUpdated(this.getLastUpdated(evt))
-				.withLastUpdatedBy(evt.get(CalFields.ORGANIZER))
-				.withEventType(getEventType(evt))
-				.withEventPrivate(this.isEventPrivate(evt))
-				.withConfirmed(this.isConfirmed(evt))
-				.validate());
+	protected Boolean isConfirmed(RawEvent evt) {
+		return (this.categories(evt) & EventClassifier.CONFIRMED) != 0;
 	}
 
 	/**
@@ -236,11 +115,11 @@ public class EventUtility {
 	 * @param evt
 	 * @return
 	 */
-	protected EventType getEventType(final Map<String, String> evt) {
-		if (evt.get(CalFields.SUMMARY).toLowerCase().contains(M4Fields.GIG)) {
+	protected EventType getEventType(final RawEvent evt) {
+		final int categories = this.categories(evt);
+		if ((categories & EventClassifier.GIG) != 0) {
 			return EventType.GIG;
-		} else if (evt.get(CalFields.SUMMARY).toLowerCase().contains(M4Fields.UNAVAILABLE)
-				|| evt.get(CalFields.SUMMARY).toLowerCase().contains(M4Fields.NOT_AVAILABLE)) {
+		} else if ((categories & EventClassifier.UNAVAILABLE) != 0) {
 			return EventType.UNAVAILABILITY;
 		} else {
 			return EventType.INFO;
@@ -248,49 +127,71 @@ public class EventUtility {
 	}
 
 	/**
-	 * Builds a List of HashMap 'events' from the google calendar feed
+	 * Builds a List of RawEvents from the google calendar feed
 	 * @return
 	 */
-	protected List<HashMap<String, String>> buildMapFromCalendarFeed(
+	protected List<RawEvent> buildRawEvents(
 			final InputStream feed) {
-		boolean isEvent = false;
-		boolean isAlarm = false;
-		BufferedReader br;
-		HashMap<String, String> eventMap = null;
-		final List<HashMap<String, String>> eventsList = new ArrayList<HashMap<String, String>>();
-
+		final RawEventCollector collector = new RawEventCollector();
 		int lineCount = 0;
 
 		try {
-			br = new BufferedReader(new InputStreamReader(feed));
-			String line;
-			while ((line = br.readLine()) != null) {
-				if (line.startsWith(CalFields.BEGIN_EVENT)) {
-					isEvent = true;
-					eventMap = new HashMap<String, String>();
-				} else if (line.startsWith(CalFields.END_EVENT)) {
-					eventsList.add(eventMap);
-					isEvent = false;
-				} else if (line.startsWith(CalFields.BEGIN_ALARM)) {
-					isAlarm = true;
-				} else if (line.startsWith(CalFields.END_ALARM)) {
-					isAlarm = false;
-				} else if (isEvent && !isAlarm) {
-					processLine(line, eventMap);
-				}
-				lineCount++;
-			}
-			br.close();
+			lineCount = new ICalTokenizer().parse(feed, collector);
+			feed.close();
 		} catch (final IOException e2) {
 			throw new MarkIVException(e2.getMessage());
 		}
 
 		LOG.info(lineCount + " lines in calendar extract - "
-				+ eventsList.size() + " raw events found");
-		return eventsList;
+				+ collector.getEvents().size() + " raw events found");
+		return collector.getEvents();
 	}
 	
 	
+	/**
+	 * Builds a List of RawEvents from a buffered (e.g. memory mapped) feed
+	 * @return
+	 */
+	protected List<RawEvent> buildRawEvents(
+			final ByteBuffer feed) {
+		final RawEventCollector collector = new RawEventCollector();
+		final int lineCount = new ICalTokenizer().parse(feed, collector);
+
+		LOG.info(lineCount + " lines in calendar extract - "
+				+ collector.getEvents().size() + " raw events found");
+		return collector.getEvents();
+	}
+
+	/**
+	 * Raw events from one piece of a split feed - logged at debug only
+	 * @param piece
+	 * @return
+	 */
+	protected List<RawEvent> parseRawEvents(final ByteBuffer piece) {
+		final RawEventCollector collector = new RawEventCollector();
+		final int lineCount = new ICalTokenizer().parse(piece, collector);
+		this.debug(lineCount + " lines in feed piece - " + collector.getEvents().size() + " raw events found");
+		return collector.getEvents();
+	}
+	
+	/**
+	 * Classify the event's text, once - the result is kept on the event. The
+	 * summary decides every category, LOCATION and CLASS only mark it private
+	 * (a wedding is only recognised by its summary).
+	 * @param evt
+	 * @return EventClassifier categories
+	 */
+	private int categories(final RawEvent evt) {
+		int categories = evt.getCategories();
+		if (categories == RawEvent.UNCLASSIFIED) {
+			categories = this.classifier.classify(evt.get(CalField.SUMMARY))
+					| ((this.classifier.classify(evt.get(CalField.LOCATION))
+							| this.classifier.classify(evt.get(CalField.CLASS))) & EventClassifier.PRIVATE);
+			evt.setCategories(categories);
+		}
+		return categories;
+	}
+
 	private void debug(String msg) {
 		if (LOG.isDebugEnabled()) {
 			LOG.debug(msg);
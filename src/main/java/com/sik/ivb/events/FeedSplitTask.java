@@ -0,0 +1,70 @@
+package com.sik.ivb.events;
+/**
+ * @author sik
+ */
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+/**
+ * Fork/join task that halves a buffered feed at BEGIN:VEVENT boundaries until
+ * each piece is under the threshold, parses the pieces in parallel and joins
+ * the results in feed order - identical to parsing the feed sequentially.
+ */
+class FeedSplitTask extends RecursiveTask<List<RawEvent>> {
+	private static final long serialVersionUID = 4119186329216315498L;
+	private static final byte[] BOUNDARY = "\nBEGIN:VEVENT".getBytes();
+
+	private final ByteBuffer feed;
+	private final int threshold;
+	private final Function<ByteBuffer, List<RawEvent>> leafParser;
+
+	FeedSplitTask(final ByteBuffer feed, final int threshold,
+			final Function<ByteBuffer, List<RawEvent>> leafParser) {
+		this.feed = feed;
+		this.threshold = threshold;
+		this.leafParser = leafParser;
+	}
+
+	@Override
+	protected List<RawEvent> compute() {
+		final int from = this.feed.position();
+		final int to = this.feed.limit();
+		final int cut = to - from > this.threshold ? this.nextBoundary(from + (to - from) / 2, to) : -1;
+		if (cut < 0) {
+			return this.leafParser.apply(this.feed);
+		}
+		final ByteBuffer left = this.feed.duplicate();
+		left.limit(cut);
+		final ByteBuffer right = this.feed.duplicate();
+		right.position(cut);
+
+		final FeedSplitTask leftTask = new FeedSplitTask(left, this.threshold, this.leafParser);
+		leftTask.fork();
+		final List<RawEvent> rightEvents = new FeedSplitTask(right, this.threshold, this.leafParser).compute();
+		final List<RawEvent> leftEvents = leftTask.join();
+		final List<RawEvent> joined = new ArrayList<RawEvent>(leftEvents.size() + rightEvents.size());
+		joined.addAll(leftEvents);
+		joined.addAll(rightEvents);
+		return joined;
+	}
+
+	/**
+	 * @return index of the first byte of the next BEGIN:VEVENT line at or after
+	 *         from, or -1
+	 */
+	private int nextBoundary(final int from, final int to) {
+		for (int i = from; i <= to - BOUNDARY.length; i++) {
+			int j = 0;
+			while (j < BOUNDARY.length && this.feed.get(i + j) == BOUNDARY[j]) {
+				j++;
+			}
+			if (j == BOUNDARY.length) {
+				return i + 1;
+			}
+		}
+		return -1;
+	}
+}
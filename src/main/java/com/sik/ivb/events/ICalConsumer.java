@@ -0,0 +1,27 @@
+package com.sik.ivb.events;
+/**
+ * Receives the content lines of an iCalendar stream as they are tokenized.
+ *
+ * @author sik
+ */
+public interface ICalConsumer {
+
+	/**
+	 * BEGIN:&lt;name&gt; encountered
+	 * @param name
+	 */
+	void beginComponent(String name);
+
+	/**
+	 * END:&lt;name&gt; encountered
+	 * @param name
+	 */
+	void endComponent(String name);
+
+	/**
+	 * Any other (unfolded) content line. The line is only valid for the
+	 * duration of the call - it is reused for the next line.
+	 * @param line
+	 */
+	void property(ICalLine line);
+}
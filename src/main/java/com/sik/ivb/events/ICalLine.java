@@ -0,0 +1,213 @@
+package com.sik.ivb.events;
+/**
+ * @author sik
+ */
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reusable view over a single unfolded iCalendar content line held as UTF-8
+ * bytes: <code>name[;params]:value</code>. Strings are only created when a
+ * consumer asks for them.
+ */
+public class ICalLine {
+	private static final int INITIAL_SIZE = 256;
+	private static final byte COLON = ':';
+	private static final byte SEMICOLON = ';';
+	private static final byte DQUOTE = '"';
+	private static final byte EQUALS = '=';
+	private static final int CASE_BIT = 0x20;
+
+	private byte[] buf = new byte[INITIAL_SIZE];
+	private int length;
+	private int nameEnd;
+	private int valueStart;
+	private final CharSequence valueChars = new ValueChars();
+
+	/**
+	 * Append a byte to the line being assembled
+	 * @param b
+	 */
+	void append(final byte b) {
+		if (this.length == this.buf.length) {
+			final byte[] bigger = new byte[this.buf.length << 1];
+			System.arraycopy(this.buf, 0, bigger, 0, this.length);
+			this.buf = bigger;
+		}
+		this.buf[this.length++] = b;
+	}
+
+	void reset() {
+		this.length = 0;
+	}
+
+	int length() {
+		return this.length;
+	}
+
+	byte lastByte() {
+		return this.buf[this.length - 1];
+	}
+
+	void dropLastByte() {
+		this.length--;
+	}
+
+	/**
+	 * Locate the name/params/value boundaries of the assembled line.
+	 * @return false if the line has no value separator
+	 */
+	boolean split() {
+		this.nameEnd = -1;
+		this.valueStart = -1;
+		boolean quoted = false;
+		for (int i = 0; i < this.length; i++) {
+			final byte b = this.buf[i];
+			if (b == DQUOTE) {
+				quoted = !quoted;
+			} else if (!quoted && (b == SEMICOLON || b == COLON)) {
+				if (this.nameEnd < 0) {
+					this.nameEnd = i;
+				}
+				if (b == COLON) {
+					this.valueStart = i + 1;
+					return this.nameEnd > 0;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Is the property name (case insensitive) the supplied ASCII name?
+	 * @param name
+	 * @return
+	 */
+	public boolean isName(final String name) {
+		return this.regionEquals(0, this.nameEnd, name);
+	}
+
+	/**
+	 * Is the value (case insensitive) the supplied ASCII string?
+	 * @param value
+	 * @return
+	 */
+	public boolean isValue(final String value) {
+		return this.regionEquals(this.valueStart, this.length, value);
+	}
+
+	public String getName() {
+		return new String(this.buf, 0, this.nameEnd, StandardCharsets.US_ASCII);
+	}
+
+	public boolean hasParams() {
+		return this.valueStart - 1 > this.nameEnd;
+	}
+
+	/**
+	 * @return the parameter text between the name and value, or null
+	 */
+	public String getParams() {
+		return this.hasParams()
+				? new String(this.buf, this.nameEnd + 1, this.valueStart - this.nameEnd - 2, StandardCharsets.UTF_8)
+				: null;
+	}
+
+	/**
+	 * Value of the named parameter (quotes removed), or null if absent
+	 * @param param
+	 * @return
+	 */
+	public String getParam(final String param) {
+		int i = this.nameEnd;
+		while (i >= 0 && i < this.valueStart - 1) {
+			final int keyStart = i + 1;
+			int eq = keyStart;
+			while (eq < this.valueStart - 1 && this.buf[eq] != EQUALS) {
+				eq++;
+			}
+			int end = eq + 1;
+			boolean quoted = false;
+			while (end < this.valueStart - 1 && (quoted || this.buf[end] != SEMICOLON)) {
+				if (this.buf[end] == DQUOTE) {
+					quoted = !quoted;
+				}
+				end++;
+			}
+			if (this.regionEquals(keyStart, eq, param)) {
+				int from = eq + 1;
+				int to = end;
+				if (to - from >= 2 && this.buf[from] == DQUOTE && this.buf[to - 1] == DQUOTE) {
+					from++;
+					to--;
+				}
+				return new String(this.buf, from, Math.max(0, to - from), StandardCharsets.UTF_8);
+			}
+			i = end;
+		}
+		return null;
+	}
+
+	public String getValue() {
+		return new String(this.buf, this.valueStart, this.length - this.valueStart, StandardCharsets.UTF_8);
+	}
+
+	public int getValueLength() {
+		return this.length - this.valueStart;
+	}
+
+	/**
+	 * The value as a reusable ASCII CharSequence over the line buffer - for
+	 * parsing dates and numbers without creating a String
+	 * @return
+	 */
+	public CharSequence getValueChars() {
+		return this.valueChars;
+	}
+
+	@Override
+	public String toString() {
+		return new String(this.buf, 0, this.length, StandardCharsets.UTF_8);
+	}
+
+	private boolean regionEquals(final int from, final int to, final String s) {
+		if (to - from != s.length()) {
+			return false;
+		}
+		for (int i = 0; i < s.length(); i++) {
+			final int b = this.buf[from + i];
+			final int c = s.charAt(i);
+			if (b != c && (!isAsciiLetter(c) || (b | CASE_BIT) != (c | CASE_BIT))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isAsciiLetter(final int c) {
+		final int lower = c | CASE_BIT;
+		return lower >= 'a' && lower <= 'z';
+	}
+
+	private final class ValueChars implements CharSequence {
+
+		@Override
+		public int length() {
+			return ICalLine.this.getValueLength();
+		}
+
+		@Override
+		public char charAt(final int index) {
+			return (char) (ICalLine.this.buf[ICalLine.this.valueStart + index] & 0xFF);
+		}
+
+		@Override
+		public CharSequence subSequence(final int start, final int end) {
+			return this.toString().substring(start, end);
+		}
+
+		@Override
+		public String toString() {
+			return ICalLine.this.getValue();
+		}
+	}
+}
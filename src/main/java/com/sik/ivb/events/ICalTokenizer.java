@@ -0,0 +1,123 @@
+package com.sik.ivb.events;
+/**
+ * @author sik
+ */
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Streaming, byte level iCalendar (RFC 5545) tokenizer. Physical lines are
+ * unfolded into a single reusable buffer and handed to an {@link ICalConsumer}
+ * one content line at a time - nothing is retained between lines.
+ */
+public class ICalTokenizer {
+	private static final int BUFFER_SIZE = 8192;
+	private static final byte CR = 13;
+	private static final byte LF = 10;
+	private static final byte SPACE = 32;
+	private static final byte TAB = 9;
+	private static final String BEGIN = "BEGIN";
+	private static final String END = "END";
+	private static final String[] COMPONENTS = {
+			"VCALENDAR", "VEVENT", "VALARM", "VTIMEZONE", "STANDARD", "DAYLIGHT", "VTODO", "VJOURNAL" };
+
+	private final ICalLine line = new ICalLine();
+	private final byte[] chunk = new byte[BUFFER_SIZE];
+	private final ByteBuffer chunkBuffer = ByteBuffer.wrap(this.chunk);
+	private ICalConsumer consumer;
+	private boolean lineEnded;
+	private int lineCount;
+
+	/**
+	 * Tokenize the whole stream. The stream is not closed.
+	 * @param in
+	 * @param consumer
+	 * @return number of unfolded content lines
+	 * @throws IOException
+	 */
+	public int parse(final InputStream in, final ICalConsumer consumer) throws IOException {
+		this.start(consumer);
+		int n;
+		while ((n = in.read(this.chunk)) != -1) {
+			this.chunkBuffer.limit(n).position(0);
+			this.scan(this.chunkBuffer);
+		}
+		return this.finish();
+	}
+
+	/**
+	 * Tokenize the remaining bytes of the buffer (heap, direct or mapped).
+	 * The buffer position is advanced to its limit.
+	 * @param buffer
+	 * @param consumer
+	 * @return number of unfolded content lines
+	 */
+	public int parse(final ByteBuffer buffer, final ICalConsumer consumer) {
+		this.start(consumer);
+		this.scan(buffer);
+		return this.finish();
+	}
+
+	private void start(final ICalConsumer consumer) {
+		this.consumer = consumer;
+		this.line.reset();
+		this.lineEnded = false;
+		this.lineCount = 0;
+	}
+
+	private int finish() {
+		this.emit();
+		return this.lineCount;
+	}
+
+	private void scan(final ByteBuffer bb) {
+		final int limit = bb.limit();
+		for (int i = bb.position(); i < limit; i++) {
+			final byte b = bb.get(i);
+			if (this.lineEnded) {
+				this.lineEnded = false;
+				if (b == SPACE || b == TAB) {
+					// folded line - drop the CRLF and the single leading white space
+					continue;
+				}
+				this.emit();
+			}
+			if (b == LF) {
+				if (this.line.length() > 0 && this.line.lastByte() == CR) {
+					this.line.dropLastByte();
+				}
+				this.lineEnded = true;
+			} else {
+				this.line.append(b);
+			}
+		}
+		bb.position(limit);
+	}
+
+	private void emit() {
+		if (this.line.length() == 0) {
+			return;
+		}
+		this.lineCount++;
+		if (this.line.split()) {
+			if (this.line.isName(BEGIN)) {
+				this.consumer.beginComponent(this.componentName());
+			} else if (this.line.isName(END)) {
+				this.consumer.endComponent(this.componentName());
+			} else {
+				this.consumer.property(this.line);
+			}
+		}
+		this.line.reset();
+	}
+
+	private String componentName() {
+		for (final String c : COMPONENTS) {
+			if (this.line.isValue(c)) {
+				return c;
+			}
+		}
+		return this.line.getValue();
+	}
+}
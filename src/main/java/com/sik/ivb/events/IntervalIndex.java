@@ -0,0 +1,159 @@
+package com.sik.ivb.events;
+/**
+ * @author sik
+ */
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.sik.ivb.api.CalendarEvent;
+
+/**
+ * Overlap index over a list of events sorted by start date: an implicit
+ * augmented interval tree laid over the sorted array (node i has level equal
+ * to its trailing 1 bits and stores the maximum end of its subtree). Built in
+ * O(N) and answers overlap queries in O(log N + k), with results in start
+ * order.
+ * <p>
+ * Keys are local epoch microseconds, truncated, so the index never misses an
+ * event; the matches are then checked against the exact dates.
+ */
+public class IntervalIndex {
+	private static final int SCAN_LEVEL = 3;
+	private static final int MAX_DEPTH = 64;
+
+	private final List<CalendarEvent> events;
+	private final long[] starts;
+	private final long[] ends;
+	private final long[] maxEnds;
+	private final int maxLevel;
+
+	/**
+	 * @param events sorted by start date (CalendarEventComparator)
+	 */
+	public IntervalIndex(final List<CalendarEvent> events) {
+		this.events = events;
+		final int n = events.size();
+		this.starts = new long[n];
+		this.ends = new long[n];
+		this.maxEnds = new long[n];
+		for (int i = 0; i < n; i++) {
+			final CalendarEvent e = events.get(i);
+			this.starts[i] = EventStore.toMicros(e.getStartDate());
+			this.ends[i] = Math.max(this.starts[i], EventStore.toMicros(e.getEndDate()));
+		}
+		this.maxLevel = this.build();
+	}
+
+	/**
+	 * Index an event store, sharing its start and end arrays
+	 * @param store
+	 */
+	IntervalIndex(final EventStore store) {
+		this.events = store.asList();
+		this.starts = store.starts;
+		this.ends = store.ends;
+		this.maxEnds = new long[this.starts.length];
+		this.maxLevel = this.build();
+	}
+
+	public int size() {
+		return this.events.size();
+	}
+
+	/**
+	 * Events overlapping the closed range [from, to]: start &lt;= to and
+	 * end &gt;= from
+	 * @param from
+	 * @param to
+	 * @return
+	 */
+	public List<CalendarEvent> overlapping(final LocalDateTime from, final LocalDateTime to) {
+		if (this.events.isEmpty()) {
+			return Collections.emptyList();
+		}
+		final List<CalendarEvent> found = new ArrayList<CalendarEvent>();
+		final long lo = EventStore.toMicros(from);
+		final long hi = EventStore.toMicros(to);
+		final int n = this.starts.length;
+		// explicit stack of (level, node, left subtree done)
+		final int[] levels = new int[MAX_DEPTH];
+		final int[] nodes = new int[MAX_DEPTH];
+		final boolean[] leftDone = new boolean[MAX_DEPTH];
+		int t = 0;
+		levels[t] = this.maxLevel;
+		nodes[t] = (1 << this.maxLevel) - 1;
+		leftDone[t++] = false;
+		while (t > 0) {
+			final int k = levels[--t];
+			final int x = nodes[t];
+			if (k <= SCAN_LEVEL) {
+				// small subtree - scan it
+				final int i0 = x >> k << k;
+				final int i1 = Math.min(n, i0 + (1 << (k + 1)) - 1);
+				for (int i = i0; i < i1 && this.starts[i] <= hi; i++) {
+					this.collect(i, lo, from, to, found);
+				}
+			} else if (!leftDone[t]) {
+				final int y = x - (1 << (k - 1));
+				leftDone[t++] = true;
+				if (y >= n || this.maxEnds[y] >= lo) {
+					levels[t] = k - 1;
+					nodes[t] = y;
+					leftDone[t++] = false;
+				}
+			} else if (x < n && this.starts[x] <= hi) {
+				this.collect(x, lo, from, to, found);
+				levels[t] = k - 1;
+				nodes[t] = x + (1 << (k - 1));
+				leftDone[t++] = false;
+			}
+		}
+		return found;
+	}
+
+	private void collect(final int i, final long lo, final LocalDateTime from, final LocalDateTime to,
+			final List<CalendarEvent> found) {
+		if (this.ends[i] >= lo) {
+			final CalendarEvent e = this.events.get(i);
+			if (!e.getStartDate().isAfter(to) && !e.getEndDate().isBefore(from)) {
+				found.add(e);
+			}
+		}
+	}
+
+	/**
+	 * Fill in maxEnds bottom up
+	 * @return level of the root
+	 */
+	private int build() {
+		final int n = this.starts.length;
+		if (n == 0) {
+			return 0;
+		}
+		int lastI = 0;
+		long last = 0;
+		for (int i = 0; i < n; i += 2) {
+			lastI = i;
+			last = this.maxEnds[i] = this.ends[i];
+		}
+		int k = 1;
+		for (; 1L << k <= n; k++) {
+			final int x = 1 << (k - 1);
+			final int i0 = (x << 1) - 1;
+			final int step = x << 2;
+			for (int i = i0; i < n; i += step) {
+				final long el = this.maxEnds[i - x];
+				final long er = i + x < n ? this.maxEnds[i + x] : last;
+				this.maxEnds[i] = Math.max(this.ends[i], Math.max(el, er));
+			}
+			// move to the parent of the last node - it may lie beyond the array
+			lastI = (lastI >> k & 1) != 0 ? lastI - x : lastI + x;
+			if (lastI < n) {
+				last = Math.max(last, this.maxEnds[lastI]);
+			}
+		}
+		return k - 1;
+	}
+}
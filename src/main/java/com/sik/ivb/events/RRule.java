@@ -0,0 +1,97 @@
+package com.sik.ivb.events;
+/**
+ * @author sik
+ */
+import java.time.DayOfWeek;
+
+import com.sik.ivb.api.RepeatType;
+
+/**
+ * Structured RRULE, parsed once when the VEVENT is read
+ */
+public class RRule {
+	public static final long NO_UNTIL = Long.MIN_VALUE;
+
+	private final String rule;
+	private RepeatType freq;
+	private long until = NO_UNTIL;
+	private int count;
+	private int interval = 1;
+	private DayOfWeek[] byDay = new DayOfWeek[0];
+	private int[] byDayOrdinal = new int[0];
+	private int[] byMonthDay = new int[0];
+
+	RRule(final String rule) {
+		this.rule = rule;
+	}
+
+	/**
+	 * @return frequency, or null if the FREQ is not recognised
+	 */
+	public RepeatType getFreq() {
+		return this.freq;
+	}
+
+	void setFreq(final RepeatType freq) {
+		this.freq = freq;
+	}
+
+	/**
+	 * @return UNTIL as local epoch seconds, or NO_UNTIL
+	 */
+	public long getUntil() {
+		return this.until;
+	}
+
+	void setUntil(final long until) {
+		this.until = until;
+	}
+
+	/**
+	 * @return COUNT, or 0 if absent
+	 */
+	public int getCount() {
+		return this.count;
+	}
+
+	void setCount(final int count) {
+		this.count = count;
+	}
+
+	public int getInterval() {
+		return this.interval;
+	}
+
+	void setInterval(final int interval) {
+		this.interval = interval;
+	}
+
+	public DayOfWeek[] getByDay() {
+		return this.byDay;
+	}
+
+	/**
+	 * @return ordinal for each BYDAY entry (e.g. 2 for 2SA, -1 for -1FR), 0 if none
+	 */
+	public int[] getByDayOrdinal() {
+		return this.byDayOrdinal;
+	}
+
+	void setByDay(final DayOfWeek[] byDay, final int[] byDayOrdinal) {
+		this.byDay = byDay;
+		this.byDayOrdinal = byDayOrdinal;
+	}
+
+	public int[] getByMonthDay() {
+		return this.byMonthDay;
+	}
+
+	void setByMonthDay(final int[] byMonthDay) {
+		this.byMonthDay = byMonthDay;
+	}
+
+	@Override
+	public String toString() {
+		return this.rule;
+	}
+}
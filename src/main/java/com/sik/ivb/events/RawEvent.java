@@ -0,0 +1,165 @@
+package com.sik.ivb.events;
+/**
+ * @author sik
+ */
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.sik.ivb.google.calendar.CalField;
+
+/**
+ * A VEVENT as read from the feed. Text properties are held in an EnumMap;
+ * dates, the RRULE and EXDATEs are parsed once into typed slots so expansion
+ * never goes back to the strings. Dates are local epoch seconds.
+ */
+public class RawEvent {
+	public static final long NO_DATE = Long.MIN_VALUE;
+	public static final int UNCLASSIFIED = -1;
+
+	private final EnumMap<CalField, String> text = new EnumMap<CalField, String>(CalField.class);
+	private long start = NO_DATE;
+	private long end = NO_DATE;
+	private long lastModified = NO_DATE;
+	private long recurrenceId = NO_DATE;
+	private boolean recurrenceDate;
+	private int sequence;
+	private RRule rrule;
+	private final DateSet exDates = new DateSet();
+	private final DateSet overrides = new DateSet();
+	private int categories = UNCLASSIFIED;
+
+	public String get(final CalField field) {
+		return this.text.get(field);
+	}
+
+	void put(final CalField field, final String value) {
+		this.text.put(field, value);
+	}
+
+	/**
+	 * @return the text properties - not a copy
+	 */
+	Map<CalField, String> getText() {
+		return this.text;
+	}
+
+	public long getStart() {
+		return this.start;
+	}
+
+	void setStart(final long start) {
+		this.start = start;
+	}
+
+	public long getEnd() {
+		return this.end;
+	}
+
+	void setEnd(final long end) {
+		this.end = end;
+	}
+
+	public long getLastModified() {
+		return this.lastModified;
+	}
+
+	void setLastModified(final long lastModified) {
+		this.lastModified = lastModified;
+	}
+
+	/**
+	 * @return RECURRENCE-ID of an overridden instance, or NO_DATE
+	 */
+	public long getRecurrenceId() {
+		return this.recurrenceId;
+	}
+
+	/**
+	 * @return the RECURRENCE-ID is a DATE (VALUE=DATE)
+	 */
+	public boolean isRecurrenceDate() {
+		return this.recurrenceDate;
+	}
+
+	void setRecurrenceId(final long recurrenceId, final boolean dateOnly) {
+		this.recurrenceId = recurrenceId;
+		this.recurrenceDate = dateOnly;
+	}
+
+	public int getSequence() {
+		return this.sequence;
+	}
+
+	void setSequence(final int sequence) {
+		this.sequence = sequence;
+	}
+
+	/**
+	 * @return the RRULE, or null for a single event
+	 */
+	public RRule getRRule() {
+		return this.rrule;
+	}
+
+	void setRRule(final RRule rrule) {
+		this.rrule = rrule;
+	}
+
+	public DateSet getExDates() {
+		return this.exDates;
+	}
+
+	void addExDate(final long exDate, final boolean dateOnly) {
+		this.exDates.add(exDate, dateOnly);
+	}
+
+	/**
+	 * @return RECURRENCE-IDs of the overridden instances of a recurring event
+	 *         (each override is a VEVENT of its own)
+	 */
+	public DateSet getOverrides() {
+		return this.overrides;
+	}
+
+	/**
+	 * Is the instance starting at the supplied time excluded - by EXDATE or
+	 * because it has been overridden?
+	 * @param epochSecond
+	 * @return
+	 */
+	public boolean isExcluded(final long epochSecond) {
+		return this.exDates.contains(epochSecond) || this.overrides.contains(epochSecond);
+	}
+
+	/**
+	 * @return EventClassifier categories of the text, or UNCLASSIFIED
+	 */
+	int getCategories() {
+		return this.categories;
+	}
+
+	void setCategories(final int categories) {
+		this.categories = categories;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder();
+		builder.append("RawEvent [text=");
+		builder.append(this.text);
+		builder.append(", start=");
+		builder.append(this.start);
+		builder.append(", end=");
+		builder.append(this.end);
+		builder.append(", rrule=");
+		builder.append(this.rrule);
+		builder.append(", exDates=");
+		builder.append(this.exDates);
+		builder.append(", lastModified=");
+		builder.append(this.lastModified);
+		builder.append(", sequence=");
+		builder.append(this.sequence);
+		builder.append("]");
+		return builder.toString();
+	}
+}
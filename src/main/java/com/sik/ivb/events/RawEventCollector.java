@@ -0,0 +1,203 @@
+package com.sik.ivb.events;
+/**
+ * @author sik
+ */
+import java.time.DayOfWeek;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sik.ivb.api.M4Fields;
+import com.sik.ivb.api.RepeatType;
+import com.sik.ivb.google.calendar.CalField;
+import com.sik.ivb.utils.M4DateUtils;
+
+/**
+ * Collects each top level VEVENT (ignoring nested components such as VALARM)
+ * into a RawEvent, parsing dates, RRULE and EXDATEs as the lines arrive.
+ */
+class RawEventCollector implements ICalConsumer {
+	private static final Logger LOG = LogManager.getLogger(RawEventCollector.class);
+	private static final String VEVENT = "VEVENT";
+	private static final String CN = "CN";
+	private static final char COMMA = ',';
+	private static final int DATE_LENGTH = 8;
+	private static final long SECONDS_PER_DAY = 86400L;
+	private static final CalField[] FIELDS = CalField.values();
+	private static final String[] DAY_CODES = { "MO", "TU", "WE", "TH", "FR", "SA", "SU" };
+
+	private final M4DateUtils dateUtils = new M4DateUtils();
+	private final List<RawEvent> events = new ArrayList<RawEvent>();
+	private RawEvent event;
+	private int nested;
+
+	@Override
+	public void beginComponent(final String name) {
+		if (this.event != null) {
+			this.nested++;
+		} else if (VEVENT.equals(name)) {
+			this.event = new RawEvent();
+			this.nested = 0;
+		}
+	}
+
+	@Override
+	public void endComponent(final String name) {
+		if (this.event == null) {
+			return;
+		}
+		if (this.nested > 0) {
+			this.nested--;
+		} else if (VEVENT.equals(name)) {
+			this.events.add(this.event);
+			this.event = null;
+		}
+	}
+
+	@Override
+	public void property(final ICalLine line) {
+		if (this.event == null || this.nested > 0) {
+			return;
+		}
+		final CalField field = this.lookup(line);
+		if (field == null) {
+			return;
+		}
+		switch (field) {
+		case DTSTART:
+			this.event.setStart(this.parseDate(line));
+			break;
+		case DTEND:
+			if (line.getValueLength() == DATE_LENGTH) {
+				// a DATE end is exclusive - end on the last second of the previous day
+				this.event.setEnd(Math.floorDiv(this.parseDate(line), SECONDS_PER_DAY) * SECONDS_PER_DAY - 1);
+			} else {
+				this.event.setEnd(this.parseDate(line));
+			}
+			break;
+		case LAST_MODIFIED:
+			this.event.setLastModified(this.parseDate(line));
+			break;
+		case RECURRENCE_ID:
+			this.event.setRecurrenceId(this.parseDate(line), line.getValueLength() == DATE_LENGTH);
+			break;
+		case EXDATE:
+			final CharSequence exDates = line.getValueChars();
+			for (int from = 0, to; from < exDates.length(); from = to + 1) {
+				to = from;
+				while (to < exDates.length() && exDates.charAt(to) != COMMA) {
+					to++;
+				}
+				this.event.addExDate(this.dateUtils.parseEpochSecond(exDates, from, to), to - from == DATE_LENGTH);
+			}
+			break;
+		case RRULE:
+			this.event.setRRule(this.parseRRule(line.getValue()));
+			break;
+		case SEQUENCE:
+			this.event.setSequence(this.parseInt(line.getValue(), 0));
+			break;
+		case ORGANIZER:
+			final String cn = line.getParam(CN);
+			this.event.put(field, cn != null ? cn : line.getValue());
+			break;
+		default:
+			this.event.put(field, line.getValue());
+			break;
+		}
+	}
+
+	List<RawEvent> getEvents() {
+		return this.events;
+	}
+
+	private CalField lookup(final ICalLine line) {
+		for (final CalField f : FIELDS) {
+			if (line.isName(f.getPropertyName())) {
+				return f;
+			}
+		}
+		return null;
+	}
+
+	private long parseDate(final ICalLine line) {
+		final CharSequence value = line.getValueChars();
+		return this.dateUtils.parseEpochSecond(value, 0, value.length());
+	}
+
+	/**
+	 * FREQ=WEEKLY;UNTIL=20201231T235959Z;INTERVAL=2;BYDAY=SA
+	 */
+	private RRule parseRRule(final String value) {
+		final RRule rule = new RRule(value);
+		for (final String part : value.split(M4Fields.SEMICOLON)) {
+			final int eq = part.indexOf(M4Fields.EQUALS);
+			if (eq < 0) {
+				continue;
+			}
+			final String key = part.substring(0, eq);
+			final String val = part.substring(eq + 1);
+			if ("FREQ".equals(key)) {
+				rule.setFreq(this.parseFreq(val));
+			} else if ("UNTIL".equals(key)) {
+				rule.setUntil(this.dateUtils.parseEpochSecond(val, 0, val.length()));
+			} else if ("COUNT".equals(key)) {
+				rule.setCount(this.parseInt(val, 0));
+			} else if ("INTERVAL".equals(key)) {
+				rule.setInterval(Math.max(1, this.parseInt(val, 1)));
+			} else if ("BYDAY".equals(key)) {
+				final String[] days = val.split(M4Fields.COMMA);
+				final DayOfWeek[] byDay = new DayOfWeek[days.length];
+				final int[] ordinals = new int[days.length];
+				int n = 0;
+				for (int i = 0; i < days.length; i++) {
+					final String d = days[i].trim();
+					final DayOfWeek day = this.parseDay(d.substring(Math.max(0, d.length() - 2)));
+					if (day != null) {
+						byDay[n] = day;
+						ordinals[n++] = d.length() > 2 ? this.parseInt(d.substring(0, d.length() - 2), 0) : 0;
+					}
+				}
+				rule.setByDay(Arrays.copyOf(byDay, n), Arrays.copyOf(ordinals, n));
+			} else if ("BYMONTHDAY".equals(key)) {
+				final String[] days = val.split(M4Fields.COMMA);
+				final int[] byMonthDay = new int[days.length];
+				for (int i = 0; i < days.length; i++) {
+					byMonthDay[i] = this.parseInt(days[i], 0);
+				}
+				rule.setByMonthDay(byMonthDay);
+			}
+		}
+		return rule;
+	}
+
+	private RepeatType parseFreq(final String freq) {
+		try {
+			return RepeatType.valueOf(freq.trim());
+		} catch (final IllegalArgumentException e) {
+			LOG.warn("Unsupported RRULE frequency: " + freq);
+			return null;
+		}
+	}
+
+	private DayOfWeek parseDay(final String code) {
+		for (int i = 0; i < DAY_CODES.length; i++) {
+			if (DAY_CODES[i].equals(code)) {
+				return DayOfWeek.of(i + 1);
+			}
+		}
+		LOG.warn("Unsupported RRULE BYDAY value: " + code);
+		return null;
+	}
+
+	private int parseInt(final String value, final int defaultValue) {
+		try {
+			return Integer.parseInt(value.trim().replace("+", ""));
+		} catch (final NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+}
@@ -0,0 +1,344 @@
+package com.sik.ivb.events;
+/**
+ * @author sik
+ */
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+import com.sik.ivb.api.RepeatType;
+
+/**
+ * Lazy expansion of an RRULE (the RFC 5545 subset we see from Google:
+ * FREQ=DAILY|WEEKLY|MONTHLY|YEARLY with UNTIL, COUNT, INTERVAL, BYDAY and
+ * BYMONTHDAY). Occurrences are generated a period at a time and only for the
+ * window asked for, so an open ended rule costs nothing until a page asks
+ * for a date range.
+ * <p>
+ * Times are local epoch seconds. DTSTART is always the first occurrence.
+ * UNTIL is compared with the day it falls on, as Google writes it in UTC
+ * while DTSTART is local.
+ */
+public class Recurrence {
+	private static final long SECONDS_PER_DAY = 86400L;
+	private static final int MAX_EMPTY_PERIODS = 1000;
+	private static final long[] NONE = new long[0];
+
+	private final RRule rule;
+	private final RepeatType freq;
+	private final LocalDate startDate;
+	private final LocalTime startTime;
+	private final long start;
+	private final long duration;
+	private final long lastStart;
+
+	/**
+	 * @param rule
+	 * @param start DTSTART as local epoch seconds
+	 * @param duration seconds from an occurrence's start to its end
+	 */
+	public Recurrence(final RRule rule, final long start, final long duration) {
+		this.rule = rule;
+		this.freq = rule.getFreq();
+		final LocalDateTime dt = LocalDateTime.ofEpochSecond(start, 0, ZoneOffset.UTC);
+		this.startDate = dt.toLocalDate();
+		this.startTime = dt.toLocalTime();
+		this.start = start;
+		this.duration = duration;
+		this.lastStart = rule.getUntil() == RRule.NO_UNTIL
+				? Long.MAX_VALUE
+				: Math.floorDiv(rule.getUntil(), SECONDS_PER_DAY) * SECONDS_PER_DAY + SECONDS_PER_DAY - 1;
+	}
+
+	/**
+	 * Does the rule end (UNTIL or COUNT)?
+	 * @return
+	 */
+	public boolean isBounded() {
+		return this.rule.getUntil() != RRule.NO_UNTIL || this.rule.getCount() > 0;
+	}
+
+	public long getDuration() {
+		return this.duration;
+	}
+
+	/**
+	 * Starts of the occurrences overlapping [from, to) - start &lt; to and
+	 * start + duration &gt; from - in ascending order.
+	 * @param from
+	 * @param to
+	 * @return
+	 */
+	public PrimitiveIterator.OfLong occurrences(final long from, final long to) {
+		return new Occurrences(from, to);
+	}
+
+	private final class Occurrences implements PrimitiveIterator.OfLong {
+		private final long from;
+		private final long to;
+		private final int interval = Math.max(1, Recurrence.this.rule.getInterval());
+		private final int count = Recurrence.this.rule.getCount();
+		private long period;
+		private long[] candidates = NONE;
+		private int pos;
+		private int emitted;
+		private long next;
+		private boolean ready;
+		private boolean done;
+
+		private Occurrences(final long from, final long to) {
+			this.from = from;
+			this.to = to;
+			if (this.count == 0) {
+				// no COUNT to honour - jump straight to the period holding the window
+				final long first = from > Recurrence.this.start + Recurrence.this.duration
+						? from - Recurrence.this.duration
+						: Recurrence.this.start;
+				final LocalDate firstDate = LocalDateTime.ofEpochSecond(first, 0, ZoneOffset.UTC).toLocalDate();
+				this.period = Math.max(0L, periodsBetween(firstDate) / this.interval * this.interval);
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (!this.ready && !this.done) {
+				this.advance();
+			}
+			return this.ready;
+		}
+
+		@Override
+		public long nextLong() {
+			if (!this.hasNext()) {
+				throw new NoSuchElementException();
+			}
+			this.ready = false;
+			return this.next;
+		}
+
+		private void advance() {
+			int empty = 0;
+			while (this.pos == this.candidates.length) {
+				if (empty++ > MAX_EMPTY_PERIODS) {
+					this.done = true;
+					return;
+				}
+				this.candidates = candidates(this.period);
+				this.pos = 0;
+				this.period += this.interval;
+				if (this.candidates.length == 0 && periodStart(this.period) > Math.min(this.to, Recurrence.this.lastStart)) {
+					this.done = true;
+					return;
+				}
+			}
+			final long s = this.candidates[this.pos++];
+			if (s >= this.to || s > Recurrence.this.lastStart || (this.count > 0 && this.emitted >= this.count)) {
+				this.done = true;
+				return;
+			}
+			this.emitted++;
+			if (s + Recurrence.this.duration > this.from) {
+				this.next = s;
+				this.ready = true;
+			}
+		}
+	}
+
+	/**
+	 * Whole periods (days, weeks, months or years) from DTSTART to the date
+	 */
+	private long periodsBetween(final LocalDate date) {
+		switch (this.freq) {
+		case DAILY:
+			return ChronoUnit.DAYS.between(this.startDate, date);
+		case WEEKLY:
+			return ChronoUnit.WEEKS.between(monday(this.startDate), monday(date));
+		case MONTHLY:
+			return ChronoUnit.MONTHS.between(YearMonth.from(this.startDate), YearMonth.from(date));
+		default:
+			return date.getYear() - this.startDate.getYear();
+		}
+	}
+
+	private long periodStart(final long period) {
+		final LocalDate first;
+		switch (this.freq) {
+		case DAILY:
+			first = this.startDate.plusDays(period);
+			break;
+		case WEEKLY:
+			first = monday(this.startDate).plusWeeks(period);
+			break;
+		case MONTHLY:
+			first = YearMonth.from(this.startDate).plusMonths(period).atDay(1);
+			break;
+		default:
+			first = LocalDate.of(this.startDate.getYear(), 1, 1).plusYears(period);
+			break;
+		}
+		return first.toEpochDay() * SECONDS_PER_DAY;
+	}
+
+	/**
+	 * Sorted occurrence starts within one period, none before DTSTART
+	 */
+	private long[] candidates(final long period) {
+		LocalDate[] dates;
+		switch (this.freq) {
+		case DAILY:
+			dates = new LocalDate[] { this.startDate.plusDays(period) };
+			dates = this.filterByDay(dates);
+			break;
+		case WEEKLY:
+			dates = this.weekDays(monday(this.startDate).plusWeeks(period));
+			break;
+		case MONTHLY:
+			dates = this.monthDays(YearMonth.from(this.startDate).plusMonths(period));
+			break;
+		default:
+			final YearMonth ym = YearMonth.from(this.startDate).plusYears(period);
+			dates = ym.isValidDay(this.startDate.getDayOfMonth())
+					? new LocalDate[] { ym.atDay(this.startDate.getDayOfMonth()) }
+					: new LocalDate[0];
+			break;
+		}
+		dates = this.filterByMonthDay(dates);
+		long[] starts = new long[dates.length + (period == 0 ? 1 : 0)];
+		int n = 0;
+		if (period == 0) {
+			starts[n++] = this.start;
+		}
+		for (final LocalDate d : dates) {
+			final long s = d.atTime(this.startTime).toEpochSecond(ZoneOffset.UTC);
+			if (s > this.start) {
+				starts[n++] = s;
+			}
+		}
+		starts = Arrays.copyOf(starts, n);
+		Arrays.sort(starts);
+		return dedupe(starts);
+	}
+
+	private LocalDate[] weekDays(final LocalDate monday) {
+		final DayOfWeek[] byDay = this.rule.getByDay();
+		if (byDay.length == 0) {
+			return new LocalDate[] { monday.with(TemporalAdjusters.nextOrSame(this.startDate.getDayOfWeek())) };
+		}
+		final LocalDate[] dates = new LocalDate[byDay.length];
+		for (int i = 0; i < byDay.length; i++) {
+			dates[i] = monday.with(TemporalAdjusters.nextOrSame(byDay[i]));
+		}
+		return dates;
+	}
+
+	private LocalDate[] monthDays(final YearMonth ym) {
+		final DayOfWeek[] byDay = this.rule.getByDay();
+		if (byDay.length == 0) {
+			if (this.rule.getByMonthDay().length > 0) {
+				return this.byMonthDay(ym);
+			}
+			return ym.isValidDay(this.startDate.getDayOfMonth())
+					? new LocalDate[] { ym.atDay(this.startDate.getDayOfMonth()) }
+					: new LocalDate[0];
+		}
+		final int[] ordinals = this.rule.getByDayOrdinal();
+		LocalDate[] dates = new LocalDate[0];
+		for (int i = 0; i < byDay.length; i++) {
+			if (ordinals[i] == 0) {
+				LocalDate d = ym.atDay(1).with(TemporalAdjusters.nextOrSame(byDay[i]));
+				while (d.getMonthValue() == ym.getMonthValue()) {
+					dates = append(dates, d);
+					d = d.plusWeeks(1);
+				}
+			} else {
+				final LocalDate d = ordinals[i] > 0
+						? ym.atDay(1).with(TemporalAdjusters.nextOrSame(byDay[i])).plusWeeks(ordinals[i] - 1)
+						: ym.atEndOfMonth().with(TemporalAdjusters.previousOrSame(byDay[i])).plusWeeks(ordinals[i] + 1);
+				if (d.getMonthValue() == ym.getMonthValue()) {
+					dates = append(dates, d);
+				}
+			}
+		}
+		return dates;
+	}
+
+	private LocalDate[] byMonthDay(final YearMonth ym) {
+		LocalDate[] dates = new LocalDate[0];
+		for (final int md : this.rule.getByMonthDay()) {
+			final int day = md < 0 ? ym.lengthOfMonth() + 1 + md : md;
+			if (day >= 1 && ym.isValidDay(day)) {
+				dates = append(dates, ym.atDay(day));
+			}
+		}
+		return dates;
+	}
+
+	/**
+	 * BYDAY limits DAILY rules
+	 */
+	private LocalDate[] filterByDay(final LocalDate[] dates) {
+		final DayOfWeek[] byDay = this.rule.getByDay();
+		if (byDay.length == 0) {
+			return dates;
+		}
+		LocalDate[] kept = new LocalDate[0];
+		for (final LocalDate d : dates) {
+			for (final DayOfWeek day : byDay) {
+				if (d.getDayOfWeek() == day) {
+					kept = append(kept, d);
+					break;
+				}
+			}
+		}
+		return kept;
+	}
+
+	/**
+	 * BYMONTHDAY limits every frequency except a MONTHLY rule without BYDAY,
+	 * where it has already expanded the month
+	 */
+	private LocalDate[] filterByMonthDay(final LocalDate[] dates) {
+		final int[] byMonthDay = this.rule.getByMonthDay();
+		if (byMonthDay.length == 0 || (this.freq == RepeatType.MONTHLY && this.rule.getByDay().length == 0)) {
+			return dates;
+		}
+		LocalDate[] kept = new LocalDate[0];
+		for (final LocalDate d : dates) {
+			for (final int md : byMonthDay) {
+				if (d.getDayOfMonth() == (md < 0 ? d.lengthOfMonth() + 1 + md : md)) {
+					kept = append(kept, d);
+					break;
+				}
+			}
+		}
+		return kept;
+	}
+
+	private static LocalDate monday(final LocalDate date) {
+		return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+	}
+
+	private static LocalDate[] append(final LocalDate[] dates, final LocalDate d) {
+		final LocalDate[] bigger = Arrays.copyOf(dates, dates.length + 1);
+		bigger[dates.length] = d;
+		return bigger;
+	}
+
+	private static long[] dedupe(final long[] sorted) {
+		int n = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if (n == 0 || sorted[n - 1] != sorted[i]) {
+				sorted[n++] = sorted[i];
+			}
+		}
+		return n == sorted.length ? sorted : Arrays.copyOf(sorted, n);
+	}
+}
@@ -0,0 +1,212 @@
+package com.sik.ivb.events;
+/**
+ * @author sik
+ */
+import java.io.BufferedOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.DayOfWeek;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.sik.ivb.api.RepeatType;
+import com.sik.ivb.google.calendar.CalField;
+
+/**
+ * Binary file of an EventSnapshot - the event store's columns and string
+ * dictionary, then the open ended series - so a restart can serve the
+ * calendar before the feed is fetched. The indexes are not saved: they are
+ * rebuilt from the sorted columns in a linear pass.
+ * <p>
+ * The file starts with a magic number and format version and is ignored if
+ * either differs. It is written to a temp file and moved into place, and read
+ * through a memory mapping once larger than MAP_THRESHOLD.
+ */
+final class SnapshotFile {
+	private static final int MAGIC = 0x4D345346; // M4SF
+	private static final int FORMAT = 1;
+	private static final long MAP_THRESHOLD = 1L << 20;
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int NULL = -1;
+	private static final String TMP_SFX = ".tmp";
+	private static final CalField[] FIELDS = CalField.values();
+	private static final RepeatType[] FREQS = RepeatType.values();
+
+	private SnapshotFile() {
+	}
+
+	/**
+	 * @param snapshot
+	 * @param file
+	 * @throws IOException
+	 */
+	static void write(final EventSnapshot snapshot, final Path file) throws IOException {
+		final Path tmp = Paths.get(file + TMP_SFX);
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(tmp), BUFFER_SIZE))) {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT);
+			out.writeLong(snapshot.getVersion());
+			snapshot.getStore().writeTo(out);
+			out.writeInt(snapshot.getOpenSeries().size());
+			for (final RawEvent evt : snapshot.getOpenSeries()) {
+				writeEvent(out, evt);
+			}
+		}
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * @param file
+	 * @param expander for the open ended series
+	 * @return the snapshot saved, or null if the file is of another format
+	 * @throws IOException
+	 */
+	static EventSnapshot read(final Path file, final EventExpander expander) throws IOException {
+		final ByteBuffer in;
+		try (FileChannel fc = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (fc.size() > MAP_THRESHOLD) {
+				in = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+			} else {
+				in = ByteBuffer.allocate((int) fc.size());
+				while (in.hasRemaining() && fc.read(in) >= 0) {
+					// fill
+				}
+				in.flip();
+			}
+		}
+		if (in.remaining() < 2 * Integer.BYTES || in.getInt() != MAGIC || in.getInt() != FORMAT) {
+			return null;
+		}
+		final long version = in.getLong();
+		final EventStore store = EventStore.readFrom(in);
+		final int series = in.getInt();
+		final List<RawEvent> openSeries = new ArrayList<RawEvent>(series);
+		for (int i = 0; i < series; i++) {
+			openSeries.add(readEvent(in));
+		}
+		return new EventSnapshot(version, store, openSeries, expander);
+	}
+
+	private static void writeEvent(final DataOutput out, final RawEvent evt) throws IOException {
+		out.writeInt(evt.getText().size());
+		for (final Map.Entry<CalField, String> field : evt.getText().entrySet()) {
+			out.writeInt(field.getKey().ordinal());
+			writeString(out, field.getValue());
+		}
+		out.writeLong(evt.getStart());
+		out.writeLong(evt.getEnd());
+		out.writeLong(evt.getLastModified());
+		out.writeLong(evt.getRecurrenceId());
+		out.writeBoolean(evt.isRecurrenceDate());
+		out.writeInt(evt.getSequence());
+		final RRule rule = evt.getRRule();
+		out.writeBoolean(rule != null);
+		if (rule != null) {
+			writeString(out, rule.toString());
+			out.writeInt(rule.getFreq() == null ? NULL : rule.getFreq().ordinal());
+			out.writeLong(rule.getUntil());
+			out.writeInt(rule.getCount());
+			out.writeInt(rule.getInterval());
+			out.writeInt(rule.getByDay().length);
+			for (int i = 0; i < rule.getByDay().length; i++) {
+				out.writeInt(rule.getByDay()[i].getValue());
+				out.writeInt(rule.getByDayOrdinal()[i]);
+			}
+			out.writeInt(rule.getByMonthDay().length);
+			for (final int day : rule.getByMonthDay()) {
+				out.writeInt(day);
+			}
+		}
+		writeDates(out, evt.getExDates());
+		writeDates(out, evt.getOverrides());
+	}
+
+	private static RawEvent readEvent(final ByteBuffer in) {
+		final RawEvent evt = new RawEvent();
+		for (int fields = in.getInt(); fields > 0; fields--) {
+			final CalField field = FIELDS[in.getInt()];
+			evt.put(field, readString(in));
+		}
+		evt.setStart(in.getLong());
+		evt.setEnd(in.getLong());
+		evt.setLastModified(in.getLong());
+		final long recurrenceId = in.getLong();
+		evt.setRecurrenceId(recurrenceId, in.get() != 0);
+		evt.setSequence(in.getInt());
+		if (in.get() != 0) {
+			final RRule rule = new RRule(readString(in));
+			final int freq = in.getInt();
+			rule.setFreq(freq == NULL ? null : FREQS[freq]);
+			rule.setUntil(in.getLong());
+			rule.setCount(in.getInt());
+			rule.setInterval(in.getInt());
+			final DayOfWeek[] byDay = new DayOfWeek[in.getInt()];
+			final int[] byDayOrdinal = new int[byDay.length];
+			for (int i = 0; i < byDay.length; i++) {
+				byDay[i] = DayOfWeek.of(in.getInt());
+				byDayOrdinal[i] = in.getInt();
+			}
+			rule.setByDay(byDay, byDayOrdinal);
+			final int[] byMonthDay = new int[in.getInt()];
+			for (int i = 0; i < byMonthDay.length; i++) {
+				byMonthDay[i] = in.getInt();
+			}
+			rule.setByMonthDay(byMonthDay);
+			evt.setRRule(rule);
+		}
+		readDates(in, evt.getExDates());
+		readDates(in, evt.getOverrides());
+		return evt;
+	}
+
+	private static void writeDates(final DataOutput out, final DateSet dates) throws IOException {
+		out.writeInt(dates.getInstants().length);
+		for (final long instant : dates.getInstants()) {
+			out.writeLong(instant);
+		}
+		out.writeInt(dates.getDays().length);
+		for (final long day : dates.getDays()) {
+			out.writeLong(day);
+		}
+	}
+
+	private static void readDates(final ByteBuffer in, final DateSet dates) {
+		for (int n = in.getInt(); n > 0; n--) {
+			dates.add(in.getLong(), false);
+		}
+		for (int n = in.getInt(); n > 0; n--) {
+			dates.add(in.getLong() * DateSet.SECONDS_PER_DAY, true);
+		}
+	}
+
+	private static void writeString(final DataOutput out, final String value) throws IOException {
+		if (value == null) {
+			out.writeInt(NULL);
+			return;
+		}
+		final byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(utf8.length);
+		out.write(utf8);
+	}
+
+	private static String readString(final ByteBuffer in) {
+		final int length = in.getInt();
+		if (length == NULL) {
+			return null;
+		}
+		final byte[] utf8 = new byte[length];
+		in.get(utf8);
+		return new String(utf8, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,135 @@
+package com.sik.ivb.events;
+/**
+ * @author sik
+ */
+import java.time.LocalDateTime;
+
+import com.sik.ivb.api.CalendarEvent;
+import com.sik.ivb.api.EventType;
+import com.sik.ivb.exception.MarkIVException;
+
+/**
+ * Read only CalendarEvent backed by an occurrence in an EventStore - two
+ * references, the fields are decoded on access
+ */
+class StoredEvent extends CalendarEvent {
+	private static final String READ_ONLY = "CalendarEvent is read only: ";
+
+	private final EventStore store;
+	private final int index;
+
+	StoredEvent(final EventStore store, final int index) {
+		this.store = store;
+		this.index = index;
+	}
+
+	@Override
+	public LocalDateTime getStartDate() {
+		return this.store.getStartDate(this.index);
+	}
+
+	@Override
+	public LocalDateTime getEndDate() {
+		return this.store.getEndDate(this.index);
+	}
+
+	@Override
+	public String getSummary() {
+		return this.store.getSummary(this.index);
+	}
+
+	@Override
+	public String getLocation() {
+		return this.store.getLocation(this.index);
+	}
+
+	@Override
+	public String getNotes() {
+		return this.store.getNotes(this.index);
+	}
+
+	@Override
+	public LocalDateTime getLastUpdated() {
+		return this.store.getLastUpdated(this.index);
+	}
+
+	@Override
+	public String getLastUpdatedBy() {
+		return this.store.getLastUpdatedBy(this.index);
+	}
+
+	@Override
+	public EventType getEventType() {
+		return this.store.getEventType(this.index);
+	}
+
+	@Override
+	public Boolean isEventPrivate() {
+		return this.store.isEventPrivate(this.index);
+	}
+
+	@Override
+	public Boolean isConfirmed() {
+		return this.store.isConfirmed(this.index);
+	}
+
+	@Override
+	public String getSource() {
+		return this.store.getSource(this.index);
+	}
+
+	@Override
+	public CalendarEvent withStartDate(final LocalDateTime startDate) {
+		throw new MarkIVException(READ_ONLY + this);
+	}
+
+	@Override
+	public CalendarEvent withEndDate(final LocalDateTime endDate) {
+		throw new MarkIVException(READ_ONLY + this);
+	}
+
+	@Override
+	public CalendarEvent withSummary(final String remarks) {
+		throw new MarkIVException(READ_ONLY + this);
+	}
+
+	@Override
+	public CalendarEvent withLocation(final String location) {
+		throw new MarkIVException(READ_ONLY + this);
+	}
+
+	@Override
+	public CalendarEvent withNotes(final String notes) {
+		throw new MarkIVException(READ_ONLY + this);
+	}
+
+	@Override
+	public CalendarEvent withLastUpdated(final LocalDateTime lastUpdated) {
+		throw new MarkIVException(READ_ONLY + this);
+	}
+
+	@Override
+	public CalendarEvent withLastUpdatedBy(final String lastUpdatedBy) {
+		throw new MarkIVException(READ_ONLY + this);
+	}
+
+	@Override
+	public CalendarEvent withEventType(final EventType eventType) {
+		throw new MarkIVException(READ_ONLY + this);
+	}
+
+	@Override
+	public CalendarEvent withEventPrivate(final Boolean eventPrivate) {
+		throw new MarkIVException(READ_ONLY + this);
+	}
+
+	@Override
+	public CalendarEvent withConfirmed(final Boolean confirmed) {
+		throw new MarkIVException(READ_ONLY + this);
+	}
+
+	@Override
+	public CalendarEvent withSource(final String source) {
+		throw new MarkIVException(READ_ONLY + this);
+	}
+}
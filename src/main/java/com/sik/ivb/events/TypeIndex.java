@@ -0,0 +1,184 @@
+package com.sik.ivb.events;
+/**
+ * @author sik
+ */
+import java.util.List;
+import java.util.stream.IntStream;
+
+import com.sik.ivb.api.CalendarEvent;
+import com.sik.ivb.api.EventType;
+
+/**
+ * Secondary indexes over an event store: the occurrences of each EventType,
+ * and the confirmed gigs, as lists of store rows in start order. A start
+ * time lower bound is a binary search and the result a view over a slice of
+ * the rows - nothing is scanned or copied.
+ */
+class TypeIndex {
+	private static final int[] NONE = new int[0];
+	private static final long MICROS_PER_DAY = 86400L * EventStore.MICROS_PER_SECOND;
+
+	private final EventStore store;
+	private final int[][] byType;
+	private final int[] confirmedGigs;
+
+	TypeIndex(final EventStore store) {
+		this.store = store;
+		final EventType[] types = EventType.values();
+		final int[] counts = new int[types.length];
+		int gigs = 0;
+		for (int i = 0; i < store.size(); i++) {
+			counts[store.getEventType(i).ordinal()]++;
+			if (isConfirmedGig(store, i)) {
+				gigs++;
+			}
+		}
+		this.byType = new int[types.length][];
+		for (int t = 0; t < types.length; t++) {
+			this.byType[t] = counts[t] == 0 ? NONE : new int[counts[t]];
+			counts[t] = 0;
+		}
+		this.confirmedGigs = gigs == 0 ? NONE : new int[gigs];
+		gigs = 0;
+		for (int i = 0; i < store.size(); i++) {
+			final int t = store.getEventType(i).ordinal();
+			this.byType[t][counts[t]++] = i;
+			if (isConfirmedGig(store, i)) {
+				this.confirmedGigs[gigs++] = i;
+			}
+		}
+	}
+
+	/**
+	 * Occurrences of the type starting after the time, in start order
+	 * @param type
+	 * @param micros local epoch microseconds
+	 * @param firstPerDay only the first occurrence starting on each day
+	 * @return
+	 */
+	List<CalendarEvent> startingAfter(final EventType type, final long micros, final boolean firstPerDay) {
+		return this.slice(this.byType[type.ordinal()], micros, firstPerDay);
+	}
+
+	/**
+	 * Confirmed gigs starting after the time, in start order
+	 * @param micros local epoch microseconds
+	 * @param firstPerDay only the first gig starting on each day
+	 * @return
+	 */
+	List<CalendarEvent> confirmedGigsAfter(final long micros, final boolean firstPerDay) {
+		return this.slice(this.confirmedGigs, micros, firstPerDay);
+	}
+
+	/**
+	 * Rows matching the query, lazily - the narrowest row list for its types
+	 * and confirmed flag, cut to its start range by binary search, then the
+	 * remaining conditions checked on the store's columns
+	 * @param query
+	 * @return sequential stream of store rows
+	 */
+	IntStream query(final EventQuery query) {
+		final int[] rows = this.rowsFor(query);
+		final int size = rows == null ? this.store.size() : rows.length;
+		final int lo = query.getFrom() == null ? 0
+				: this.firstAfter(rows, size, EventStore.toMicros(query.getFrom()) - 1);
+		final int hi = query.getTo() == null ? size
+				: Math.max(lo, this.firstAfter(rows, size, EventStore.toMicros(query.getTo()) - 1));
+		IntStream matches = query.isLatestFirst()
+				? IntStream.range(lo, hi).map(i -> hi - 1 - (i - lo))
+				: IntStream.range(lo, hi);
+		if (rows != null) {
+			matches = matches.map(i -> rows[i]);
+		}
+		if (query.getTypes().size() > 1 && query.getTypes().size() < this.byType.length) {
+			int mask = 0;
+			for (final EventType type : query.getTypes()) {
+				mask |= 1 << type.ordinal();
+			}
+			final int types = mask;
+			matches = matches.filter(row -> (types & 1 << this.store.getEventType(row).ordinal()) != 0);
+		}
+		if (query.isConfirmed() != null && rows != this.confirmedGigs) {
+			final boolean confirmed = query.isConfirmed();
+			matches = matches.filter(row -> this.store.isConfirmed(row) == confirmed);
+		}
+		if (query.isEventPrivate() != null) {
+			final boolean eventPrivate = query.isEventPrivate();
+			matches = matches.filter(row -> this.store.isEventPrivate(row) == eventPrivate);
+		}
+		if (query.isFirstPerDay()) {
+			// rows arrive in start order, so each day's are adjacent
+			final long[] lastDay = { Long.MIN_VALUE };
+			matches = matches.filter(row -> {
+				final long day = Math.floorDiv(this.store.getStartMicros(row), MICROS_PER_DAY);
+				if (day == lastDay[0]) {
+					return false;
+				}
+				lastDay[0] = day;
+				return true;
+			});
+		}
+		return query.getLimit() < Long.MAX_VALUE ? matches.limit(query.getLimit()) : matches;
+	}
+
+	/**
+	 * @return the query's candidate rows, or null for every row of the store
+	 */
+	private int[] rowsFor(final EventQuery query) {
+		if (query.getTypes().size() != 1) {
+			return null;
+		}
+		final EventType type = query.getTypes().iterator().next();
+		return type == EventType.GIG && Boolean.TRUE.equals(query.isConfirmed())
+				? this.confirmedGigs
+				: this.byType[type.ordinal()];
+	}
+
+	private List<CalendarEvent> slice(final int[] rows, final long micros, final boolean firstPerDay) {
+		final int lo = this.firstAfter(rows, rows.length, micros);
+		return firstPerDay ? this.firstPerDay(rows, lo) : this.store.asList(rows, lo, rows.length);
+	}
+
+	/**
+	 * Binary search for the first of the rows starting after the time
+	 * @param rows null for every row of the store
+	 * @param size
+	 * @param micros local epoch microseconds
+	 * @return
+	 */
+	private int firstAfter(final int[] rows, final int size, final long micros) {
+		int lo = 0;
+		int hi = size;
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (this.store.getStartMicros(rows == null ? mid : rows[mid]) <= micros) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * The rows are in start order, so those starting on the same day are
+	 * adjacent - one pass comparing epoch days keeps the first of each
+	 */
+	private List<CalendarEvent> firstPerDay(final int[] rows, final int from) {
+		final int[] kept = new int[rows.length - from];
+		int n = 0;
+		long lastDay = Long.MIN_VALUE;
+		for (int i = from; i < rows.length; i++) {
+			final long day = Math.floorDiv(this.store.getStartMicros(rows[i]), MICROS_PER_DAY);
+			if (day != lastDay) {
+				kept[n++] = rows[i];
+				lastDay = day;
+			}
+		}
+		return this.store.asList(kept, 0, n);
+	}
+
+	private static boolean isConfirmedGig(final EventStore store, final int i) {
+		return store.getEventType(i) == EventType.GIG && store.isConfirmed(i);
+	}
+}
@@ -0,0 +1,53 @@
+package com.sik.ivb.events;
+/**
+ * @author sik
+ */
+/**
+ * Last seen version of a VEVENT
+ */
+class UidRecord {
+	private final long lastModified;
+	private final int sequence;
+	private final RawEvent event;
+	private final RawEvent series;
+	private final DateSet overrides;
+
+	/**
+	 * @param evt
+	 * @param openEnded the event is an open ended series, expanded on demand
+	 */
+	UidRecord(final RawEvent evt, final boolean openEnded) {
+		this.lastModified = evt.getLastModified();
+		this.sequence = evt.getSequence();
+		this.event = evt;
+		this.series = openEnded ? evt : null;
+		this.overrides = evt.getOverrides();
+	}
+
+	/**
+	 * Unchanged if LAST-MODIFIED is present and it and SEQUENCE both match -
+	 * and the same instances are overridden
+	 * @param evt
+	 * @return
+	 */
+	boolean isSameVersion(final RawEvent evt) {
+		return this.lastModified != RawEvent.NO_DATE
+				&& this.lastModified == evt.getLastModified()
+				&& this.sequence == evt.getSequence()
+				&& this.overrides.equals(evt.getOverrides());
+	}
+
+	/**
+	 * @return the VEVENT - its occurrences are the store's rows for it
+	 */
+	RawEvent getEvent() {
+		return this.event;
+	}
+
+	/**
+	 * @return the open ended series, or null
+	 */
+	RawEvent getSeries() {
+		return this.series;
+	}
+}
@@ -29,6 +29,21 @@ public class MarkIVUploader {
 	}
 
 	public boolean upload(final String project, final List<String> files) throws MarkIVException {
+		return this.upload(project, files, true);
+	}
+
+	/**
+	 * Upload files relative to LocalWebRoot on a connection of their own, so
+	 * several uploads can run at once
+	 * @param project
+	 * @param files
+	 * @param syncDirs also upload the files in UploadDirs not yet listed in
+	 *        UploadFilesList
+	 * @return
+	 * @throws MarkIVException
+	 */
+	public boolean upload(final String project, final List<String> files, final boolean syncDirs)
+			throws MarkIVException {
 
 		boolean uploadSuccessful = true;
 		final FTPClient ftp = new FTPClient();
@@ -61,7 +76,7 @@ public class MarkIVUploader {
 				fis.close();
 			}
 
-			if (uploadSuccessful) {
+			if (uploadSuccessful && syncDirs) {
 				Properties fileProps = pu.readProperties(props.getProperty("UploadFilesList"));
 				boolean fileAdded = false;
 				for (String dir : props.getProperty("UploadDirs").split(",")) {
@@ -0,0 +1,31 @@
+package com.sik.ivb.google.calendar;
+/**
+ * VEVENT properties retained in a raw event record
+ *
+ * @author sik
+ */
+public enum CalField {
+	SUMMARY("SUMMARY"),
+	LOCATION("LOCATION"),
+	CLASS("CLASS"),
+	ORGANIZER("ORGANIZER"),
+	DESCRIPTION("DESCRIPTION"),
+	UID("UID"),
+	DTSTART("DTSTART"),
+	DTEND("DTEND"),
+	EXDATE("EXDATE"),
+	RRULE("RRULE"),
+	LAST_MODIFIED("LAST-MODIFIED"),
+	SEQUENCE("SEQUENCE"),
+	RECURRENCE_ID("RECURRENCE-ID");
+
+	private final String propertyName;
+
+	private CalField(final String propertyName) {
+		this.propertyName = propertyName;
+	}
+
+	public String getPropertyName() {
+		return this.propertyName;
+	}
+}
@@ -1,21 +0,0 @@
-package com.sik.ivb.google.calendar;
-
-public class CalFields {
-	public static final String SUMMARY = "SUMMARY";
-	public static final String LOCATION = "LOCATION";
-	public static final String CLASS = "CLASS";
-	public static final String ORGANIZER = "ORGANIZER;CN";
-	public static final String DESCRIPTION = "DESCRIPTION";
-	public static final String DTSTART = "DTSTART";
-	public static final String DTEND = "DTEND";
-	public static final String EXDATE = "EXDATE";
-	public static final String RRULE = "RRULE";
-	public static final String RRULE_DAILY = "RRULE:FREQ=DAILY;UNTIL";
-	public static final String RRULE_WEEKLY = "RRULE:FREQ=WEEKLY;UNTIL";
-	public static final String RRULE_MONTHLY = "RRULE:FREQ=MONTHLY;UNTIL";
-	public static final String BEGIN_EVENT = "BEGIN:VEVENT";
-	public static final String END_EVENT = "END:VEVENT";
-	public static final String BEGIN_ALARM = "BEGIN:VALARM";
-	public static final String END_ALARM = "END:VALARM";
-	public static final String LAST_MODIFIED = "LAST-MODIFIED";
-}
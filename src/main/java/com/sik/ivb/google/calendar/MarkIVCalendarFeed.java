@@ -5,6 +5,15 @@ package com.sik.ivb.google.calendar;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 import org.apache.logging.log4j.LogManager;
@@ -14,25 +23,194 @@ import com.google.api.client.http.GenericUrl;
 import com.google.api.client.http.HttpRequest;
 import com.google.api.client.http.HttpRequestFactory;
 import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpStatusCodes;
 import com.google.api.client.http.HttpTransport;
 import com.google.api.client.http.javanet.NetHttpTransport;
+import com.sik.ivb.events.EventClassifier;
 import com.sik.ivb.exception.MarkIVException;
 import com.sik.ivb.utils.PropsUtils;
  
 public class MarkIVCalendarFeed {
 	private static final Logger LOG = LogManager.getLogger(MarkIVCalendarFeed.class);
 	private String feedUrl;
+	private String feedFile;
+	private int parallelThreshold;
+	private boolean incrementalRefresh;
+	private EventClassifier classifier;
+	private String feedCacheFile;
+	private String etag;
+	private String lastModified;
+	private String pendingEtag;
+	private String pendingLastModified;
+	private final String propsFile;
+	private final int index;
+	private String name;
+	private int calendars;
+	private int fetchThreads;
 	private static final String PROPS_FILE = "/home/sik/markiv/conf/markiv.properties";
+	private static final String VALIDATORS_SFX = ".properties";
+	private static final String TMP_SFX = ".tmp";
+	private static final String ETAG = "ETag";
+	private static final String LAST_MODIFIED = "Last-Modified";
+	private static final String CALENDAR = "calendar";
+	private static final int DEFAULT_FETCH_THREADS = 4;
+
+	public MarkIVCalendarFeed() {
+		this(PROPS_FILE);
+	}
+
+	public MarkIVCalendarFeed(final String propsFile) {
+		this(propsFile, 0);
+	}
+
+	private MarkIVCalendarFeed(final String propsFile, final int index) {
+		this.propsFile = propsFile;
+		this.index = index;
+	}
+
+	/**
+	 * A feed per calendar: FeedUrl (or FeedFile) may list several, comma
+	 * separated, named by the matching entries of FeedNames. This feed is the
+	 * first; each keeps its own validators and, after the first, caches to
+	 * FeedCacheFile suffixed with its position.
+	 * @return
+	 */
+	public List<MarkIVCalendarFeed> getCalendars() {
+		this.readProps();
+		final List<MarkIVCalendarFeed> feeds = new ArrayList<MarkIVCalendarFeed>(this.calendars);
+		feeds.add(this);
+		for (int i = 1; i < this.calendars; i++) {
+			feeds.add(new MarkIVCalendarFeed(this.propsFile, i));
+		}
+		return feeds;
+	}
+
+	/**
+	 * The calendar's FeedNames entry, calendar1, calendar2... if none
+	 * @return
+	 */
+	public String getName() {
+		this.readProps();
+		return this.name;
+	}
+
+	/**
+	 * Most calendars fetched and parsed at once (FeedThreads)
+	 * @return
+	 */
+	public int getFetchThreads() {
+		this.readProps();
+		return this.fetchThreads;
+	}
 	
+	/**
+	 * Is a local .ics file (FeedFile) configured in place of FeedUrl?
+	 * @return
+	 */
+	public boolean isFileFeed() {
+		this.readProps();
+		return this.feedFile != null && !this.feedFile.trim().isEmpty();
+	}
+
+	/**
+	 * Memory map the local .ics file named by FeedFile. The mapping stays
+	 * valid after the channel is closed, so the buffer can be parsed in place.
+	 * @return read only buffer over the whole file
+	 */
+	public ByteBuffer getMappedFeed() {
+		this.readProps();
+		final Path path = Paths.get(this.feedFile.trim());
+		LOG.info("Mapping Calendar Feed file: " + path);
+		try (FileChannel fc = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (fc.size() > Integer.MAX_VALUE) {
+				throw new MarkIVException("Calendar Feed file too large to map: " + path + " (" + fc.size() + " bytes)");
+			}
+			return fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+		} catch (IOException e) {
+			throw new MarkIVException("I/O Error mapping " + path + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Feeds over ParallelParseThreshold bytes are parsed in parallel (0 = never)
+	 * @return
+	 */
+	public int getParallelThreshold() {
+		this.readProps();
+		return this.parallelThreshold;
+	}
+
+	/**
+	 * Only re-expand VEVENTs changed since the last refresh (IncrementalRefresh)
+	 * @return
+	 */
+	public boolean isIncrementalRefresh() {
+		this.readProps();
+		return this.incrementalRefresh;
+	}
+
+	/**
+	 * Event classifier with the keyword vocabularies configured (GigKeywords,
+	 * UnavailableKeywords, PrivateKeywords, ConfirmedKeywords, WeddingKeywords) -
+	 * built on first use and kept, so the vocabularies are compiled once
+	 * @return
+	 */
+	public synchronized EventClassifier getClassifier() {
+		if (this.classifier == null) {
+			this.classifier = EventClassifier.fromProperties(new PropsUtils().readProperties(this.propsFile));
+		}
+		return this.classifier;
+	}
+
+	/**
+	 * Get the feed body. If the on-disk copy (FeedCacheFile) is still current
+	 * the server answers 304 and the cached body is returned instead.
+	 * @return
+	 */
     public InputStream getFeed() {
-    	final PropsUtils pr = new PropsUtils();
+    	return this.fetch(false);
+    }
 
-		Properties props = pr.readProperties(PROPS_FILE);
-    	this.feedUrl = props.getProperty("FeedUrl");
+	/**
+	 * Get the feed body only if it has changed since it was last fetched.
+	 * @return null if the server answered 304 Not Modified
+	 */
+	public InputStream getFeedIfModified() {
+		return this.fetch(true);
+	}
+
+	/**
+	 * Adopt the validators a body fetched without a FeedCacheFile was served
+	 * with - call once it has been parsed, so a body that failed to load is
+	 * fetched again rather than answered 304
+	 */
+	public void commitValidators() {
+		if (this.pendingEtag != null || this.pendingLastModified != null) {
+			this.etag = this.pendingEtag;
+			this.lastModified = this.pendingLastModified;
+			this.pendingEtag = null;
+			this.pendingLastModified = null;
+		}
+	}
+
+	private InputStream fetch(final boolean onlyIfModified) {
+    	this.readProps();
     	
     	if (LOG.isDebugEnabled()) {
     		LOG.debug("Getting Calendar Feed from: " + feedUrl);
     	}
+    	final Path cacheFile = this.feedCacheFile == null ? null : Paths.get(this.feedCacheFile.trim());
+    	final Path validatorsFile = cacheFile == null ? null : Paths.get(cacheFile + VALIDATORS_SFX);
+    	final boolean cached = cacheFile != null && Files.isReadable(cacheFile);
+    	this.pendingEtag = null;
+    	this.pendingLastModified = null;
+    	if (cached && this.etag == null && this.lastModified == null) {
+    		final Properties validators = new PropsUtils().readProperties(validatorsFile.toString());
+    		if (validators != null) {
+    			this.etag = validators.getProperty(ETAG);
+    			this.lastModified = validators.getProperty(LAST_MODIFIED);
+    		}
+    	}
     	HttpTransport httpTransport = new NetHttpTransport();
     	HttpRequestFactory requestFactory = httpTransport.createRequestFactory();
     	//String contentType = "UTF-8";
@@ -41,7 +219,17 @@ public class MarkIVCalendarFeed {
 		try {
 			URL url = new URL(feedUrl);
 			httpRequest = requestFactory.buildGetRequest(new GenericUrl(url));
+			if (onlyIfModified || cached) {
+				httpRequest.getHeaders().setIfNoneMatch(this.etag);
+				httpRequest.getHeaders().setIfModifiedSince(this.lastModified);
+			}
+			httpRequest.setThrowExceptionOnExecuteError(false);
 			resp = httpRequest.execute();
+			if (resp.getStatusCode() == HttpStatusCodes.STATUS_CODE_NOT_MODIFIED) {
+				resp.disconnect();
+				LOG.info("Calendar Feed returned HTTP Status: " + resp.getStatusCode() + " - not modified");
+				return onlyIfModified ? null : this.openCached(cacheFile);
+			}
 			if (resp.getStatusCode() != 200) {
 				throw new MarkIVException("Invalid HTTP Status: " + resp.getStatusCode());
 			}
@@ -50,9 +238,88 @@ public class MarkIVCalendarFeed {
 		}
 		try {
 			LOG.info("Calendar Feed returned HTTP Status: " + resp.getStatusCode());
-			return resp.getContent();
+			final String newEtag = resp.getHeaders().getETag();
+			final String newLastModified = resp.getHeaders().getLastModified();
+			if (cacheFile == null) {
+				// adopted by commitValidators once the caller has parsed the body
+				this.pendingEtag = newEtag;
+				this.pendingLastModified = newLastModified;
+				return resp.getContent();
+			}
+			this.writeCache(resp.getContent(), cacheFile, validatorsFile, newEtag, newLastModified);
+			this.etag = newEtag;
+			this.lastModified = newLastModified;
+			return this.openCached(cacheFile);
 		} catch (IOException e) {
 			throw new MarkIVException("I/O Error on getContent(): " + e.getMessage());
 		}
     }
-}
\ No newline at end of file
+
+	/**
+	 * Stream the body to a temp file next to the cache and move it into place,
+	 * then record the validators it was served with.
+	 */
+	private void writeCache(final InputStream body, final Path cacheFile, final Path validatorsFile,
+			final String etag, final String lastModified) throws IOException {
+		final Path tmp = Paths.get(cacheFile + TMP_SFX);
+		try (InputStream in = body) {
+			Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+		}
+		Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		final Properties validators = new Properties();
+		if (etag != null) {
+			validators.setProperty(ETAG, etag);
+		}
+		if (lastModified != null) {
+			validators.setProperty(LAST_MODIFIED, lastModified);
+		}
+		new PropsUtils().writeProperties(validators, validatorsFile.toString());
+		LOG.info("Calendar Feed cached: " + cacheFile + " (" + Files.size(cacheFile) + " bytes)");
+	}
+
+	private InputStream openCached(final Path cacheFile) {
+		if (cacheFile == null) {
+			throw new MarkIVException("HTTP 304 received but no FeedCacheFile configured");
+		}
+		try {
+			return Files.newInputStream(cacheFile);
+		} catch (IOException e) {
+			throw new MarkIVException("I/O Error reading cached feed " + cacheFile + ": " + e.getMessage());
+		}
+	}
+
+    private void readProps() {
+    	final PropsUtils pr = new PropsUtils();
+
+		Properties props = pr.readProperties(this.propsFile);
+    	final String[] urls = entries(props.getProperty("FeedUrl"));
+    	final String[] files = entries(props.getProperty("FeedFile"));
+    	final String[] names = entries(props.getProperty("FeedNames"));
+    	this.calendars = Math.max(1, files.length > 0 ? files.length : urls.length);
+    	this.feedUrl = entry(urls, this.index);
+    	this.feedFile = entry(files, this.index);
+    	this.name = this.index < names.length ? names[this.index] : CALENDAR + (this.index + 1);
+    	this.feedCacheFile = props.getProperty("FeedCacheFile");
+    	if (this.feedCacheFile != null && this.index > 0) {
+    		this.feedCacheFile = this.feedCacheFile.trim() + "." + this.index;
+    	}
+    	this.fetchThreads = Integer.parseInt(props.getProperty("FeedThreads", String.valueOf(DEFAULT_FETCH_THREADS)).trim());
+    	this.parallelThreshold = Integer.parseInt(props.getProperty("ParallelParseThreshold", "0").trim());
+    	this.incrementalRefresh = Boolean.parseBoolean(props.getProperty("IncrementalRefresh", "false").trim());
+    }
+
+    private static String[] entries(final String value) {
+    	if (value == null || value.trim().isEmpty()) {
+    		return new String[0];
+    	}
+    	final String[] entries = value.split(",");
+    	for (int i = 0; i < entries.length; i++) {
+    		entries[i] = entries[i].trim();
+    	}
+    	return entries;
+    }
+
+    private static String entry(final String[] entries, final int index) {
+    	return index < entries.length ? entries[index] : null;
+    }
+}
@@ -0,0 +1,93 @@
+package com.sik.ivb.html;
+/**
+ * @author sik
+ */
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import com.sik.ivb.api.CalendarEvent;
+
+/**
+ * A cheap 64 bit hash (FNV-1a) of the data a page is built from. A page whose
+ * fingerprint is unchanged would be built the same, bar its "updated"
+ * timestamp, so needn't be built or uploaded again.
+ */
+public final class Fingerprint {
+	private static final long OFFSET = 0xcbf29ce484222325L;
+	private static final long PRIME = 0x100000001b3L;
+	private static final long NULL = 0x9e3779b97f4a7c15L;
+
+	private long hash = OFFSET;
+
+	public Fingerprint add(final long value) {
+		long v = value;
+		for (int i = 0; i < Long.BYTES; i++) {
+			this.hash = (this.hash ^ (v & 0xff)) * PRIME;
+			v >>>= Byte.SIZE;
+		}
+		return this;
+	}
+
+	public Fingerprint add(final boolean value) {
+		return this.add(value ? 1 : 0);
+	}
+
+	public Fingerprint add(final CharSequence value) {
+		if (value == null) {
+			return this.add(NULL);
+		}
+		for (int i = 0; i < value.length(); i++) {
+			this.hash = (this.hash ^ value.charAt(i)) * PRIME;
+		}
+		// the length ends the string, so "ab"+"c" differs from "a"+"bc"
+		return this.add(value.length());
+	}
+
+	public Fingerprint add(final LocalDate value) {
+		return value == null ? this.add(NULL) : this.add(value.toEpochDay());
+	}
+
+	public Fingerprint add(final LocalDateTime value) {
+		return value == null ? this.add(NULL) : this.add(value.toEpochSecond(ZoneOffset.UTC)).add(value.getNano());
+	}
+
+	/**
+	 * @param event the fields a page shows or selects by
+	 * @return
+	 */
+	public Fingerprint add(final CalendarEvent event) {
+		return this.add(event.getStartDate())
+				.add(event.getEndDate())
+				.add(event.getEventType() == null ? NULL : event.getEventType().ordinal())
+				.add(event.getSummary())
+				.add(event.getLocation())
+				.add(event.getNotes())
+				.add(Boolean.TRUE.equals(event.isEventPrivate()))
+				.add(Boolean.TRUE.equals(event.isConfirmed()))
+				.add(event.getLastUpdated());
+	}
+
+	/**
+	 * A template or other file, by its size and modification time rather
+	 * than its content
+	 * @param file or null for none
+	 * @return
+	 * @throws IOException
+	 */
+	public Fingerprint addFile(final Path file) throws IOException {
+		if (file == null) {
+			return this.add(NULL);
+		}
+		final BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+		return this.add(attrs.size()).add(attrs.lastModifiedTime().toMillis());
+	}
+
+	public long get() {
+		return this.hash;
+	}
+}
@@ -4,6 +4,7 @@
 package com.sik.ivb.html;
 
 import java.io.File;
+import java.io.IOException;
 
 public class GalleryManager {
 
@@ -23,12 +24,18 @@ public class GalleryManager {
     		"Ian Jukes Photography</a>, Zak K, Joe K & Steve B";
     private static final String HTML_TOP4 = "</td></tr>\n";
 
-    public String buildGalleryHtml(final String localWebRoot, final String galleryDir) {
+    /**
+     * Stream the gallery page body: a thumbnail linking to each picture
+     * @param localWebRoot
+     * @param galleryDir
+     * @param sb
+     * @throws IOException
+     */
+    public void writeGalleryBody(final String localWebRoot, final String galleryDir, final Appendable sb)
+            throws IOException {
         final File folder = new File(localWebRoot + galleryDir);
         final File[] listOfFiles = folder.listFiles();
 
-        final StringBuilder sb = new StringBuilder();
-
         sb.append(HTML_TOP1).append(HTML_TOP2).append(HTML_TOP3).append(HTML_TOP4).append(HTML_TOP1);
         for (final File f : listOfFiles) {
             if (f.isFile() && !f.getName().startsWith(".")) {
@@ -42,7 +49,21 @@ public class GalleryManager {
             }
         }
         sb.append(HTML_TOP4);
+    }
 
-        return sb.toString();
+    /**
+     * The gallery page's inputs: the names of the pictures it links to
+     * @param localWebRoot
+     * @param galleryDir
+     * @return
+     */
+    public Fingerprint galleryFingerprint(final String localWebRoot, final String galleryDir) {
+        final Fingerprint fp = new Fingerprint().add(galleryDir);
+        for (final File f : new File(localWebRoot + galleryDir).listFiles()) {
+            if (f.isFile() && !f.getName().startsWith(".")) {
+                fp.add(f.getName());
+            }
+        }
+        return fp;
     }
 }
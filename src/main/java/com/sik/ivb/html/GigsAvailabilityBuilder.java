@@ -4,11 +4,13 @@
 package com.sik.ivb.html;
 
 import java.io.IOException;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -20,7 +22,10 @@ import com.sik.ivb.api.CalendarEvent;
 import com.sik.ivb.api.EventType;
 import com.sik.ivb.api.M4Date;
 import com.sik.ivb.api.UpdateRecord;
+import com.sik.ivb.events.AvailabilityMap;
 import com.sik.ivb.events.EventManager;
+import com.sik.ivb.events.EventQuery;
+import com.sik.ivb.events.EventSnapshot;
 import com.sik.ivb.utils.M4DateUtils;
 
 public class GigsAvailabilityBuilder {
@@ -29,7 +34,6 @@ public class GigsAvailabilityBuilder {
 	private static final DateTimeFormatter GIG_DF = DateTimeFormatter.ofPattern("EEE d MMMM ha");
 	private static final DateTimeFormatter AVL_DF = DateTimeFormatter.ofPattern("EEE d MMM yyyy").withLocale(Locale.UK);
 
-	private static final String GIG = "gig";
 	private static final int GIG_DAYS_AHEAD = 183;
 	private static final int AVL_DAYS_AHEAD = 400;
 	private static final String PRIVATE_PARTY = "Private Party";
@@ -40,47 +44,38 @@ public class GigsAvailabilityBuilder {
 	private static final String RECENT_ASTER = " *";
 
 	private EventManager eventMgr;
-	private HtmlManager htmlMgr;
 	private M4DateUtils du;
+	private PageTemplates templates;
 
 	public GigsAvailabilityBuilder(final EventManager eventMgr) {
+		this(eventMgr, PageTemplates.defaults());
+	}
+
+	/**
+	 * @param eventMgr
+	 * @param templates the site's page templates
+	 */
+	public GigsAvailabilityBuilder(final EventManager eventMgr, final PageTemplates templates) {
 		super();
 
-		this.htmlMgr = new HtmlManager();
+		this.templates = templates;
 		this.du = new M4DateUtils();
 		this.eventMgr = eventMgr;
 	}
 
-	public String buildGigs(final String header, final String trailer)
-			throws IOException {
-
-		final StringBuilder out = new StringBuilder();
-
-		if (header != null) {
-			out.append(this.htmlMgr.readFileAsString(header));
-		}
-		
-		out.append(this.gigsBodyBuilder());
-		
-		if (trailer != null) {
-			out.append(this.htmlMgr.readFileAsString(trailer));
-		}
-
-		return out.toString();
-	}
-
-	public String gigsBodyBuilder() {
+	/**
+	 * Stream the gigs page body
+	 * @param events the version of the calendar to build from
+	 * @param gigsHtml
+	 * @throws IOException
+	 */
+	public void writeGigsBody(final EventSnapshot events, final Appendable gigsHtml) throws IOException {
 
-		List<CalendarEvent> gigs = eventMgr.getConfirmedGigs();
+		List<CalendarEvent> gigs = events.query(this.gigsQuery(LocalDateTime.now()))
+			.collect(Collectors.toList());
 
-		final StringBuilder gigsHtml = new StringBuilder();
 		// set up title
-		gigsHtml.append(HtmlSnippets.GIG_HEAD_FMT1)
-			.append(HtmlSnippets.GIG_HEAD_FMT2)
-			.append(HtmlSnippets.GIG_HEAD_FMT3)
-			.append(HtmlSnippets.GIG_HEAD_FMT4)
-			.append(HtmlSnippets.GIG_HEAD_FMT5)
-			.append(HtmlSnippets.GIG_HEAD_FMT6);
+		this.templates.render(PageTemplate.GIGS_HEAD, gigsHtml);
 		StringBuilder location = null;
 		if (gigs.size() > 0) {
 			for (final CalendarEvent e : gigs) {
@@ -88,7 +83,7 @@ public class GigsAvailabilityBuilder {
 				LOG.info("Confirmed gig: " + e.getStartDate().toString() + " : " + e.getLocation());
 				if (e.getStartDate()
 						.isBefore(this.getDateHence(GIG_DAYS_AHEAD))) {
-					if (isGig(e)) {
+					if (e.getEventType() == EventType.GIG) {
 						if (e.isEventPrivate()) {
 							location.append(PRIVATE_PARTY);
 						} else {
@@ -104,13 +99,10 @@ public class GigsAvailabilityBuilder {
 							}
 						}
 						if (location != null && location.length() > 0) {
-							gigsHtml.append(String.format(HtmlSnippets.GIG1_FORMAT,
-											this.du.adjustForDaylightSaving(e.getStartDate()).format(GIG_DF), 
-											getLocName(location)));
-							gigsHtml.append(NEWLINE);
-							gigsHtml.append(String.format(HtmlSnippets.GIG2_FORMAT,
-											getLocAddr(location)));
-							gigsHtml.append(NEWLINE);
+							this.templates.render(PageTemplate.GIG_ROW, gigsHtml,
+									this.du.adjustForDaylightSaving(e.getStartDate()).format(GIG_DF),
+									getLocName(location),
+									getLocAddr(location));
 						} else {
 							LOG.warn("Location missing for event: " + e);
 						}
@@ -121,9 +113,29 @@ public class GigsAvailabilityBuilder {
 			gigsHtml.append(HtmlSnippets.NO_GIGS + NEWLINE);
 		}
 		gigsHtml.append(HtmlSnippets.TR_END + HtmlSnippets.TABLE_END + NEWLINE);
-		gigsHtml.append(String.format(HtmlSnippets.LAST_UPD_FMT, new Date()));
+		this.templates.render(PageTemplate.PAGE_UPDATED, gigsHtml, new Date());
 		LOG.info(gigs.size() + " Gig(s) found.");
-		return gigsHtml.toString();
+	}
+
+	/**
+	 * The gigs page's slice of the calendar: the confirmed gigs in the next
+	 * GIG_DAYS_AHEAD, one per day
+	 * @param events
+	 * @return
+	 */
+	public Fingerprint gigsFingerprint(final EventSnapshot events) {
+		final Fingerprint fp = new Fingerprint();
+		events.query(this.gigsQuery(LocalDateTime.now())).forEach(fp::add);
+		return fp;
+	}
+
+	private EventQuery gigsQuery(final LocalDateTime now) {
+		return new EventQuery()
+				.withTypes(EventType.GIG)
+				.withConfirmed(true)
+				.withFrom(now)
+				.withTo(now.plusDays(GIG_DAYS_AHEAD))
+				.withFirstPerDay(true);
 	}
 
 	/**
@@ -147,47 +159,29 @@ public class GigsAvailabilityBuilder {
 	}
 
 	/**
-	 * @param e
-	 * @return
+	 * Stream the availability page body
+	 * @param events the version of the calendar to build from
+	 * @param availHtml
+	 * @throws IOException
 	 */
-	private boolean isGig(CalendarEvent e) {
-		return e.getSummary().toLowerCase().contains(GIG);
-	}
-
-	public String buildAvail(final String header, final String trailer)
-			throws IOException {
-		final StringBuilder out = new StringBuilder();
-
-		if (header != null) {
-			out.append(this.htmlMgr.readFileAsString(header));
-		}
-		out.append(this.availBodyBuilder());
-		if (trailer != null) {
-			out.append(this.htmlMgr.readFileAsString(trailer));
-		}
+	public void writeAvailBody(final EventSnapshot events, final Appendable availHtml) throws IOException {
 
-		return out.toString();
-	}
-
-	public String availBodyBuilder() {
-
-		final StringBuilder availHtml = new StringBuilder();
-
-		final UpdateRecord ur = this.eventMgr.getLatestUpdate();
+		final UpdateRecord ur = events.getLatestUpdate();
 
 		availHtml.append(HtmlSnippets.TABLE);
 		availHtml.append(HtmlSnippets.TR + HtmlSnippets.TD + NEWLINE);
 		availHtml.append(HtmlSnippets.AVAIL_HEAD);
 		availHtml.append(HtmlSnippets.TD_END + HtmlSnippets.TR_END + NEWLINE);
 		availHtml.append(HtmlSnippets.TR + HtmlSnippets.TD + NEWLINE);
-		availHtml.append(String.format(HtmlSnippets.N1 + HtmlSnippets.CAL_LAST_UPD_FMT + HtmlSnippets.N1_END + NEWLINE, ur
-						.getLastUpdated().toLocalDate()));
-		availHtml.append(String.format(HtmlSnippets.LAST_UPD_FMT, new Date()));
+		this.templates.render(PageTemplate.CALENDAR_UPDATED, availHtml, ur.getLastUpdated().toLocalDate());
+		this.templates.render(PageTemplate.PAGE_UPDATED, availHtml, new Date());
 		availHtml.append(HtmlSnippets.TD_END + HtmlSnippets.TR_END + NEWLINE);
 		availHtml.append(HtmlSnippets.TR + HtmlSnippets.TD + NEWLINE);
 		availHtml.append(HtmlSnippets.N1 + NEWLINE);
 
 		M4Date rolling = new M4Date();
+		final AvailabilityMap availability = events
+				.getAvailability(rolling.getStartTime().toLocalDate(), AVL_DAYS_AHEAD);
 
 		int availTotal = 0;
 		boolean dateClear = true;
@@ -196,13 +190,14 @@ public class GigsAvailabilityBuilder {
 
 			// LOG.info("Checking: " + rolling.getStartTime().toDate());
 
-			final List<CalendarEvent> eventsOnDate = this.eventMgr
-					.getEventsOn(rolling);
+			final LocalDate day = rolling.getStartTime().toLocalDate();
+			final List<CalendarEvent> eventsOnDate = availability.getEvents(day);
 			remarks = new StringBuilder();
-			dateClear = (eventsOnDate.size() == 0);
+			dateClear = availability.isClear(day);
 
+			final String colour;
 			if (dateClear) {
-				availHtml.append(String.format(HtmlSnippets.FONT_COLOR_FMT, HtmlSnippets.GREEN));
+				colour = HtmlSnippets.GREEN;
 				availTotal++;
 			} else {
 				this.debug(rolling.getStartTime().toLocalDate() + ": "
@@ -210,11 +205,8 @@ public class GigsAvailabilityBuilder {
 				for (CalendarEvent ce : eventsOnDate) {
 					this.debug("\tce=" + ce);
 				}
-				boolean unavailable = false;
+				final boolean unavailable = availability.has(day, EventType.UNAVAILABILITY);
 				for (final CalendarEvent e : eventsOnDate) {
-					if (e.getEventType() == EventType.UNAVAILABILITY) {
-						unavailable = true;
-					}
 					if (!remarks.toString().isEmpty()) {
 						remarks.append(HtmlSnippets.SLASH);
 					}
@@ -229,21 +221,13 @@ public class GigsAvailabilityBuilder {
 						remarks.append(RECENT_ASTER);
 					}
 				}
-				if (unavailable) {
-					availHtml.append(String.format(HtmlSnippets.FONT_COLOR_FMT, HtmlSnippets.RED));
-				} else {
-					availHtml.append(String
-							.format(HtmlSnippets.FONT_COLOR_FMT, HtmlSnippets.AMBER));
-				}
-
+				colour = unavailable ? HtmlSnippets.RED : HtmlSnippets.AMBER;
 			}
-			availHtml.append(String.format(HtmlSnippets.AVAIL_FMT, 
-					rolling.getStartTime().format(AVL_DF), 
-					dateClear ? AVAILABLE:EMPTY_STRING, 
-					remarks.toString()));
-			availHtml.append(HtmlSnippets.FONT_END + NEWLINE);
+			final String date = rolling.getStartTime().format(AVL_DF);
+			this.templates.render(PageTemplate.AVAIL_ROW, availHtml, colour, date,
+					dateClear ? AVAILABLE : EMPTY_STRING, remarks);
 
-			if (rolling.getStartTime().format(AVL_DF).startsWith(SUN)) {
+			if (date.startsWith(SUN)) {
 				availHtml.append(HtmlSnippets.HTML_HR + NEWLINE);
 			}
 			rolling.rollDate(1);
@@ -252,7 +236,29 @@ public class GigsAvailabilityBuilder {
 		availHtml.append(HtmlSnippets.TABLE_END);
 		LOG.info("Availability: " + availTotal + "/" + AVL_DAYS_AHEAD
 				+ " days available.");
-		return availHtml.toString();
+	}
+
+	/**
+	 * The availability page's slice of the calendar: every event in the next
+	 * AVL_DAYS_AHEAD, whether each was recently updated, and the day the
+	 * calendar was last updated
+	 * @param events
+	 * @return
+	 */
+	public Fingerprint availFingerprint(final EventSnapshot events) {
+		final LocalDate firstDay = new M4Date().getStartTime().toLocalDate();
+		final AvailabilityMap availability = events.getAvailability(firstDay, AVL_DAYS_AHEAD);
+		final Fingerprint fp = new Fingerprint()
+				.add(events.getLatestUpdate().getLastUpdated().toLocalDate())
+				.add(firstDay);
+		for (int i = 0; i < AVL_DAYS_AHEAD; i++) {
+			final LocalDate day = firstDay.plusDays(i);
+			fp.add(availability.isClear(day)).add(availability.has(day, EventType.UNAVAILABILITY));
+			for (final CalendarEvent e : availability.getEvents(day)) {
+				fp.add(e).add(this.isRecentlyUpdated(e.getLastUpdated()));
+			}
+		}
+		return fp;
 	}
 
 	private LocalDateTime getDateHence(final int daysAhead) {
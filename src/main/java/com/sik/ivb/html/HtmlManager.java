@@ -2,45 +2,85 @@ package com.sik.ivb.html;
 /**
  * @author sik
  */
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+
+import com.sik.ivb.exception.MarkIVException;
 
 public class HtmlManager {
 
+    /** Pages and their templates are UTF-8, so template bytes are written as read */
+    public static final Charset CHARSET = StandardCharsets.UTF_8;
+
+    private static final TemplateCache TEMPLATES = new TemplateCache();
+
+    /**
+     * A page body written straight to the page's file
+     */
+    @FunctionalInterface
+    public interface PageBody {
+        void writeTo(Appendable out) throws IOException;
+    }
+
     public HtmlManager() {}
 
-    public String readFileAsString(final String fn) throws IOException {
-        final StringBuilder sb = new StringBuilder();
-        final BufferedReader br = new BufferedReader(new FileReader(fn));
-        try {
-            String line = br.readLine();
-            while (line != null) {
-                sb.append(line).append("\n");
-                line = br.readLine();
+    /**
+     * A header or trailer template, from the cache
+     * @param fn
+     * @return the template with its line endings as in the file
+     * @throws IOException
+     */
+    public String readTemplate(final String fn) throws IOException {
+        return new String(TEMPLATES.get(Paths.get(fn)), CHARSET);
+    }
+
+    /**
+     * Stream a page - the cached header bytes, the body and the cached trailer
+     * bytes - to a temp file and move it into place, so the page is either
+     * the old one or the whole new one
+     * @param fileName
+     * @param header template file, or null for none
+     * @param body
+     * @param trailer template file, or null for none
+     * @throws IOException the page is unchanged
+     */
+    public void writePage(final String fileName, final String header, final PageBody body, final String trailer)
+            throws IOException {
+        try (PageWriter out = new PageWriter(Paths.get(fileName))) {
+            if (header != null) {
+                out.write(TEMPLATES.get(Paths.get(header)));
             }
-        } catch (final IOException e) {
-            e.printStackTrace();
-        } finally {
-            br.close();
+            body.writeTo(out);
+            if (trailer != null) {
+                out.write(TEMPLATES.get(Paths.get(trailer)));
+            }
+            out.commit();
         }
-        return sb.toString();
     }
 
-    public void writeHtmlFile(final String fileName, final String html) {
-        BufferedWriter writer = null;
+    public void writePage(final String fileName, final String header, final String body, final String trailer)
+            throws IOException {
+        this.writePage(fileName, header, out -> out.append(body), trailer);
+    }
+
+    /**
+     * @param body
+     * @return the body as a string
+     */
+    public static String render(final PageBody body) {
+        final StringBuilder out = new StringBuilder();
         try {
-            writer = new BufferedWriter(new FileWriter(fileName));
-            writer.write(html);
+            body.writeTo(out);
         } catch (final IOException e) {
-        } finally {
-            try {
-                if (writer != null)
-                    writer.close();
-            } catch (final IOException e) {
-            }
+            // not thrown by a StringBuilder
+            throw new MarkIVException("Exception occurred:", e);
         }
+        return out.toString();
+    }
+
+    public void writeHtmlFile(final String fileName, final String html) throws IOException {
+        this.writePage(fileName, null, html, null);
     }
 }
@@ -4,6 +4,7 @@
 package com.sik.ivb.html;
 
 import java.io.IOException;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Date;
@@ -15,7 +16,10 @@ import org.apache.logging.log4j.Logger;
 //import org.joda.time.format.DateTimeFormatter;
 
 import com.sik.ivb.api.CalendarEvent;
+import com.sik.ivb.api.EventType;
 import com.sik.ivb.events.EventManager;
+import com.sik.ivb.events.EventQuery;
+import com.sik.ivb.events.EventSnapshot;
 import com.sik.ivb.events.EventUtility;
 import com.sik.ivb.utils.M4DateUtils;
 
@@ -33,54 +37,44 @@ public class NewsPageBuilder {
 			+ "<a href=\"https://soundcloud.com/markiv-1/sets/drivin-west\" target=\"-blank\">here</a>";
 	
 	private EventManager eventMgr;
-	private HtmlManager htmlMgr;
 	private M4DateUtils du;
-	private EventUtility eu = new EventUtility();
+	private EventUtility eu;
+	private PageTemplates templates;
 	
 
 	public NewsPageBuilder(final EventManager eventMgr) {
+		this(eventMgr, PageTemplates.defaults());
+	}
+
+	/**
+	 * @param eventMgr
+	 * @param templates the site's page templates
+	 */
+	public NewsPageBuilder(final EventManager eventMgr, final PageTemplates templates) {
 		super();
 
-		this.htmlMgr = new HtmlManager();
+		this.templates = templates;
 		this.du = new M4DateUtils();
 		this.eventMgr = eventMgr;
+		this.eu = new EventUtility(eventMgr.getClassifier());
 	}
 
-	public String buildNews(final String header, final String trailer)
-			throws IOException {
-
-		final StringBuilder out = new StringBuilder();
-
-		if (header != null) {
-			out.append(this.htmlMgr.readFileAsString(header));
-		}
-		out.append(this.newsBodyBuilder());
-		if (trailer != null) {
-			out.append(this.htmlMgr.readFileAsString(trailer));
-		}
-
-		return out.toString();
-	}
-
-	public String newsBodyBuilder() {
-		List<CalendarEvent> gigs = eventMgr.getConfirmedGigs();
-
-		final StringBuilder newsHtml = new StringBuilder();
+	/**
+	 * Stream the news page body
+	 * @param events the version of the calendar to build from
+	 * @param newsHtml
+	 * @throws IOException
+	 */
+	public void writeNewsBody(final EventSnapshot events, final Appendable newsHtml) throws IOException {
 		// set up title
-		newsHtml.append(HtmlSnippets.NEWS_HEAD_FMT1)
-			.append(HtmlSnippets.NEWS_HEAD_FMT2)
-			.append(HtmlSnippets.NEWS_HEAD_FMT3)
-			.append(HtmlSnippets.NEWS_HEAD_FMT4)
-			.append(HtmlSnippets.NEWS_HEAD_FMT5)
-			.append(HtmlSnippets.NEWS_HEAD_FMT6)
-			.append(HtmlSnippets.NEWS_HEAD_FMT7);
+		this.templates.render(PageTemplate.NEWS_HEAD, newsHtml);
 		
-		CalendarEvent nextPublicGig = this.getNextPublicGig(gigs);
+		CalendarEvent nextPublicGig = this.getNextPublicGig(events);
 		if (nextPublicGig != null) {
 			LOG.info("Next gig: " + nextPublicGig.toString());
-			newsHtml.append(String.format(HtmlSnippets.NEWS_FORMAT, 
-					this.du.adjustForDaylightSaving(nextPublicGig.getStartDate()).format(NEWS_GIG_DF), 
-					HtmlSnippets.cleanForHtml(nextPublicGig.getLocation())));
+			this.templates.render(PageTemplate.NEXT_GIG, newsHtml,
+					this.du.adjustForDaylightSaving(nextPublicGig.getStartDate()).format(NEWS_GIG_DF),
+					HtmlSnippets.cleanForHtml(nextPublicGig.getLocation()));
 		}
 		
 		for (String newsItem: this.getFixedNewsItems()) {
@@ -88,26 +82,43 @@ public class NewsPageBuilder {
 			newsHtml.append(HtmlSnippets.cleanForHtml(newsItem + HtmlSnippets.HTML_BREAK + HtmlSnippets.HTML_BREAK + NEWLINE));
 		}
 				 
-		newsHtml.append(String.format(HtmlSnippets.LAST_UPDATE_FORMAT,	new Date()));
+		this.templates.render(PageTemplate.NEWS_UPDATED, newsHtml, new Date());
 		
 		newsHtml.append(HtmlSnippets.NEWS_TAIL_FMT8 + NEWLINE);
-		
-		return newsHtml.toString();
 	}
 
 	/**
-	 * @param gigs
+	 * The news page's slice of the calendar: the next public gig
+	 * @param events
 	 * @return
 	 */
-	private CalendarEvent getNextPublicGig(List<CalendarEvent> gigs) {
-		if (gigs.size() > 0) {
-			for (final CalendarEvent e : gigs) {
-				if (eu.isGig(e) && !eu.isEventPrivate(e)) {
-					return e;
-				}
-			}
+	public Fingerprint newsFingerprint(final EventSnapshot events) {
+		final Fingerprint fp = new Fingerprint();
+		final CalendarEvent nextPublicGig = this.getNextPublicGig(events);
+		if (nextPublicGig != null) {
+			fp.add(nextPublicGig);
+		}
+		for (final String newsItem : this.getFixedNewsItems()) {
+			fp.add(newsItem);
 		}
-		return null;
+		return fp;
+	}
+
+	/**
+	 * First of the confirmed gigs from now, one per day, that isn't private -
+	 * stops at the first match rather than listing them all
+	 * @param events
+	 * @return
+	 */
+	private CalendarEvent getNextPublicGig(final EventSnapshot events) {
+		return events.query(new EventQuery()
+				.withTypes(EventType.GIG)
+				.withConfirmed(true)
+				.withFrom(LocalDateTime.now())
+				.withFirstPerDay(true))
+			.filter(e -> !eu.isEventPrivate(e))
+			.findFirst()
+			.orElse(null);
 	}
 
 	private List<String> getFixedNewsItems() {
@@ -0,0 +1,37 @@
+package com.sik.ivb.html;
+/**
+ * @author sik
+ *
+ */
+public enum PageTemplate {
+	GIGS_HEAD("gigs.head"),
+	GIG_ROW("gig.row", "date", "venue", "address"),
+	CALENDAR_UPDATED("calendar.updated", "date"),
+	AVAIL_ROW("avail.row", "colour", "date", "available", "remarks"),
+	PAGE_UPDATED("page.updated", "updated"),
+	NEWS_HEAD("news.head"),
+	NEXT_GIG("news.next", "date", "venue"),
+	NEWS_UPDATED("news.updated", "updated");
+
+	private final String key;
+	private final String[] params;
+
+	PageTemplate(final String key, final String... params) {
+		this.key = key;
+		this.params = params;
+	}
+
+	/**
+	 * @return the template's key in the templates file
+	 */
+	public String getKey() {
+		return this.key;
+	}
+
+	/**
+	 * @return the placeholders, in the order the template is rendered with
+	 */
+	public String[] getParams() {
+		return this.params.clone();
+	}
+}
@@ -0,0 +1,98 @@
+package com.sik.ivb.html;
+/**
+ * @author sik
+ */
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sik.ivb.exception.MarkIVException;
+
+/**
+ * The compiled page templates. The defaults are in templates.properties on
+ * the classpath; a site's TemplatesFile overrides any of them, so the layout
+ * can be changed without a rebuild.
+ */
+public final class PageTemplates {
+	private static final Logger LOG = LogManager.getLogger(PageTemplates.class);
+	private static final String DEFAULTS = "/templates.properties";
+	private static final PageTemplate[] TEMPLATES = PageTemplate.values();
+
+	private final Template[] templates = new Template[TEMPLATES.length];
+
+	private PageTemplates(final Properties props) {
+		for (final PageTemplate t : TEMPLATES) {
+			final String source = props.getProperty(t.getKey());
+			if (source == null) {
+				throw new MarkIVException("Template missing: " + t.getKey());
+			}
+			this.templates[t.ordinal()] = Template.compile(t.getKey(), source, t.getParams());
+		}
+	}
+
+	/**
+	 * @return the templates in templates.properties
+	 */
+	public static PageTemplates defaults() {
+		return Defaults.TEMPLATES;
+	}
+
+	/**
+	 * @param file overrides for the default templates, or null for none
+	 * @return
+	 * @throws MarkIVException the file is not readable or a template doesn't compile
+	 */
+	public static PageTemplates load(final String file) {
+		if (file == null) {
+			return defaults();
+		}
+		final Properties props = new Properties(Defaults.PROPS);
+		try (Reader in = Files.newBufferedReader(Paths.get(file.trim()), StandardCharsets.UTF_8)) {
+			props.load(in);
+		} catch (final IOException e) {
+			throw new MarkIVException("Templates not readable: " + file, e);
+		}
+		LOG.info("Templates loaded: " + file);
+		return new PageTemplates(props);
+	}
+
+	public Template get(final PageTemplate template) {
+		return this.templates[template.ordinal()];
+	}
+
+	/**
+	 * @param template
+	 * @param out
+	 * @param args one per placeholder, in the order of the template's params
+	 * @throws IOException
+	 */
+	public void render(final PageTemplate template, final Appendable out, final Object... args) throws IOException {
+		this.templates[template.ordinal()].render(out, args);
+	}
+
+	private static final class Defaults {
+		private static final Properties PROPS = read();
+		private static final PageTemplates TEMPLATES = new PageTemplates(PROPS);
+
+		private static Properties read() {
+			final Properties props = new Properties();
+			try (InputStream in = PageTemplates.class.getResourceAsStream(DEFAULTS)) {
+				if (in == null) {
+					throw new MarkIVException("Templates missing from classpath: " + DEFAULTS);
+				}
+				props.load(new InputStreamReader(in, StandardCharsets.UTF_8));
+			} catch (final IOException e) {
+				throw new MarkIVException("Templates not readable: " + DEFAULTS, e);
+			}
+			return props;
+		}
+	}
+}
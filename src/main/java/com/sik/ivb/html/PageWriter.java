@@ -0,0 +1,128 @@
+package com.sik.ivb.html;
+/**
+ * @author sik
+ */
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A page streamed to a temp file beside it through a file channel, encoding
+ * into a direct buffer that is reused by each page built on the thread, so
+ * memory does not grow with the page. commit moves the finished page into
+ * place; closing without a commit deletes the temp file, leaving any
+ * previous page untouched.
+ * <p>
+ * One PageWriter at a time per thread, as they share the thread's buffer.
+ */
+final class PageWriter implements Appendable, Closeable {
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final String TMP_SFX = ".tmp";
+	private static final ThreadLocal<ByteBuffer> BUFFERS = ThreadLocal
+			.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+	private final Path file;
+	private final Path tmp;
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private final CharsetEncoder encoder = HtmlManager.CHARSET.newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	private boolean committed;
+
+	/**
+	 * @param file the page
+	 * @throws IOException
+	 */
+	PageWriter(final Path file) throws IOException {
+		this.file = file;
+		this.tmp = file.resolveSibling(file.getFileName() + TMP_SFX);
+		this.channel = FileChannel.open(this.tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		this.buffer = BUFFERS.get();
+		this.buffer.clear();
+	}
+
+	/**
+	 * @param bytes already encoded, e.g. a cached template
+	 * @return
+	 * @throws IOException
+	 */
+	PageWriter write(final byte[] bytes) throws IOException {
+		if (bytes.length > this.buffer.remaining()) {
+			this.drain();
+		}
+		if (bytes.length > this.buffer.remaining()) {
+			this.writeFully(ByteBuffer.wrap(bytes));
+		} else {
+			this.buffer.put(bytes);
+		}
+		return this;
+	}
+
+	@Override
+	public PageWriter append(final CharSequence csq) throws IOException {
+		final CharBuffer in = CharBuffer.wrap(csq == null ? "null" : csq);
+		CoderResult result = this.encoder.encode(in, this.buffer, true);
+		while (result.isOverflow()) {
+			this.drain();
+			result = this.encoder.encode(in, this.buffer, true);
+		}
+		while (this.encoder.flush(this.buffer).isOverflow()) {
+			this.drain();
+		}
+		this.encoder.reset();
+		return this;
+	}
+
+	@Override
+	public PageWriter append(final CharSequence csq, final int start, final int end) throws IOException {
+		return this.append((csq == null ? "null" : csq).subSequence(start, end));
+	}
+
+	@Override
+	public PageWriter append(final char c) throws IOException {
+		return this.append(String.valueOf(c));
+	}
+
+	/**
+	 * Flush the page to disk and move it into place
+	 * @throws IOException
+	 */
+	void commit() throws IOException {
+		this.drain();
+		this.channel.force(false);
+		this.channel.close();
+		Files.move(this.tmp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		this.committed = true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!this.committed) {
+			this.channel.close();
+			Files.deleteIfExists(this.tmp);
+		}
+	}
+
+	private void drain() throws IOException {
+		this.buffer.flip();
+		this.writeFully(this.buffer);
+		this.buffer.clear();
+	}
+
+	private void writeFully(final ByteBuffer bytes) throws IOException {
+		while (bytes.hasRemaining()) {
+			this.channel.write(bytes);
+		}
+	}
+}
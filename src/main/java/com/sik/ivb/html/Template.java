@@ -0,0 +1,95 @@
+package com.sik.ivb.html;
+/**
+ * @author sik
+ */
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.sik.ivb.exception.MarkIVException;
+
+/**
+ * A snippet of markup with ${name} placeholders, compiled once into the
+ * literal text between the placeholders and the argument each placeholder
+ * takes, so rendering a row is a run of appends with no format string to
+ * parse. Arguments are appended as they are, like %s.
+ */
+public final class Template {
+	private static final String OPEN = "${";
+	private static final String CLOSE = "}";
+
+	private final String name;
+	private final String[] literals;
+	private final int[] slots;
+	private final int params;
+
+	private Template(final String name, final String[] literals, final int[] slots, final int params) {
+		this.name = name;
+		this.literals = literals;
+		this.slots = slots;
+		this.params = params;
+	}
+
+	/**
+	 * @param name for errors
+	 * @param source
+	 * @param params the placeholder names, in the order render takes them
+	 * @return
+	 * @throws MarkIVException a placeholder that isn't one of the params
+	 */
+	public static Template compile(final String name, final String source, final String... params) {
+		final List<String> names = Arrays.asList(params);
+		final List<String> literals = new ArrayList<String>();
+		final List<Integer> slots = new ArrayList<Integer>();
+		int from = 0;
+		int open = source.indexOf(OPEN);
+		while (open >= 0) {
+			final int close = source.indexOf(CLOSE, open + OPEN.length());
+			if (close < 0) {
+				break;
+			}
+			final String param = source.substring(open + OPEN.length(), close);
+			final int slot = names.indexOf(param);
+			if (slot < 0) {
+				throw new MarkIVException("Template " + name + " - unknown placeholder: " + OPEN + param + CLOSE);
+			}
+			literals.add(source.substring(from, open));
+			slots.add(slot);
+			from = close + CLOSE.length();
+			open = source.indexOf(OPEN, from);
+		}
+		literals.add(source.substring(from));
+		return new Template(name, literals.toArray(new String[0]),
+				slots.stream().mapToInt(Integer::intValue).toArray(), params.length);
+	}
+
+	/**
+	 * @param out
+	 * @param args one per param
+	 * @throws IOException
+	 */
+	public void render(final Appendable out, final Object... args) throws IOException {
+		if (args.length != this.params) {
+			throw new MarkIVException("Template " + this.name + " takes " + this.params + " args, not " + args.length);
+		}
+		out.append(this.literals[0]);
+		for (int i = 0; i < this.slots.length; i++) {
+			final Object arg = args[this.slots[i]];
+			out.append(arg instanceof CharSequence ? (CharSequence) arg : String.valueOf(arg));
+			out.append(this.literals[i + 1]);
+		}
+	}
+
+	/**
+	 * @param args one per param
+	 * @return the rendered template
+	 */
+	public String format(final Object... args) {
+		return HtmlManager.render(out -> this.render(out, args));
+	}
+
+	public String getName() {
+		return this.name;
+	}
+}
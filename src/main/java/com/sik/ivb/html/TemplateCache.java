@@ -0,0 +1,57 @@
+package com.sik.ivb.html;
+/**
+ * @author sik
+ */
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Header and trailer templates held as the bytes written to the pages, keyed
+ * by path. Templates are read raw, so their line endings are kept, and each
+ * lookup revalidates against the file's size and modification time so an
+ * edited template is picked up by the next build.
+ * <p>
+ * The arrays returned are shared between builders and must not be modified.
+ */
+class TemplateCache {
+
+    private final ConcurrentMap<Path, CachedFile> templates = new ConcurrentHashMap<>();
+
+    /**
+     * @param path
+     * @return the template's bytes, read again only if the file has changed
+     * @throws IOException
+     */
+    byte[] get(final Path path) throws IOException {
+        final BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        final CachedFile cached = this.templates.get(path);
+        if (cached != null && cached.isCurrent(attrs)) {
+            return cached.bytes;
+        }
+        // attrs taken before the read: a change in between is re-read next time
+        final CachedFile read = new CachedFile(attrs, Files.readAllBytes(path));
+        this.templates.put(path, read);
+        return read.bytes;
+    }
+
+    private static final class CachedFile {
+        private final FileTime modified;
+        private final long size;
+        private final byte[] bytes;
+
+        private CachedFile(final BasicFileAttributes attrs, final byte[] bytes) {
+            this.modified = attrs.lastModifiedTime();
+            this.size = attrs.size();
+            this.bytes = bytes;
+        }
+
+        private boolean isCurrent(final BasicFileAttributes attrs) {
+            return this.size == attrs.size() && this.modified.equals(attrs.lastModifiedTime());
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.sik.ivb.site;
+/**
+ * @author sik
+ */
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sik.ivb.api.UpdateRecord;
+import com.sik.ivb.events.EventManager;
+import com.sik.ivb.events.EventSnapshot;
+import com.sik.ivb.exception.MarkIVException;
+import com.sik.ivb.google.calendar.MarkIVCalendarFeed;
+import com.sik.ivb.utils.MarkIVHelper;
+import com.sik.ivb.utils.PropsUtils;
+
+/**
+ * One band's web site: its calendar feeds, events, pages, templates and
+ * upload target, all configured by its own properties file. Sites share no
+ * state, so several can be updated at once in one JVM.
+ */
+public class Site {
+	private static final Logger LOG = LogManager.getLogger(Site.class);
+	private static final DateTimeFormatter DTF = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+	private static final long NANOS_PER_MILLI = 1000000L;
+	private static final int DEFAULT_PAGE_THREADS = 4;
+
+	private final String name;
+	private final MarkIVCalendarFeed feed;
+	private final List<MarkIVCalendarFeed> calendars;
+	private final EventManager em;
+	private final MarkIVHelper m4h;
+	private final AtomicBoolean updating = new AtomicBoolean();
+	private final ExecutorService workers;
+	private LocalDateTime webLastUpdateTime;
+
+	/**
+	 * Load the site's calendars. Pages are built on PageThreads threads.
+	 * With a SnapshotFile saved by an earlier run the site is ready at once
+	 * from the snapshot and the calendars are loaded in the background; each
+	 * refresh saves the snapshot.
+	 * @param propsFile
+	 */
+	public Site(final String propsFile) {
+		final Properties props = new PropsUtils().readProperties(propsFile);
+		if (props == null) {
+			throw new MarkIVException("Site properties not readable: " + propsFile);
+		}
+		this.name = props.getProperty("ProjectName", Paths.get(propsFile).getFileName().toString());
+		this.feed = new MarkIVCalendarFeed(propsFile);
+		this.calendars = this.feed.getCalendars();
+		this.em = new EventManager(this.feed.getParallelThreshold(), this.feed.isIncrementalRefresh(),
+				this.feed.getClassifier());
+		final String snapshotFile = props.getProperty("SnapshotFile");
+		final boolean warmStart = snapshotFile != null && this.em.restore(Paths.get(snapshotFile.trim()));
+		if (!warmStart) {
+			this.em.loadFromFeeds(this.calendars, this.feed.getFetchThreads());
+		}
+		this.m4h = new MarkIVHelper(this.em, propsFile);
+		this.workers = Executors.newFixedThreadPool(
+				Integer.parseInt(props.getProperty("PageThreads", String.valueOf(DEFAULT_PAGE_THREADS)).trim()),
+				task -> {
+					final Thread worker = new Thread(task, this.name + "-pages");
+					worker.setDaemon(true);
+					return worker;
+				});
+		this.webLastUpdateTime = LocalDateTime.ofEpochSecond(0, 0, ZoneOffset.UTC);
+		LOG.info(this.name + " - Initialised" + (warmStart ? " from snapshot" : ""));
+		if (warmStart) {
+			final Thread refresh = new Thread(this::loadCalendars, this.name + "-refresh");
+			refresh.setDaemon(true);
+			refresh.start();
+		}
+	}
+
+	private void loadCalendars() {
+		try {
+			this.em.loadFromFeeds(this.calendars, this.feed.getFetchThreads());
+			LOG.info(this.name + " - Calendars loaded after warm start");
+		} catch (final RuntimeException e) {
+			LOG.error(this.name + " - Calendars failed to load after warm start", e);
+		}
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	public EventManager getEventManager() {
+		return this.em;
+	}
+
+	/**
+	 * Refresh the calendars and, if they changed (or forced), rebuild and
+	 * upload the pages
+	 * @param forceUpdate
+	 * @return false if skipped because the previous update is still running
+	 */
+	public boolean update(final boolean forceUpdate) {
+		if (!this.updating.compareAndSet(false, true)) {
+			LOG.info(this.name + " - Skipped - previous update still running");
+			return false;
+		}
+		try {
+			this.doUpdate(forceUpdate);
+			return true;
+		} finally {
+			this.updating.set(false);
+		}
+	}
+
+	/**
+	 * Build the pages concurrently from one version of the calendar, each
+	 * uploaded as soon as it is written; the other files go up after the
+	 * gallery page, which lists the upload dirs
+	 * @param events
+	 * @return all uploads succeeded
+	 */
+	private boolean buildAndUpload(final EventSnapshot events) {
+		final Stages stages = new Stages(this.name, this.workers);
+		final CompletableFuture<Boolean> gigs = this.publish(stages, "Gigs", this.m4h.getGigsHtmlFile(),
+				() -> this.m4h.gigsFingerprint(events), () -> this.m4h.buildGigsPage(events));
+		final CompletableFuture<Boolean> avail = this.publish(stages, "Availability", this.m4h.getAvailHtmlFile(),
+				() -> this.m4h.availFingerprint(events), () -> this.m4h.buildAvailPage(events));
+		final CompletableFuture<Void> stats = stages.start("Availability Stats",
+				() -> this.m4h.doAvailabilityStats(events));
+		final CompletableFuture<Boolean> news = this.publish(stages, "News", this.m4h.getNewsHtmlFile(),
+				() -> this.m4h.newsFingerprint(events), () -> this.m4h.buildNewsPage(events));
+		final CompletableFuture<Boolean> gallery = this.publish(stages, "Gallery", this.m4h.getGalleryHtmlFile(),
+				this.m4h::galleryFingerprint, this.m4h::buildGalleryPage);
+		final CompletableFuture<Boolean> others = stages.then(gallery,
+				"Uploading Other Files", this.m4h::uploadOtherFiles);
+		stages.await(gigs, avail, stats, news, gallery, others);
+		return gigs.join() && avail.join() && news.join() && gallery.join() && others.join();
+	}
+
+	/**
+	 * Build and upload a page, unless the inputs it declares are those it
+	 * was last published from - so a run with a change to one page, or a
+	 * forced run with none, doesn't rebuild and upload them all
+	 * @param stages
+	 * @param page
+	 * @param pageFile
+	 * @param fingerprint of the page's inputs
+	 * @param build
+	 * @return the page is up to date on the site
+	 */
+	private CompletableFuture<Boolean> publish(final Stages stages, final String page, final String pageFile,
+			final LongSupplier fingerprint, final Runnable build) {
+		final CompletableFuture<Long> built = stages.start("Building " + page + " Page", () -> {
+			final long inputs = fingerprint.getAsLong();
+			if (this.m4h.isPublished(pageFile, inputs)) {
+				LOG.info(this.name + " - " + page + " Page unchanged - skipped");
+				return null;
+			}
+			build.run();
+			return inputs;
+		});
+		return stages.then(built, "Uploading " + page + " Page", () -> {
+			final Long inputs = built.join();
+			if (inputs == null) {
+				return true;
+			}
+			final boolean uploaded = this.m4h.uploadPage(pageFile);
+			if (uploaded) {
+				this.m4h.setPublished(pageFile, inputs);
+			}
+			return uploaded;
+		});
+	}
+
+	private void doUpdate(final boolean forceUpdate) {
+		LOG.info(this.name + " - Checking calendar....");
+
+		this.em.updateFromFeeds(this.calendars, this.feed.getFetchThreads());
+
+		UpdateRecord lu = this.em.getLatestUpdate();
+
+		LOG.info(this.name + " - Cal updated: " + lu.getLastUpdated().format(DTF) +
+				" - Web updated: " + this.webLastUpdateTime.format(DTF));
+
+		if (forceUpdate || lu.getLastUpdated().isAfter(this.webLastUpdateTime)) {
+
+			if (!forceUpdate) {
+				LOG.info(this.name + " - Last update: " + lu.getLastUpdated().format(DTF)
+						+ " (" + lu.getEvent().getEventType() + ":"
+						+ lu.getEvent().getSummary() + ")");
+			}
+
+			final long t0 = System.nanoTime();
+			if (this.buildAndUpload(this.em.getSnapshot())) {
+				this.webLastUpdateTime = LocalDateTime.now();
+				LOG.info(this.name + " - Last update time set to: "
+						+ this.webLastUpdateTime.toString());
+			}
+
+			LOG.info(this.name + " - Completed in " + (System.nanoTime() - t0) / NANOS_PER_MILLI + "ms");
+		} else {
+			LOG.info(this.name + " - Skipped - no calendar updates");
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package com.sik.ivb.site;
+/**
+ * @author sik
+ */
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sik.ivb.exception.MarkIVException;
+
+/**
+ * A small DAG of update stages on an executor. A stage starts as soon as the
+ * stages it depends on have completed, each is timed and logged, and a stage
+ * whose dependency failed is not run.
+ */
+class Stages {
+	private static final Logger LOG = LogManager.getLogger(Stages.class);
+	private static final long NANOS_PER_MILLI = 1000000L;
+
+	private final String name;
+	private final Executor executor;
+
+	/**
+	 * @param name prefix for the log
+	 * @param executor
+	 */
+	Stages(final String name, final Executor executor) {
+		this.name = name;
+		this.executor = executor;
+	}
+
+	/**
+	 * A stage with no dependencies
+	 * @param stage
+	 * @param task
+	 * @return
+	 */
+	<T> CompletableFuture<T> start(final String stage, final Supplier<T> task) {
+		return CompletableFuture.supplyAsync(() -> this.timed(stage, task), this.executor);
+	}
+
+	CompletableFuture<Void> start(final String stage, final Runnable task) {
+		return this.start(stage, () -> {
+			task.run();
+			return null;
+		});
+	}
+
+	/**
+	 * A stage run once the other has completed
+	 * @param after
+	 * @param stage
+	 * @param task
+	 * @return
+	 */
+	<T> CompletableFuture<T> then(final CompletableFuture<?> after, final String stage, final Supplier<T> task) {
+		return after.thenApplyAsync(done -> this.timed(stage, task), this.executor);
+	}
+
+	/**
+	 * Wait for the stages - all of them, even if one fails
+	 * @param stages
+	 * @throws MarkIVException the first failure
+	 */
+	void await(final CompletableFuture<?>... stages) {
+		try {
+			CompletableFuture.allOf(stages).join();
+		} catch (final CompletionException e) {
+			throw e.getCause() instanceof MarkIVException
+					? (MarkIVException) e.getCause()
+					: new MarkIVException(this.name + " - Stage failed", e.getCause());
+		}
+	}
+
+	private <T> T timed(final String stage, final Supplier<T> task) {
+		final long t0 = System.nanoTime();
+		try {
+			return task.get();
+		} finally {
+			LOG.info(this.name + " - " + stage + ": " + (System.nanoTime() - t0) / NANOS_PER_MILLI + "ms");
+		}
+	}
+}
@@ -5,6 +5,7 @@ package com.sik.ivb.utils;
  */
 
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 
 import org.apache.logging.log4j.LogManager;
@@ -16,10 +17,7 @@ import com.sik.ivb.api.RepeatType;
 public class M4DateUtils {
 	
 	private static final Logger LOG = LogManager.getLogger(M4DateUtils.class);
-	private static final DateTimeFormatter DFZ = DateTimeFormatter.ofPattern("YYYYMMDD'T'HHmmSS'Z'");
-	private static final DateTimeFormatter DFT = DateTimeFormatter.ofPattern("YYYYMMDD'T'HHmmSS");
-	private static final DateTimeFormatter DFS = DateTimeFormatter.ofPattern("YYYYMMDD");
-	private static final DateTimeFormatter YYYYMMDDHHMMSS = DateTimeFormatter.ofPattern("yyyyMMddhhmmss");
+	private static final DateTimeFormatter YYYYMMDDHHMMSS = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
 	private static final DateTimeFormatter YYYYMMDD = DateTimeFormatter.ofPattern("yyyyMMdd");
 	private static final int DST_START_DAY = 85;
 	private static final int DST_END_DAY = 300;
@@ -42,6 +40,33 @@ public class M4DateUtils {
 	public static final int DAY_LIMIT = 7;
 	public static final int OBSOLETE_DAY_LIMIT = 2;
 	public static final LocalDateTime RECENT_UPDATE_DATE = LocalDateTime.now().minusDays(DAY_LIMIT);
+
+	private static final int CACHE_SIZE = 256;
+	private static final char COLON = ':';
+	private static final char CHAR_T = 'T';
+	private static final char CHAR_Z = 'Z';
+	private static final int NOMINAL_HH = 12;
+	private static final int NOMINAL_MM = 34;
+	private static final int NOMINAL_SS = 56;
+	private static final long SECONDS_PER_DAY = 86400L;
+	private static final int[] DAYS_IN_MONTH = { 31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 };
+
+	/**
+	 * Recently converted epoch seconds - DTSTART/LAST-MODIFIED of a repeating
+	 * event are converted once per occurrence. Entries are immutable so the
+	 * cache can be shared by parser threads; a race only costs a miss.
+	 */
+	private final CachedDate[] dateCache = new CachedDate[CACHE_SIZE];
+
+	private static final class CachedDate {
+		private final long epochSecond;
+		private final LocalDateTime dateTime;
+
+		private CachedDate(final long epochSecond, final LocalDateTime dateTime) {
+			this.epochSecond = epochSecond;
+			this.dateTime = dateTime;
+		}
+	}
 		
 	/**
 	 * Parse the input string to isolate the date string. 
@@ -76,6 +101,8 @@ public class M4DateUtils {
 			return date.plusDays(increment * 7);
 		case DAILY:
 			return date.plusDays(increment);
+		case YEARLY:
+			return date.plusYears(increment);
 		}
 
 		return date.plusDays(increment);
@@ -132,19 +159,7 @@ public class M4DateUtils {
 	 * @return
 	 */
 	public LocalDateTime formatLocalDate(final String inDate) {
-		LocalDateTime outDate = LocalDateTime.now();
-		
-		if (inDate.length() == VALID_DATE_16) {
-			outDate = LocalDateTime.parse(inDate, DFZ);
-		} else if (inDate.length() == VALID_DATE_15) {
-			outDate = LocalDateTime.parse(inDate, DFT);
-		} else if (inDate.length() == VALID_DATE_8) {
-			outDate = LocalDateTime.parse(inDate, DFS);
-		} else {
-			throw new IllegalStateException("Unexpected date format:"
-					+ inDate + " - len=" + inDate.length());
-		}
-		return outDate;
+		return this.parseDate(inDate);
 	}
 	
 	/**
@@ -212,4 +227,109 @@ public class M4DateUtils {
 					DAY_END_SS, 
 					DAY_END_MS);
 	}
+
+	/**
+	 * Local date/time as epoch seconds (the calendar's wall clock, no zone).
+	 * @param dateTime
+	 * @return
+	 */
+	public long toEpochSecond(final LocalDateTime dateTime) {
+		return dateTime.toEpochSecond(ZoneOffset.UTC);
+	}
+
+	/**
+	 * Inverse of toEpochSecond.
+	 * @param epochSecond
+	 * @return
+	 */
+	public LocalDateTime fromEpochSecond(final long epochSecond) {
+		final int slot = (int) (epochSecond ^ (epochSecond >>> 17)) & (CACHE_SIZE - 1);
+		final CachedDate cached = this.dateCache[slot];
+		if (cached != null && cached.epochSecond == epochSecond) {
+			return cached.dateTime;
+		}
+		final LocalDateTime dateTime = LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+		this.dateCache[slot] = new CachedDate(epochSecond, dateTime);
+		return dateTime;
+	}
+
+	/**
+	 * Parse an iCalendar date/date-time - 20200101, 20200101T200000,
+	 * 20200101T200000Z, optionally prefixed by VALUE=DATE: or TZID=...:
+	 * @param inDate
+	 * @return
+	 */
+	public LocalDateTime parseDate(final CharSequence inDate) {
+		return this.fromEpochSecond(this.parseEpochSecond(inDate, 0, inDate.length()));
+	}
+
+	/**
+	 * Allocation free parse of an iCalendar date/date-time (see parseDate)
+	 * straight from the characters. A date without a time gets the same
+	 * nominal 12:34:56 as formatDate.
+	 * @param cs
+	 * @param from
+	 * @param to
+	 * @return local epoch seconds
+	 */
+	public long parseEpochSecond(final CharSequence cs, final int from, final int to) {
+		int i = to;
+		while (i > from && cs.charAt(i - 1) != COLON) {
+			i--;
+		}
+		final int len = to - i;
+		if (len != VALID_DATE_8 && len != VALID_DATE_15 && len != VALID_DATE_16
+				|| (len >= VALID_DATE_15 && cs.charAt(i + VALID_DATE_8) != CHAR_T)
+				|| (len == VALID_DATE_16 && cs.charAt(i + VALID_DATE_15) != CHAR_Z)) {
+			throw new IllegalStateException("Unexpected date format:"
+					+ cs.subSequence(from, to) + " - len=" + len);
+		}
+		final int year = digits(cs, i, 4);
+		final int month = digits(cs, i + 4, 2);
+		final int day = digits(cs, i + 6, 2);
+		int hh = NOMINAL_HH;
+		int mm = NOMINAL_MM;
+		int ss = NOMINAL_SS;
+		if (len > VALID_DATE_8) {
+			hh = digits(cs, i + 9, 2);
+			mm = digits(cs, i + 11, 2);
+			ss = digits(cs, i + 13, 2);
+		}
+		if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+				|| hh > DAY_END_HH || mm > DAY_END_MM || ss > DAY_END_SS) {
+			throw new IllegalStateException("Unexpected date format:" + cs.subSequence(from, to));
+		}
+		return epochDay(year, month, day) * SECONDS_PER_DAY + hh * 3600 + mm * 60 + ss;
+	}
+
+	private static int digits(final CharSequence cs, final int from, final int count) {
+		int value = 0;
+		for (int i = from; i < from + count; i++) {
+			final int d = cs.charAt(i) - '0';
+			if (d < 0 || d > 9) {
+				throw new IllegalStateException("Unexpected date format: non digit at " + i + " in " + cs);
+			}
+			value = value * 10 + d;
+		}
+		return value;
+	}
+
+	private static int daysInMonth(final int year, final int month) {
+		if (month == 2 && (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0))) {
+			return 29;
+		}
+		return DAYS_IN_MONTH[month - 1];
+	}
+
+	/**
+	 * Days since 1970-01-01 of a proleptic Gregorian date
+	 */
+	private static long epochDay(final int year, final int month, final int day) {
+		final int y = month <= 2 ? year - 1 : year;
+		final int era = (y >= 0 ? y : y - 399) / 400;
+		final int yoe = y - era * 400;
+		final int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		final int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+		return era * 146097L + doe - 719468L;
+	}
 }
@@ -5,25 +5,33 @@ package com.sik.ivb.utils;
  */
 import java.io.IOException;
 import java.text.DecimalFormat;
+import java.nio.file.Paths;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.sik.ivb.api.CalendarEvent;
 import com.sik.ivb.api.EventType;
+import com.sik.ivb.events.AvailabilityMap;
 import com.sik.ivb.events.EventManager;
+import com.sik.ivb.events.EventSnapshot;
 import com.sik.ivb.exception.MarkIVException;
 import com.sik.ivb.ftp.MarkIVUploader;
+import com.sik.ivb.html.Fingerprint;
 import com.sik.ivb.html.GalleryManager;
 import com.sik.ivb.html.GigsAvailabilityBuilder;
 import com.sik.ivb.html.HtmlManager;
 import com.sik.ivb.html.NewsPageBuilder;
+import com.sik.ivb.html.PageTemplates;
 
 public class MarkIVHelper {
 	private static final Logger LOG = LogManager.getLogger(MarkIVHelper.class);
@@ -32,6 +40,7 @@ public class MarkIVHelper {
 	private static final double DAYS_IN_YEAR = 365.0D;
 	private static final int HUNDRED = 100;
 
+	private final String propsFile;
 	private Properties props;
 	private PropsUtils pu = new PropsUtils(); 
 	private String localWebRoot;
@@ -45,12 +54,23 @@ public class MarkIVHelper {
 	private GigsAvailabilityBuilder gigAvailBuilder;
 	private NewsPageBuilder newsBuilder;
 	private EventManager em;
+	private final ConcurrentMap<String, Long> published = new ConcurrentHashMap<String, Long>();
 
 	public MarkIVHelper(EventManager em) {
+		this(em, PROPS_FILE);
+	}
+
+	/**
+	 * @param em
+	 * @param propsFile the site's pages, templates and upload target
+	 */
+	public MarkIVHelper(EventManager em, String propsFile) {
 		this.em = em;
-		this.gigAvailBuilder = new GigsAvailabilityBuilder(this.em);
-		this.newsBuilder = new NewsPageBuilder(this.em);
+		this.propsFile = propsFile;
 		this.props = this.readProps();
+		final PageTemplates templates = PageTemplates.load(props.getProperty("TemplatesFile"));
+		this.gigAvailBuilder = new GigsAvailabilityBuilder(this.em, templates);
+		this.newsBuilder = new NewsPageBuilder(this.em, templates);
 		localWebRoot = props.getProperty("LocalWebRoot");
 		galleryDir = props.getProperty("UploadDirs");
 		htmlHeaderFile = props.getProperty("HtmlHeaderFile");
@@ -71,12 +91,88 @@ public class MarkIVHelper {
 
 		return mul.upload(props.getProperty("ProjectName"), uploadFiles);
 	}
+
+	/**
+	 * Upload the UploadFiles entries that are the page - as soon as it is
+	 * written rather than with the rest
+	 * @param pageFile
+	 * @return
+	 * @throws MarkIVException
+	 */
+	public boolean uploadPage(final String pageFile) throws MarkIVException {
+		final List<String> uploadFiles = new ArrayList<String>();
+		for (final String f : props.getProperty("UploadFiles").split(",")) {
+			if (this.isPage(f, pageFile)) {
+				uploadFiles.add(f);
+			}
+		}
+		return uploadFiles.isEmpty()
+				|| new MarkIVUploader(props).upload(props.getProperty("ProjectName"), uploadFiles, false);
+	}
+
+	/**
+	 * Upload the UploadFiles entries that are not one of the pages, and the
+	 * new files in UploadDirs
+	 * @return
+	 * @throws MarkIVException
+	 */
+	public boolean uploadOtherFiles() throws MarkIVException {
+		final List<String> uploadFiles = new ArrayList<String>();
+		for (final String f : props.getProperty("UploadFiles").split(",")) {
+			if (!this.isPage(f, gigsHtmlFile) && !this.isPage(f, availHtmlFile)
+					&& !this.isPage(f, newsHtmlFile) && !this.isPage(f, gallHtmlFile)) {
+				uploadFiles.add(f);
+			}
+		}
+		return new MarkIVUploader(props).upload(props.getProperty("ProjectName"), uploadFiles, true);
+	}
+
+	private boolean isPage(final String uploadFile, final String pageFile) {
+		return pageFile != null
+				&& Paths.get(uploadFile.trim()).getFileName().equals(Paths.get(pageFile.trim()).getFileName());
+	}
+
+	public String getGigsHtmlFile() {
+		return gigsHtmlFile;
+	}
+
+	public String getAvailHtmlFile() {
+		return availHtmlFile;
+	}
+
+	public String getNewsHtmlFile() {
+		return newsHtmlFile;
+	}
+
+	public String getGalleryHtmlFile() {
+		return gallHtmlFile;
+	}
 	
+	/**
+	 * Log, per person, the days unavailable over the coming year
+	 */
 	public void doAvailabilityStats() {
+		this.doAvailabilityStats(em.getSnapshot());
+	}
+
+	/**
+	 * @param events the version of the calendar to report on
+	 */
+	public void doAvailabilityStats(final EventSnapshot events) {
 		Map<String,Integer> statMap = new TreeMap<>();
-		for (CalendarEvent e: em.getByType(EventType.UNAVAILABILITY, System.currentTimeMillis(), false)) {
-			LOG.debug(e.toString());
-			statMap = updateStatMap(e.getSummary(), statMap);
+		final LocalDate today = LocalDate.now();
+		final AvailabilityMap availability = events.getAvailability(today, (int) DAYS_IN_YEAR);
+		for (int i = 0; i < (int) DAYS_IN_YEAR; i++) {
+			final LocalDate day = today.plusDays(i);
+			if (!availability.has(day, EventType.UNAVAILABILITY)) {
+				continue;
+			}
+			for (CalendarEvent e: availability.getEvents(day)) {
+				if (e.getEventType() == EventType.UNAVAILABILITY) {
+					LOG.debug(e.toString());
+					statMap = updateStatMap(e.getSummary(), statMap);
+				}
+			}
 		}
 		for (String key: statMap.keySet()) {
 			LOG.info("Unavailable: " + key.toUpperCase() + " " + statMap.get(key) + " days " + 
@@ -95,10 +191,14 @@ public class MarkIVHelper {
 	}
 
 	public void buildAvailPage() {
+		this.buildAvailPage(em.getSnapshot());
+	}
+
+	public void buildAvailPage(final EventSnapshot events) {
 		final HtmlManager htmlMan = new HtmlManager();
 		try {
-			htmlMan.writeHtmlFile(availHtmlFile,
-					gigAvailBuilder.buildAvail(htmlHeaderFile, htmlTrailerFile));
+			htmlMan.writePage(availHtmlFile, htmlHeaderFile, out -> gigAvailBuilder.writeAvailBody(events, out),
+					htmlTrailerFile);
 		} catch (final IOException e) {
 			throw new MarkIVException("Exception occurred:",e);
 		}
@@ -106,42 +206,91 @@ public class MarkIVHelper {
 	}
 
 	public void buildGigsPage() {
+		this.buildGigsPage(em.getSnapshot());
+	}
+
+	public void buildGigsPage(final EventSnapshot events) {
 		try {
 			final HtmlManager htmlMan = new HtmlManager();
-			htmlMan.writeHtmlFile(gigsHtmlFile,
-					gigAvailBuilder.buildGigs(htmlHeaderFile, htmlTrailerFile));
+			htmlMan.writePage(gigsHtmlFile, htmlHeaderFile, out -> gigAvailBuilder.writeGigsBody(events, out),
+					htmlTrailerFile);
 		} catch (final IOException e) {
 			throw new MarkIVException("Exception occurred:",e);
 		}
 	}
 	
 	public void buildNewsPage() {
+		this.buildNewsPage(em.getSnapshot());
+	}
+
+	public void buildNewsPage(final EventSnapshot events) {
 		try {
 			final HtmlManager htmlMan = new HtmlManager();
-			htmlMan.writeHtmlFile(newsHtmlFile,
-					newsBuilder.buildNews(htmlHeaderFile, htmlTrailerFile));
+			htmlMan.writePage(newsHtmlFile, htmlHeaderFile, out -> newsBuilder.writeNewsBody(events, out),
+					htmlTrailerFile);
 		} catch (final IOException e) {
 			throw new MarkIVException("Exception occurred:",e);
 		}
 	}
 
+	public long gigsFingerprint(final EventSnapshot events) {
+		return this.withTemplates(gigAvailBuilder.gigsFingerprint(events));
+	}
+
+	public long availFingerprint(final EventSnapshot events) {
+		return this.withTemplates(gigAvailBuilder.availFingerprint(events));
+	}
+
+	public long newsFingerprint(final EventSnapshot events) {
+		return this.withTemplates(newsBuilder.newsFingerprint(events));
+	}
+
+	public long galleryFingerprint() {
+		return this.withTemplates(new GalleryManager().galleryFingerprint(localWebRoot, galleryDir));
+	}
+
+	/**
+	 * @param pageFile
+	 * @param fingerprint
+	 * @return the page was last built and uploaded from the same inputs
+	 */
+	public boolean isPublished(final String pageFile, final long fingerprint) {
+		final Long last = this.published.get(pageFile);
+		return last != null && last == fingerprint;
+	}
+
+	/**
+	 * Record the inputs of a page once it is uploaded
+	 * @param pageFile
+	 * @param fingerprint
+	 */
+	public void setPublished(final String pageFile, final long fingerprint) {
+		this.published.put(pageFile, fingerprint);
+	}
+
+	private long withTemplates(final Fingerprint fp) {
+		try {
+			return fp.addFile(htmlHeaderFile == null ? null : Paths.get(htmlHeaderFile))
+					.addFile(htmlTrailerFile == null ? null : Paths.get(htmlTrailerFile))
+					.get();
+		} catch (final IOException e) {
+			throw new MarkIVException("Exception occurred:", e);
+		}
+	}
+
 	public void buildGalleryPage() {
 		final GalleryManager galleryManager = new GalleryManager();
 		final HtmlManager htmlMan = new HtmlManager();
 		try {
-			htmlMan.writeHtmlFile(
-					gallHtmlFile,
-					htmlMan.readFileAsString(htmlHeaderFile)
-							+ galleryManager.buildGalleryHtml(localWebRoot,
-									galleryDir)
-							+ htmlMan.readFileAsString(htmlTrailerFile));
+			htmlMan.writePage(gallHtmlFile, htmlHeaderFile,
+					out -> galleryManager.writeGalleryBody(localWebRoot, galleryDir, out), htmlTrailerFile);
 		} catch (final IOException e) {
 			throw new MarkIVException("Exception occurred:",e);
 		}
 	}
 
 	public Properties readProps() {
-		Properties props = this.pu.readProperties(PROPS_FILE);
+		Properties props = this.pu.readProperties(this.propsFile);
 		LOG.info("Properties loaded:");
 		for (final Object key : props.keySet()) {
 			LOG.info(key + "=" + props.get(key));
@@ -0,0 +1,58 @@
+/**
+ * @author sik
+ *
+ */
+package com.sik.ivb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import com.sik.ivb.events.EventManager;
+import com.sik.ivb.events.SyntheticFeed;
+import com.sik.ivb.site.Site;
+import com.sik.ivb.utils.PropsUtils;
+
+public class ApplicationTest {
+
+	@Test
+	public void sitesLoadedIndependently() throws IOException {
+		final Path dir = Files.createTempDirectory("sitestest");
+		final String band1 = this.site(dir, "band1", 100);
+		final String band2 = this.site(dir, "band2", 300);
+		final Properties props = new Properties();
+		props.setProperty("SiteProps", band1 + ", " + dir.resolve("missing.properties") + "," + band2);
+		props.setProperty("SiteThreads", "2");
+		new PropsUtils().writeProperties(props, dir.resolve("markiv.properties").toString());
+
+		final Application app = new Application(dir.resolve("markiv.properties").toString());
+		assertEquals(2, app.getSites().size());
+		final Site first = app.getSites().get(0);
+		final Site second = app.getSites().get(1);
+		assertEquals("band1", first.getName());
+		assertEquals("band2", second.getName());
+		assertEquals(new EventManager(ByteBuffer.wrap(SyntheticFeed.bytes(100))).getAllEvents().size(),
+				first.getEventManager().getAllEvents().size());
+		assertEquals(new EventManager(ByteBuffer.wrap(SyntheticFeed.bytes(300))).getAllEvents().size(),
+				second.getEventManager().getAllEvents().size());
+		assertNotEquals(first.getEventManager(), second.getEventManager());
+	}
+
+	private String site(final Path dir, final String name, final int events) throws IOException {
+		final Path feed = dir.resolve(name + ".ics");
+		Files.write(feed, SyntheticFeed.bytes(events));
+		final Properties props = new Properties();
+		props.setProperty("ProjectName", name);
+		props.setProperty("FeedFile", feed.toString());
+		final String propsFile = dir.resolve(name + ".properties").toString();
+		new PropsUtils().writeProperties(props, propsFile);
+		return propsFile;
+	}
+}
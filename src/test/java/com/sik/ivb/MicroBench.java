@@ -0,0 +1,38 @@
+/**
+ * @author sik
+ *
+ */
+package com.sik.ivb;
+
+import java.util.function.Supplier;
+
+/**
+ * Minimal warm-up/measure loop for the *Benchmark classes. These are run by
+ * hand (Run As > JUnit) rather than by the build.
+ */
+public class MicroBench {
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int ROUNDS = 10;
+
+	private static volatile Object sink;
+
+	/**
+	 * Run the task and report the best time per round.
+	 * @param label
+	 * @param task
+	 * @return best nanoseconds per round
+	 */
+	public static long time(final String label, final Supplier<?> task) {
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			sink = task.get();
+		}
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < ROUNDS; i++) {
+			final long t0 = System.nanoTime();
+			sink = task.get();
+			best = Math.min(best, System.nanoTime() - t0);
+		}
+		System.out.println(String.format("%-45s %,12d us", label, best / 1000));
+		return best;
+	}
+}
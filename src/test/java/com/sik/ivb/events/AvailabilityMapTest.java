@@ -0,0 +1,60 @@
+/**
+ * @author sik
+ *
+ */
+package com.sik.ivb.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.sik.ivb.api.CalendarEvent;
+import com.sik.ivb.api.EventType;
+import com.sik.ivb.api.M4Date;
+
+public class AvailabilityMapTest {
+	private static final int DAYS = 400;
+
+	@Test
+	public void matchesDayByDayQueries() {
+		final EventManager em = new EventManager(new ByteArrayInputStream(SyntheticFeed.bytes(600)));
+		final LocalDate today = LocalDate.now();
+		final AvailabilityMap map = em.getAvailability(today, DAYS);
+		int clear = 0;
+		for (int i = 0; i < DAYS; i++) {
+			final LocalDate day = today.plusDays(i);
+			final List<CalendarEvent> expected = em.getEventsOn(new M4Date(day.atTime(12, 0)));
+			assertEquals(day.toString(), expected, map.getEvents(day));
+			assertEquals(expected.isEmpty(), map.isClear(day));
+			for (final EventType type : EventType.values()) {
+				assertEquals(expected.stream().anyMatch(e -> e.getEventType() == type), map.has(day, type));
+			}
+			clear += expected.isEmpty() ? 1 : 0;
+		}
+		assertEquals(clear, map.getClearDays());
+		assertSame(map, em.getAvailability(today.plusDays(35), 365));
+	}
+
+	@Test
+	public void allDayEventsEndOnTheirLastDay() {
+		final String feed = "BEGIN:VCALENDAR\r\nBEGIN:VEVENT\r\n"
+				+ "DTSTART;VALUE=DATE:20990601\r\nDTEND;VALUE=DATE:20990603\r\n"
+				+ "SUMMARY:Unavailable Sam\r\nUID:u1\r\nEND:VEVENT\r\nEND:VCALENDAR\r\n";
+		final EventManager em = new EventManager(new ByteArrayInputStream(feed.getBytes(StandardCharsets.UTF_8)));
+		final AvailabilityMap map = em.getAvailability(LocalDate.of(2099, 5, 31), 5);
+		assertTrue(map.isClear(LocalDate.of(2099, 5, 31)));
+		assertTrue(map.has(LocalDate.of(2099, 6, 1), EventType.UNAVAILABILITY));
+		assertTrue(map.has(LocalDate.of(2099, 6, 2), EventType.UNAVAILABILITY));
+		assertFalse(map.has(LocalDate.of(2099, 6, 2), EventType.GIG));
+		assertTrue(map.isClear(LocalDate.of(2099, 6, 3)));
+		assertEquals(3, map.getClearDays());
+	}
+}
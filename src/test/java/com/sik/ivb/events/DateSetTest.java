@@ -0,0 +1,66 @@
+/**
+ * @author sik
+ *
+ */
+package com.sik.ivb.events;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DateSetTest {
+	private static final long DAY = DateSet.SECONDS_PER_DAY;
+
+	@Test
+	public void addedOutOfOrderReadSortedAndDistinct() {
+		final DateSet dates = new DateSet();
+		final long[] added = { 50, 10, 30, 10, 20, 50, 40 };
+		for (final long instant : added) {
+			dates.add(instant, false);
+		}
+		dates.add(3 * DAY + 5, true);
+		dates.add(DAY, true);
+		dates.add(3 * DAY, true);
+
+		assertArrayEquals(new long[] { 10, 20, 30, 40, 50 }, dates.getInstants());
+		assertArrayEquals(new long[] { 1, 3 }, dates.getDays());
+		assertEquals(7, dates.size());
+		assertTrue(dates.contains(30));
+		assertFalse(dates.contains(31));
+		assertTrue(dates.contains(3 * DAY + 7200));
+		assertFalse(dates.contains(2 * DAY));
+
+		// read, then added to again
+		dates.add(25, false);
+		assertArrayEquals(new long[] { 10, 20, 25, 30, 40, 50 }, dates.getInstants());
+	}
+
+	@Test
+	public void addAllMerges() {
+		final DateSet a = new DateSet();
+		final DateSet b = new DateSet();
+		for (long i = 0; i < 1000; i += 2) {
+			a.add(i, false);
+		}
+		for (long i = 999; i >= 0; i -= 3) {
+			b.add(i, false);
+		}
+		b.add(DAY, true);
+		a.addAll(b);
+
+		final DateSet expected = new DateSet();
+		for (long i = 0; i < 1000; i++) {
+			if (i % 2 == 0 || (999 - i) % 3 == 0) {
+				expected.add(i, false);
+			}
+		}
+		expected.add(DAY, true);
+		assertEquals(expected, a);
+		assertEquals(expected.hashCode(), a.hashCode());
+		// the other set is unchanged
+		assertEquals(335, b.size());
+	}
+}
@@ -0,0 +1,104 @@
+/**
+ * @author sik
+ *
+ */
+package com.sik.ivb.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.sik.ivb.api.CalendarEvent;
+
+public class EventClassifierTest {
+	private final EventClassifier classifier = EventClassifier.DEFAULT;
+
+	@Test
+	public void defaultVocabularies() {
+		assertEquals(EventClassifier.GIG | EventClassifier.CONFIRMED,
+				this.classifier.classify("GIG - Confirmed @ The Crown"));
+		assertEquals(EventClassifier.UNAVAILABLE, this.classifier.classify("Dave not available"));
+		assertEquals(EventClassifier.UNAVAILABLE, this.classifier.classify("Pete UNAVAILABLE"));
+		assertEquals(EventClassifier.GIG | EventClassifier.WEDDING, this.classifier.classify("Wedding gig"));
+		assertEquals(EventClassifier.PRIVATE, this.classifier.classify("PRIVATE"));
+		assertEquals(0, this.classifier.classify("Rehearsal"));
+		assertEquals(0, this.classifier.classify(""));
+		assertEquals(0, this.classifier.classify(null));
+	}
+
+	@Test
+	public void configuredVocabularies() {
+		final Properties props = new Properties();
+		props.setProperty(EventClassifier.GIG_KEYWORDS, "gig, show,concert");
+		props.setProperty(EventClassifier.CONFIRMED_KEYWORDS, "confirmed,booked,bestätigt");
+		final EventClassifier custom = EventClassifier.fromProperties(props);
+		assertEquals(EventClassifier.GIG | EventClassifier.CONFIRMED, custom.classify("Show BOOKED"));
+		assertEquals(EventClassifier.GIG | EventClassifier.CONFIRMED, custom.classify("Konzert concert BESTÄTIGT"));
+		assertEquals(EventClassifier.UNAVAILABLE | EventClassifier.WEDDING,
+				custom.classify("unavailable - wedding"));
+		props.setProperty(EventClassifier.WEDDING_KEYWORDS, "wedding,hochzeit");
+		assertEquals(EventClassifier.WEDDING, EventClassifier.fromProperties(props).classify("Hochzeit Schmidt"));
+	}
+
+	@Test
+	public void matchesContainsOnRandomText() {
+		final List<String> gig = Arrays.asList("gig", "igi", "gg");
+		final List<String> unavailable = Arrays.asList("not available", "unavailable", "ava");
+		final List<String> priv = Arrays.asList("private", "priv", "pt");
+		final List<String> confirmed = Arrays.asList("confirmed", "firm");
+		final List<String> wedding = Arrays.asList("wedding", "wed");
+		final EventClassifier custom = new EventClassifier(gig, unavailable, priv, confirmed, wedding);
+		final String alphabet = "gignotavailbeprvdwcfmtGIGNOT ";
+		final Random random = new Random(42);
+		for (int n = 0; n < 5000; n++) {
+			final StringBuilder sb = new StringBuilder();
+			for (int i = random.nextInt(40); i > 0; i--) {
+				sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+			}
+			final String text = sb.toString();
+			final String lower = text.toLowerCase();
+			final int expected = (containsAny(lower, gig) ? EventClassifier.GIG : 0)
+					| (containsAny(lower, unavailable) ? EventClassifier.UNAVAILABLE : 0)
+					| (containsAny(lower, priv) ? EventClassifier.PRIVATE : 0)
+					| (containsAny(lower, confirmed) ? EventClassifier.CONFIRMED : 0)
+					| (containsAny(lower, wedding) ? EventClassifier.WEDDING : 0);
+			assertEquals(text, expected, custom.classify(text));
+		}
+	}
+
+	@Test
+	public void weddingOnlyInSummaryIsPrivate() {
+		final String feed = "BEGIN:VCALENDAR\r\n"
+				+ "BEGIN:VEVENT\r\nDTSTART:20990101T200000\r\nDTEND:20990101T230000\r\n"
+				+ "SUMMARY:Gig confirmed\r\nLOCATION:The Wedding Barn\\, Dore\r\nUID:g1\r\nEND:VEVENT\r\n"
+				+ "BEGIN:VEVENT\r\nDTSTART:20990102T200000\r\nDTEND:20990102T230000\r\n"
+				+ "SUMMARY:Wedding gig confirmed\r\nLOCATION:The Crown\r\nUID:g2\r\nEND:VEVENT\r\n"
+				+ "END:VCALENDAR\r\n";
+		final EventManager em = new EventManager(ByteBuffer.wrap(feed.getBytes(StandardCharsets.UTF_8)));
+		final EventUtility eu = new EventUtility(em.getClassifier());
+		final CalendarEvent barn = em.getAllEvents().get(0);
+		final CalendarEvent wedding = em.getAllEvents().get(1);
+		assertFalse(barn.isEventPrivate());
+		assertFalse(eu.isEventPrivate(barn));
+		assertTrue(wedding.isEventPrivate());
+		assertTrue(eu.isEventPrivate(wedding));
+	}
+
+	private static boolean containsAny(final String text, final List<String> words) {
+		for (final String word : words) {
+			if (text.contains(word)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,94 @@
+/**
+ * @author sik
+ *
+ */
+package com.sik.ivb.events;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import com.sik.ivb.api.CalendarEvent;
+import com.sik.ivb.api.EventType;
+
+public class EventQueryTest {
+	private final EventManager em = new EventManager(ByteBuffer.wrap(SyntheticFeed.bytes(2000)));
+
+	@Test
+	public void matchesScan() {
+		final LocalDateTime now = LocalDateTime.now();
+		final LocalDateTime[] bounds = { null, now.minusYears(1), now, now.plusDays(100), now.plusYears(10) };
+		final Boolean[] flags = { null, Boolean.TRUE, Boolean.FALSE };
+		final EventType[][] types = { {}, { EventType.GIG }, { EventType.UNAVAILABILITY, EventType.INFO },
+				EventType.values() };
+		for (final LocalDateTime from : bounds) {
+			for (final LocalDateTime to : bounds) {
+				for (final EventType[] type : types) {
+					for (final Boolean confirmed : flags) {
+						for (final Boolean eventPrivate : flags) {
+							final EventQuery query = new EventQuery().withFrom(from).withTo(to).withTypes(type)
+									.withConfirmed(confirmed).withEventPrivate(eventPrivate);
+							assertEquals(query.toString(), this.scan(query), this.run(query));
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void orderLimitAndFirstPerDay() {
+		final LocalDateTime from = LocalDateTime.now().minusYears(1);
+		for (final boolean latestFirst : new boolean[] { false, true }) {
+			for (final boolean firstPerDay : new boolean[] { false, true }) {
+				for (final long limit : new long[] { 0, 1, 25, Long.MAX_VALUE }) {
+					final EventQuery query = new EventQuery().withFrom(from).withTypes(EventType.GIG)
+							.withConfirmed(true).withLatestFirst(latestFirst).withFirstPerDay(firstPerDay)
+							.withLimit(limit);
+					assertEquals(query.toString(), this.scan(query), this.run(query));
+				}
+			}
+		}
+	}
+
+	private List<CalendarEvent> run(final EventQuery query) {
+		return this.em.query(query).collect(Collectors.toList());
+	}
+
+	private List<CalendarEvent> scan(final EventQuery query) {
+		final List<CalendarEvent> events = new ArrayList<CalendarEvent>(this.em.getAllEvents());
+		if (query.isLatestFirst()) {
+			Collections.reverse(events);
+		}
+		final List<CalendarEvent> expected = new ArrayList<CalendarEvent>();
+		LocalDate lastDay = null;
+		for (final CalendarEvent e : events) {
+			if (expected.size() >= query.getLimit()) {
+				break;
+			}
+			if (query.getFrom() != null && e.getStartDate().isBefore(query.getFrom())
+					|| query.getTo() != null && !e.getStartDate().isBefore(query.getTo())
+					|| !query.getTypes().isEmpty() && !query.getTypes().contains(e.getEventType())
+					|| query.isConfirmed() != null && !query.isConfirmed().equals(e.isConfirmed())
+					|| query.isEventPrivate() != null && !query.isEventPrivate().equals(e.isEventPrivate())) {
+				continue;
+			}
+			if (query.isFirstPerDay()) {
+				if (e.getStartDate().toLocalDate().equals(lastDay)) {
+					continue;
+				}
+				lastDay = e.getStartDate().toLocalDate();
+			}
+			expected.add(e);
+		}
+		return expected;
+	}
+}
@@ -0,0 +1,76 @@
+/**
+ * @author sik
+ *
+ */
+package com.sik.ivb.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class EventSnapshotTest {
+	private static final int REFRESHES = 20;
+
+	@Test
+	public void snapshotUnaffectedByRefresh() {
+		final EventManager em = new EventManager(ByteBuffer.wrap(SyntheticFeed.bytes(400)));
+		final EventSnapshot before = em.getSnapshot();
+		final int size = before.getAllEvents().size();
+		final AvailabilityMap availability = before.getAvailability(LocalDate.now(), 30);
+
+		em.updateFromFeed(ByteBuffer.wrap(SyntheticFeed.bytes(100)));
+
+		final EventSnapshot after = em.getSnapshot();
+		assertEquals(before.getVersion() + 1, after.getVersion());
+		assertEquals(size, before.getAllEvents().size());
+		assertNotEquals(size, after.getAllEvents().size());
+		assertSame(availability, before.getAvailability(LocalDate.now(), 7));
+		assertSame(after.getAllEvents(), em.getAllEvents());
+	}
+
+	@Test
+	public void readersSeeWholeSnapshotsDuringRefresh() throws InterruptedException {
+		final byte[] small = SyntheticFeed.bytes(100);
+		final byte[] large = SyntheticFeed.bytes(400);
+		final int smallSize = new EventManager(ByteBuffer.wrap(small)).getAllEvents().size();
+		final int largeSize = new EventManager(ByteBuffer.wrap(large)).getAllEvents().size();
+		final EventManager em = new EventManager(ByteBuffer.wrap(small));
+
+		final AtomicBoolean done = new AtomicBoolean();
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final Thread reader = new Thread(() -> {
+			try {
+				while (!done.get()) {
+					final EventSnapshot snapshot = em.getSnapshot();
+					final int size = snapshot.getAllEvents().size();
+					assertTrue(size == smallSize || size == largeSize);
+					int seen = 0;
+					for (final Object e : snapshot.getAllEvents()) {
+						seen += e == null ? 0 : 1;
+					}
+					assertEquals(size, seen);
+				}
+			} catch (final Throwable t) {
+				failure.set(t);
+			}
+		});
+		reader.start();
+		for (int i = 0; i < REFRESHES; i++) {
+			em.updateFromFeed(ByteBuffer.wrap(i % 2 == 0 ? large : small));
+		}
+		done.set(true);
+		reader.join();
+
+		assertNull(failure.get());
+		assertEquals(REFRESHES + 1, em.getSnapshot().getVersion());
+	}
+}
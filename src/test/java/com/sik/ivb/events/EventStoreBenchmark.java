@@ -0,0 +1,134 @@
+/**
+ * @author sik
+ *
+ */
+package com.sik.ivb.events;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+import com.sik.ivb.MicroBench;
+import com.sik.ivb.api.CalendarEvent;
+
+/**
+ * Retained heap of 100k occurrences as CalendarEvent objects vs the columnar
+ * EventStore, measured as the used heap after GC. Run with a fixed heap
+ * (e.g. -Xms1g -Xmx1g) for stable numbers.
+ * Right-click and do: Run As > JUnit
+ */
+public class EventStoreBenchmark {
+	private static final int SERIES = 100;
+	private static final int COUNT = 1000;
+	private static final int GC_ROUNDS = 5;
+	private static final long GC_PAUSE_MS = 50L;
+	private static final int TRIALS = 3;
+	private static final DateTimeFormatter ICS_DATE = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+	private static volatile Object sink;
+
+	@Test
+	public void heapFootprint() {
+		final byte[] feed = feed().getBytes(StandardCharsets.UTF_8);
+		final List<CalendarEvent> events = new EventManager(ByteBuffer.wrap(feed)).getAllEvents();
+		assertEquals(SERIES * COUNT, events.size());
+
+		final long columns = retained(() -> new EventManager(ByteBuffer.wrap(feed)).getAllEvents());
+		final long objects = retained(() -> materialize(events));
+		System.out.println(String.format("%,d occurrences of %d VEVENTs", events.size(), SERIES));
+		System.out.println(String.format("%-45s %,12d bytes %,6d per occurrence", "List<CalendarEvent>",
+				objects, objects / events.size()));
+		System.out.println(String.format("%-45s %,12d bytes %,6d per occurrence", "EventStore",
+				columns, columns / events.size()));
+
+		MicroBench.time("iterate List<CalendarEvent>", () -> sumStarts(materialize(events)));
+		MicroBench.time("iterate EventStore views", () -> sumStarts(events));
+	}
+
+	/**
+	 * The events as plain CalendarEvents - as the event manager held them
+	 */
+	private static List<CalendarEvent> materialize(final List<CalendarEvent> events) {
+		final List<CalendarEvent> copy = new ArrayList<CalendarEvent>(events.size());
+		for (final CalendarEvent e : events) {
+			copy.add(new CalendarEvent()
+					.withStartDate(e.getStartDate())
+					.withEndDate(e.getEndDate())
+					.withSummary(e.getSummary())
+					.withLocation(e.getLocation())
+					.withNotes(e.getNotes())
+					.withLastUpdated(e.getLastUpdated())
+					.withLastUpdatedBy(e.getLastUpdatedBy())
+					.withEventType(e.getEventType())
+					.withEventPrivate(e.isEventPrivate())
+					.withConfirmed(e.isConfirmed()));
+		}
+		return copy;
+	}
+
+	private static long sumStarts(final List<CalendarEvent> events) {
+		long sum = 0;
+		for (final CalendarEvent e : events) {
+			sum += e.getStartDate().getDayOfYear();
+		}
+		return sum;
+	}
+
+	/**
+	 * Smallest positive growth in the used heap over a few trials - a
+	 * collection finishing late only ever makes a trial look smaller or
+	 * negative
+	 */
+	private static long retained(final Supplier<?> build) {
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < TRIALS; i++) {
+			final long before = usedAfterGc();
+			sink = build.get();
+			final long after = usedAfterGc();
+			sink = null;
+			if (after > before) {
+				best = Math.min(best, after - before);
+			}
+		}
+		return best;
+	}
+
+	private static long usedAfterGc() {
+		final Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < GC_ROUNDS; i++) {
+			System.gc();
+			try {
+				Thread.sleep(GC_PAUSE_MS);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return rt.totalMemory() - rt.freeMemory();
+	}
+
+	private static String feed() {
+		final String start = LocalDate.now().format(ICS_DATE);
+		final StringBuilder sb = new StringBuilder("BEGIN:VCALENDAR\r\n");
+		for (int i = 0; i < SERIES; i++) {
+			sb.append("BEGIN:VEVENT\r\n")
+					.append("DTSTART:").append(start).append("T200000Z\r\n")
+					.append("DTEND:").append(start).append("T230000Z\r\n")
+					.append("RRULE:FREQ=DAILY;COUNT=").append(COUNT).append("\r\n")
+					.append("UID:").append(i).append("-bench@google.com\r\n")
+					.append("SUMMARY:Gig ").append(i).append(" confirmed\r\n")
+					.append("LOCATION:Venue ").append(i % 10).append("\r\n")
+					.append("DESCRIPTION:Synthetic series ").append(i).append("\r\n")
+					.append("LAST-MODIFIED:20200101T000000Z\r\n")
+					.append("END:VEVENT\r\n");
+		}
+		return sb.append("END:VCALENDAR\r\n").toString();
+	}
+}
@@ -0,0 +1,98 @@
+/**
+ * @author sik
+ *
+ */
+package com.sik.ivb.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.sik.ivb.api.CalendarEvent;
+import com.sik.ivb.api.CalendarEventComparator;
+import com.sik.ivb.exception.MarkIVException;
+
+public class EventStoreTest {
+
+	@Test
+	public void viewsMatchPlainEvents() {
+		final EventManager em = new EventManager(ByteBuffer.wrap(SyntheticFeed.bytes(2000)));
+		final List<CalendarEvent> events = em.getAllEvents();
+		assertTrue(events.size() > 2000);
+		for (final CalendarEvent e : events) {
+			final CalendarEvent plain = new CalendarEvent()
+					.withStartDate(e.getStartDate())
+					.withEndDate(e.getEndDate())
+					.withSummary(e.getSummary())
+					.withLocation(e.getLocation())
+					.withNotes(e.getNotes())
+					.withLastUpdated(e.getLastUpdated())
+					.withLastUpdatedBy(e.getLastUpdatedBy())
+					.withEventType(e.getEventType())
+					.withEventPrivate(e.isEventPrivate())
+					.withConfirmed(e.isConfirmed());
+			assertEquals(plain, e);
+			assertEquals(e, plain);
+			assertEquals(plain.hashCode(), e.hashCode());
+			assertEquals(plain.toString(), e.toString());
+		}
+		final List<CalendarEvent> sorted = new ArrayList<CalendarEvent>(events);
+		sorted.sort(new CalendarEventComparator());
+		assertEquals(sorted, events);
+	}
+
+	@Test
+	public void mergeMatchesStableSort() {
+		final List<String> sources = Arrays.asList("dave", "pete", "steve", "empty");
+		final List<EventStore> runs = new ArrayList<EventStore>();
+		final List<CalendarEvent> expected = new ArrayList<CalendarEvent>();
+		for (int r = 0; r < 3; r++) {
+			final EventStore run = new EventManager(ByteBuffer.wrap(SyntheticFeed.bytes(300 * (r + 1))))
+					.getSnapshot().getStore();
+			runs.add(run);
+			for (final CalendarEvent e : run.asList()) {
+				expected.add(new CalendarEvent()
+						.withStartDate(e.getStartDate())
+						.withEndDate(e.getEndDate())
+						.withSummary(e.getSummary())
+						.withLocation(e.getLocation())
+						.withNotes(e.getNotes())
+						.withLastUpdated(e.getLastUpdated())
+						.withLastUpdatedBy(e.getLastUpdatedBy())
+						.withEventType(e.getEventType())
+						.withEventPrivate(e.isEventPrivate())
+						.withConfirmed(e.isConfirmed())
+						.withSource(sources.get(r)));
+			}
+		}
+		runs.add(EventStore.EMPTY);
+		expected.sort(Comparator.comparing(CalendarEvent::getStartDate).thenComparing(CalendarEvent::getEndDate));
+
+		final EventStore merged = EventStore.merge(sources, runs);
+		assertEquals(expected.size(), merged.size());
+		for (int i = 0; i < merged.size(); i++) {
+			assertEquals(expected.get(i).toString(), merged.asList().get(i).toString());
+		}
+		assertEquals(runs.get(0).getEventCount() + runs.get(1).getEventCount() + runs.get(2).getEventCount(),
+				merged.getEventCount());
+	}
+
+	@Test
+	public void microsRoundTrip() {
+		final LocalDateTime t = LocalDateTime.of(1969, 12, 31, 23, 59, 59, 999999000);
+		assertEquals(t, EventStore.toDateTime(EventStore.toMicros(t)));
+	}
+
+	@Test(expected = MarkIVException.class)
+	public void viewsAreReadOnly() {
+		new EventManager(ByteBuffer.wrap(SyntheticFeed.bytes(10))).getAllEvents().get(0).withSummary("changed");
+	}
+}
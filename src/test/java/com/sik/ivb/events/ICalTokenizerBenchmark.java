@@ -0,0 +1,121 @@
+/**
+ * @author sik
+ *
+ */
+package com.sik.ivb.events;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.sik.ivb.MicroBench;
+import com.sik.ivb.api.M4Fields;
+import com.sik.ivb.utils.M4DateUtils;
+
+/**
+ * Byte level tokenizer vs the original BufferedReader/startsWith parser.
+ * Right-click and do: Run As > JUnit
+ */
+public class ICalTokenizerBenchmark {
+	private static final int EVENTS = 20000;
+	private static final String BEGIN_EVENT = "BEGIN:VEVENT";
+	private static final String END_EVENT = "END:VEVENT";
+	private static final String BEGIN_ALARM = "BEGIN:VALARM";
+	private static final String END_ALARM = "END:VALARM";
+	private static final String DTSTART = "DTSTART";
+	private static final String DTEND = "DTEND";
+	private static final String EXDATE = "EXDATE";
+	private static final String RRULE = "RRULE";
+
+	@Test
+	public void tokenizerVsReadLine() {
+		final byte[] feed = SyntheticFeed.bytes(EVENTS);
+		final EventUtility eu = new EventUtility();
+		final ICalTokenizer tokenizer = new ICalTokenizer();
+
+		assertEquals(readLineParse(feed).size(), eu.buildRawEvents(new ByteArrayInputStream(feed)).size());
+
+		System.out.println(String.format("%,d events / %,d bytes", EVENTS, feed.length));
+		final long legacy = MicroBench.time("readLine + processLine", () -> readLineParse(feed));
+		final long maps = MicroBench.time("tokenizer -> RawEvents",
+				() -> eu.buildRawEvents(new ByteArrayInputStream(feed)));
+		MicroBench.time("tokenizer only (no-op consumer)", () -> {
+			try {
+				return tokenizer.parse(new ByteArrayInputStream(feed), new ICalConsumer() {
+					public void beginComponent(String name) {}
+					public void endComponent(String name) {}
+					public void property(ICalLine line) {}
+				});
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		System.out.println(String.format("speed-up: %.2fx", (double) legacy / maps));
+	}
+
+	/**
+	 * The parser as it was before the tokenizer - kept here as the baseline.
+	 */
+	private static List<HashMap<String, String>> readLineParse(final byte[] feed) {
+		final M4DateUtils dateUtils = new M4DateUtils();
+		final List<HashMap<String, String>> eventsList = new ArrayList<HashMap<String, String>>();
+		boolean isEvent = false;
+		boolean isAlarm = false;
+		HashMap<String, String> eventMap = null;
+		try (BufferedReader br = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(feed)))) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				if (line.startsWith(BEGIN_EVENT)) {
+					isEvent = true;
+					eventMap = new HashMap<String, String>();
+				} else if (line.startsWith(END_EVENT)) {
+					eventsList.add(eventMap);
+					isEvent = false;
+				} else if (line.startsWith(BEGIN_ALARM)) {
+					isAlarm = true;
+				} else if (line.startsWith(END_ALARM)) {
+					isAlarm = false;
+				} else if (isEvent && !isAlarm) {
+					processLine(dateUtils, line, eventMap);
+				}
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return eventsList;
+	}
+
+	private static void processLine(final M4DateUtils dateUtils, final String line, final Map<String, String> eventMap) {
+		int sp = 0;
+		if (line.startsWith(DTSTART + M4Fields.SEMICOLON) || line.startsWith(DTEND + M4Fields.SEMICOLON)
+				|| line.startsWith(EXDATE + M4Fields.SEMICOLON)) {
+			sp = line.indexOf(M4Fields.SEMICOLON);
+		} else if (line.startsWith(RRULE + M4Fields.COLON)) {
+			sp = line.lastIndexOf(M4Fields.EQUALS);
+		} else {
+			sp = line.indexOf(M4Fields.COLON);
+		}
+		if (sp > 0) {
+			final String key = line.substring(0, sp);
+			final String value = line.substring(sp + 1);
+			if (key.equals(EXDATE)) {
+				if (eventMap.get(EXDATE) == null) {
+					eventMap.put(key, dateUtils.stdDate(value));
+				} else {
+					eventMap.put(key, eventMap.get(key) + M4Fields.COMMA + dateUtils.stdDate(value));
+				}
+			} else {
+				eventMap.put(key, value);
+			}
+		}
+	}
+}
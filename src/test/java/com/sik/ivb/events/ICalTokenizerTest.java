@@ -0,0 +1,77 @@
+/**
+ * @author sik
+ *
+ */
+package com.sik.ivb.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.sik.ivb.api.RepeatType;
+import com.sik.ivb.google.calendar.CalField;
+import com.sik.ivb.utils.M4DateUtils;
+
+public class ICalTokenizerTest {
+
+	private static final String FEED = "BEGIN:VCALENDAR\r\n"
+			+ "BEGIN:VEVENT\r\n"
+			+ "DTSTART;TZID=Europe/London:20200101T200000\r\n"
+			+ "DTEND:20200101T230000Z\r\n"
+			+ "RRULE:FREQ=WEEKLY;UNTIL=20200301T000000Z;INTERVAL=2;BYDAY=WE\r\n"
+			+ "EXDATE;TZID=Europe/London:20200115T200000\r\n"
+			+ "EXDATE;TZID=Europe/London:20200122T200000\r\n"
+			+ "SUMMARY:Gig at the \r\n"
+			+ " Grapes\r\n"
+			+ "DESCRIPTION:Fee £300\r\n"
+			+ "\tcash\r\n"
+			+ "ORGANIZER;CN=\"Mark IV: Band\":mailto:markiv.band@gmail.com\r\n"
+			+ "BEGIN:VALARM\r\n"
+			+ "DESCRIPTION:This is an event reminder\r\n"
+			+ "END:VALARM\r\n"
+			+ "END:VEVENT\r\n"
+			+ "END:VCALENDAR";
+
+	@Test
+	public void unfoldsAndSplitsLines() {
+		final List<RawEvent> events = new EventUtility()
+				.buildRawEvents(new ByteArrayInputStream(FEED.getBytes(StandardCharsets.UTF_8)));
+		final M4DateUtils du = new M4DateUtils();
+
+		assertEquals(1, events.size());
+		final RawEvent evt = events.get(0);
+		assertEquals("Gig at the Grapes", evt.get(CalField.SUMMARY));
+		assertEquals("Fee £300cash", evt.get(CalField.DESCRIPTION));
+		assertEquals("Mark IV: Band", evt.get(CalField.ORGANIZER));
+		assertEquals(LocalDateTime.of(2020, 1, 1, 20, 0), du.fromEpochSecond(evt.getStart()));
+		assertEquals(LocalDateTime.of(2020, 1, 1, 23, 0), du.fromEpochSecond(evt.getEnd()));
+		assertEquals(RepeatType.WEEKLY, evt.getRRule().getFreq());
+		assertEquals(2, evt.getRRule().getInterval());
+		assertEquals(DayOfWeek.WEDNESDAY, evt.getRRule().getByDay()[0]);
+		assertEquals(LocalDateTime.of(2020, 3, 1, 0, 0), du.fromEpochSecond(evt.getRRule().getUntil()));
+		assertEquals(2, evt.getExDates().size());
+		assertTrue(evt.getExDates().contains(du.toEpochSecond(LocalDateTime.of(2020, 1, 15, 20, 0))));
+		assertTrue(evt.getExDates().contains(du.toEpochSecond(LocalDateTime.of(2020, 1, 22, 20, 0))));
+	}
+
+	@Test
+	public void handlesBareLineFeedsAndChunkBoundaries() {
+		final String feed = SyntheticFeed.build(300).replace("\r\n", "\n");
+		final List<RawEvent> crlf = new EventUtility()
+				.buildRawEvents(new ByteArrayInputStream(SyntheticFeed.bytes(300)));
+		final List<RawEvent> lf = new EventUtility()
+				.buildRawEvents(new ByteArrayInputStream(feed.getBytes(StandardCharsets.UTF_8)));
+
+		assertEquals(300, crlf.size());
+		assertEquals(crlf.toString(), lf.toString());
+		assertEquals("Set list A then B\\nLoad in from 6pm\\, sound check 7pm. Parking at the rear of the venue"
+				+ " - ask at the bar for the key. Fee GBP 300 (7)", crlf.get(7).get(CalField.DESCRIPTION));
+	}
+}
@@ -0,0 +1,76 @@
+/**
+ * @author sik
+ *
+ */
+package com.sik.ivb.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import com.sik.ivb.api.CalendarEvent;
+import com.sik.ivb.api.CalendarEventComparator;
+
+public class IncrementalRefreshTest {
+
+	@Test
+	public void incrementalMatchesFullRebuild() {
+		final String original = SyntheticFeed.build(400);
+		final String edited = original
+				// changed: new summary and LAST-MODIFIED
+				.replace("SUMMARY:Gig confirmed 8\r\n", "SUMMARY:Gig confirmed 8 - moved\r\n")
+				.replaceFirst("(UID:8-synthetic@google.com\r\n(?:.*\r\n)*?)LAST-MODIFIED:\\d{8}T\\d{6}Z",
+						"$1LAST-MODIFIED:20991231T000000Z")
+				// deleted: rehearsal 13
+				.replaceFirst("BEGIN:VEVENT\r\n(?:(?!END:VEVENT).*\r\n)*?UID:13-synthetic@google.com\r\n(?:.*\r\n)*?END:VEVENT\r\n", "")
+				// added
+				.replace("END:VCALENDAR", "BEGIN:VEVENT\r\nDTSTART:20991231T200000Z\r\nDTEND:20991231T230000Z\r\n"
+						+ "SUMMARY:New gig\r\nLOCATION:Somewhere\r\nUID:new@google.com\r\n"
+						+ "LAST-MODIFIED:20991231T000000Z\r\nEND:VEVENT\r\nEND:VCALENDAR");
+
+		assertFalse(edited.contains("UID:13-synthetic@google.com"));
+		assertTrue(edited.contains("LAST-MODIFIED:20991231T000000Z\r\nSEQUENCE"));
+
+		final EventManager incremental = new EventManager(buffer(original), 0, true);
+		incremental.updateFromFeed(buffer(edited));
+		final EventManager full = new EventManager(buffer(edited));
+
+		assertEquals(sorted(full.getAllEvents()), sorted(incremental.getAllEvents()));
+		assertEquals(full.getAllEvents().size(), incremental.getAllEvents().size());
+	}
+
+	@Test
+	public void repeatedRefreshesStaySorted() {
+		final String original = SyntheticFeed.build(400);
+		final String edited = original
+				.replace("SUMMARY:Gig confirmed 8\r\n", "SUMMARY:Gig confirmed 8 - moved\r\n")
+				.replaceFirst("(UID:8-synthetic@google.com\r\n(?:.*\r\n)*?)LAST-MODIFIED:\\d{8}T\\d{6}Z",
+						"$1LAST-MODIFIED:20991231T000000Z");
+
+		final EventManager incremental = new EventManager(buffer(original), 0, true);
+		incremental.updateFromFeed(buffer(edited));
+		incremental.updateFromFeed(buffer(original));
+		final EventManager full = new EventManager(buffer(original));
+
+		assertEquals(sorted(full.getAllEvents()), sorted(incremental.getAllEvents()));
+		final List<CalendarEvent> events = incremental.getAllEvents();
+		for (int i = 1; i < events.size(); i++) {
+			assertTrue(new CalendarEventComparator().compare(events.get(i - 1), events.get(i)) <= 0);
+		}
+	}
+
+	private static ByteBuffer buffer(final String feed) {
+		return ByteBuffer.wrap(feed.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static List<String> sorted(final List<CalendarEvent> events) {
+		return events.stream().map(CalendarEvent::toString).sorted().collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,86 @@
+/**
+ * @author sik
+ *
+ */
+package com.sik.ivb.events;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.sik.ivb.api.CalendarEvent;
+import com.sik.ivb.api.CalendarEventComparator;
+import com.sik.ivb.api.EventType;
+import com.sik.ivb.api.M4Date;
+
+public class IntervalIndexTest {
+	private static final LocalDateTime BASE = LocalDateTime.of(2020, 1, 1, 0, 0);
+
+	@Test
+	public void matchesLinearScan() {
+		final Random random = new Random(42);
+		for (final int n : new int[] { 0, 1, 2, 3, 7, 16, 17, 100, 1000, 1025 }) {
+			final List<CalendarEvent> events = new ArrayList<CalendarEvent>();
+			for (int i = 0; i < n; i++) {
+				final LocalDateTime start = BASE.plusMinutes(random.nextInt(400 * 24 * 60));
+				// mostly short events with the odd long one
+				final int minutes = random.nextInt(10) == 0 ? random.nextInt(60 * 24 * 30) : random.nextInt(300);
+				events.add(event(start, start.plusMinutes(minutes)));
+			}
+			Collections.sort(events, new CalendarEventComparator());
+			final IntervalIndex index = new IntervalIndex(events);
+			for (int q = 0; q < 200; q++) {
+				final LocalDateTime from = BASE.plusMinutes(random.nextInt(420 * 24 * 60) - 10 * 24 * 60);
+				final LocalDateTime to = from.plusMinutes(random.nextInt(3 * 24 * 60));
+				assertEquals(n + ":" + from, scan(events, from, to), index.overlapping(from, to));
+			}
+		}
+	}
+
+	@Test
+	public void dayIncludesPartialOverlaps() {
+		final M4Date day = new M4Date(LocalDateTime.of(2020, 6, 2, 12, 0));
+		final List<CalendarEvent> events = new ArrayList<CalendarEvent>();
+		events.add(event(LocalDateTime.of(2020, 6, 1, 22, 0), LocalDateTime.of(2020, 6, 2, 1, 0)));
+		events.add(event(LocalDateTime.of(2020, 6, 1, 10, 0), LocalDateTime.of(2020, 6, 1, 23, 0)));
+		events.add(event(LocalDateTime.of(2020, 6, 2, 20, 0), LocalDateTime.of(2020, 6, 3, 2, 0)));
+		events.add(event(LocalDateTime.of(2020, 6, 3, 0, 0), LocalDateTime.of(2020, 6, 3, 2, 0)));
+		Collections.sort(events, new CalendarEventComparator());
+
+		final List<CalendarEvent> found = new IntervalIndex(events).overlapping(day.getStartTime(), day.getEndTime());
+		assertEquals(2, found.size());
+		assertEquals(LocalDateTime.of(2020, 6, 1, 22, 0), found.get(0).getStartDate());
+		assertEquals(LocalDateTime.of(2020, 6, 2, 20, 0), found.get(1).getStartDate());
+	}
+
+	private static List<CalendarEvent> scan(final List<CalendarEvent> events, final LocalDateTime from,
+			final LocalDateTime to) {
+		final List<CalendarEvent> found = new ArrayList<CalendarEvent>();
+		for (final CalendarEvent e : events) {
+			if (!e.getStartDate().isAfter(to) && !e.getEndDate().isBefore(from)) {
+				found.add(e);
+			}
+		}
+		return found;
+	}
+
+	private static CalendarEvent event(final LocalDateTime start, final LocalDateTime end) {
+		return new CalendarEvent()
+				.withStartDate(start)
+				.withEndDate(end.minusNanos(1000L))
+				.withSummary("Gig " + start)
+				.withLocation("")
+				.withNotes("")
+				.withLastUpdated(BASE)
+				.withLastUpdatedBy("")
+				.withEventType(EventType.GIG)
+				.withEventPrivate(false)
+				.withConfirmed(false);
+	}
+}
@@ -0,0 +1,32 @@
+/**
+ * @author sik
+ *
+ */
+package com.sik.ivb.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.sik.ivb.api.CalendarEvent;
+
+public class ParallelParseTest {
+
+	@Test
+	public void parallelMatchesSequential() {
+		final byte[] feed = SyntheticFeed.bytes(2000);
+
+		final List<CalendarEvent> sequential = new EventManager(ByteBuffer.wrap(feed)).getAllEvents();
+		final List<CalendarEvent> parallel = new EventManager(ByteBuffer.wrap(feed), 16 * 1024, false).getAllEvents();
+		final List<CalendarEvent> streamed = new EventManager(new ByteArrayInputStream(feed), 16 * 1024, false).getAllEvents();
+
+		assertTrue(sequential.size() > 2000);
+		assertEquals(sequential.toString(), parallel.toString());
+		assertEquals(sequential.toString(), streamed.toString());
+	}
+}
@@ -0,0 +1,220 @@
+/**
+ * @author sik
+ *
+ */
+package com.sik.ivb.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PrimitiveIterator;
+
+import org.junit.Test;
+
+import com.sik.ivb.api.CalendarEvent;
+import com.sik.ivb.api.EventType;
+import com.sik.ivb.api.M4Date;
+import com.sik.ivb.api.RepeatType;
+
+public class RecurrenceTest {
+	private static final long HOUR = 3600L;
+	private static final LocalDateTime START = LocalDateTime.of(2020, 1, 1, 20, 0); // a Wednesday
+
+	@Test
+	public void weeklyCount() {
+		final RRule rule = rule(RepeatType.WEEKLY);
+		rule.setCount(3);
+		assertEquals(dates("2020-01-01T20:00", "2020-01-08T20:00", "2020-01-15T20:00"), all(rule));
+	}
+
+	@Test
+	public void fortnightlyByDayUntil() {
+		final RRule rule = rule(RepeatType.WEEKLY);
+		rule.setInterval(2);
+		rule.setByDay(new DayOfWeek[] { DayOfWeek.WEDNESDAY, DayOfWeek.SATURDAY }, new int[2]);
+		rule.setUntil(seconds(LocalDateTime.of(2020, 1, 18, 0, 0)));
+		assertEquals(dates("2020-01-01T20:00", "2020-01-04T20:00", "2020-01-15T20:00", "2020-01-18T20:00"),
+				all(rule));
+	}
+
+	@Test
+	public void monthlySecondSaturdayAndLastFriday() {
+		final RRule rule = rule(RepeatType.MONTHLY);
+		rule.setByDay(new DayOfWeek[] { DayOfWeek.SATURDAY, DayOfWeek.FRIDAY }, new int[] { 2, -1 });
+		rule.setCount(5);
+		assertEquals(dates("2020-01-01T20:00", "2020-01-11T20:00", "2020-01-31T20:00", "2020-02-08T20:00",
+				"2020-02-28T20:00"), all(rule));
+	}
+
+	@Test
+	public void monthlyByMonthDay() {
+		final RRule rule = rule(RepeatType.MONTHLY);
+		rule.setByMonthDay(new int[] { -1 });
+		rule.setCount(4);
+		assertEquals(dates("2020-01-01T20:00", "2020-01-31T20:00", "2020-02-29T20:00", "2020-03-31T20:00"),
+				all(rule));
+	}
+
+	@Test
+	public void openEndedWindow() {
+		final RRule rule = rule(RepeatType.WEEKLY);
+		rule.setInterval(2);
+		final Recurrence r = new Recurrence(rule, seconds(START), 3 * HOUR);
+		assertFalse(r.isBounded());
+		// 2030-01-02 is 261 fortnights on; the one before is still running at 22:00
+		final List<LocalDateTime> found = list(r.occurrences(seconds(LocalDateTime.of(2029, 12, 19, 22, 0)),
+				seconds(LocalDateTime.of(2030, 1, 16, 0, 0))));
+		assertEquals(dates("2029-12-19T20:00", "2030-01-02T20:00"), found);
+	}
+
+	@Test
+	public void openEndedSeriesExpandedOnDemand() {
+		final String feed = "BEGIN:VCALENDAR\r\nBEGIN:VEVENT\r\n"
+				+ "DTSTART:20200101T200000\r\nDTEND:20200101T230000\r\n"
+				+ "RRULE:FREQ=WEEKLY;BYDAY=WE\r\nSUMMARY:Rehearsal\r\nUID:r1\r\n"
+				+ "END:VEVENT\r\nEND:VCALENDAR\r\n";
+		final EventManager em = new EventManager(new ByteArrayInputStream(feed.getBytes(StandardCharsets.UTF_8)));
+		assertTrue(em.getAllEvents().isEmpty());
+		final LocalDateTime from = LocalDateTime.of(2031, 3, 1, 0, 0);
+		final List<CalendarEvent> march = em.getEventsBetween(from, from.plusMonths(1));
+		assertEquals(4, march.size());
+		assertEquals(LocalDateTime.of(2031, 3, 5, 20, 0), march.get(0).getStartDate());
+		assertEquals(1, em.getEventsOn(new M4Date(LocalDateTime.of(2031, 3, 12, 9, 0))).size());
+		assertEquals(0, em.getEventsOn(new M4Date(LocalDateTime.of(2031, 3, 13, 9, 0))).size());
+	}
+
+	@Test
+	public void unknownByDaySkipped() {
+		final String feed = "BEGIN:VCALENDAR\r\nBEGIN:VEVENT\r\n"
+				+ "DTSTART:20310101T200000\r\nDTEND:20310101T230000\r\n"
+				+ "RRULE:FREQ=WEEKLY;BYDAY=WE,XX;COUNT=3\r\nSUMMARY:Rehearsal\r\nUID:r1\r\n"
+				+ "END:VEVENT\r\nEND:VCALENDAR\r\n";
+		final EventManager em = new EventManager(new ByteArrayInputStream(feed.getBytes(StandardCharsets.UTF_8)));
+		final List<LocalDateTime> found = new ArrayList<LocalDateTime>();
+		for (final CalendarEvent e : em.getAllEvents()) {
+			found.add(e.getStartDate());
+		}
+		assertEquals(dates("2031-01-01T20:00", "2031-01-08T20:00", "2031-01-15T20:00"), found);
+	}
+
+	@Test
+	public void openEndedGigSeriesListedAsGigs() {
+		final String feed = "BEGIN:VCALENDAR\r\nBEGIN:VEVENT\r\n"
+				+ "DTSTART:20200101T200000\r\nDTEND:20200101T230000\r\n"
+				+ "RRULE:FREQ=WEEKLY;BYDAY=WE\r\nSUMMARY:Gig confirmed\r\n"
+				+ "LOCATION:The Grapes\\, Trippet Lane\r\nUID:g1\r\n"
+				+ "END:VEVENT\r\nEND:VCALENDAR\r\n";
+		final EventManager em = new EventManager(buffer(feed));
+		assertTrue(em.getAllEvents().isEmpty());
+
+		final LocalDateTime now = LocalDateTime.now();
+		final List<CalendarEvent> gigs = em.getConfirmedGigs();
+		assertFalse(gigs.isEmpty());
+		assertTrue(gigs.get(0).getStartDate().isAfter(now));
+		assertTrue(gigs.get(0).getStartDate().isBefore(now.plusDays(8)));
+		for (final CalendarEvent gig : gigs) {
+			assertEquals(DayOfWeek.WEDNESDAY, gig.getStartDate().getDayOfWeek());
+			assertEquals(EventType.GIG, gig.getEventType());
+		}
+		assertEquals(gigs, em.getByType(EventType.GIG, now.toEpochSecond(ZoneOffset.UTC), true));
+
+		final EventQuery nextMonth = new EventQuery().withTypes(EventType.GIG).withConfirmed(true)
+				.withFrom(now).withTo(now.plusDays(28));
+		assertEquals(4, em.query(nextMonth).count());
+		assertEquals(gigs.get(0), em.query(nextMonth.withLimit(1)).findFirst().get());
+		assertEquals(gigs.get(3), em.query(nextMonth.withLatestFirst(true)).findFirst().get());
+	}
+
+	@Test
+	public void editedOpenEndedSeriesIsLatestUpdate() {
+		final String single = "BEGIN:VEVENT\r\nDTSTART:20990101T200000\r\nDTEND:20990101T230000\r\n"
+				+ "SUMMARY:Gig confirmed\r\nUID:g1\r\nLAST-MODIFIED:20240101T000000Z\r\nEND:VEVENT\r\n";
+		final String series = "BEGIN:VEVENT\r\nDTSTART:20200101T200000\r\nDTEND:20200101T230000\r\n"
+				+ "RRULE:FREQ=WEEKLY;BYDAY=WE\r\nSUMMARY:Rehearsal\r\nUID:r1\r\n"
+				+ "LAST-MODIFIED:%s\r\nEND:VEVENT\r\n";
+		final EventManager em = new EventManager(
+				buffer("BEGIN:VCALENDAR\r\n" + single + String.format(series, "20230101T000000Z") + "END:VCALENDAR\r\n"));
+		assertEquals("Gig confirmed", em.getLatestUpdate().getEvent().getSummary());
+		assertEquals(LocalDate.of(2024, 1, 1), em.getLatestUpdate().getLastUpdated().toLocalDate());
+
+		em.updateFromFeed(
+				buffer("BEGIN:VCALENDAR\r\n" + single + String.format(series, "20250601T000000Z") + "END:VCALENDAR\r\n"));
+		assertEquals(LocalDate.of(2025, 6, 1), em.getLatestUpdate().getLastUpdated().toLocalDate());
+		assertEquals("Rehearsal", em.getLatestUpdate().getEvent().getSummary());
+	}
+
+	@Test
+	public void excludedAndOverriddenInstances() {
+		final String master = "BEGIN:VEVENT\r\nDTSTART;TZID=Europe/London:20990107T200000\r\n"
+				+ "DTEND;TZID=Europe/London:20990107T230000\r\nRRULE:FREQ=WEEKLY;COUNT=4\r\n"
+				+ "EXDATE;VALUE=DATE:20990114\r\nSUMMARY:Rehearsal\r\nUID:r2\r\n"
+				+ "LAST-MODIFIED:20981201T000000Z\r\nEND:VEVENT\r\n";
+		final String override = "BEGIN:VEVENT\r\nRECURRENCE-ID;TZID=Europe/London:20990121T200000\r\n"
+				+ "DTSTART;TZID=Europe/London:20990122T210000\r\nDTEND;TZID=Europe/London:20990122T230000\r\n"
+				+ "SUMMARY:Rehearsal (moved)\r\nUID:r2\r\nLAST-MODIFIED:20981202T000000Z\r\nEND:VEVENT\r\n";
+		final String before = "BEGIN:VCALENDAR\r\n" + master + "END:VCALENDAR\r\n";
+		final String after = "BEGIN:VCALENDAR\r\n" + override + master + "END:VCALENDAR\r\n";
+
+		final List<LocalDateTime> expected = dates("2099-01-07T20:00", "2099-01-22T21:00", "2099-01-28T20:00");
+		assertEquals(expected, starts(new EventManager(buffer(after)).getAllEvents()));
+		assertEquals(expected, starts(new EventManager(buffer(after), 64, false).getAllEvents()));
+
+		final EventManager incremental = new EventManager(buffer(before), 0, true);
+		assertEquals(dates("2099-01-07T20:00", "2099-01-21T20:00", "2099-01-28T20:00"),
+				starts(incremental.getAllEvents()));
+		incremental.updateFromFeed(buffer(after));
+		assertEquals(expected, starts(incremental.getAllEvents()));
+	}
+
+	private static ByteBuffer buffer(final String feed) {
+		return ByteBuffer.wrap(feed.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static List<LocalDateTime> starts(final List<CalendarEvent> events) {
+		final List<LocalDateTime> starts = new ArrayList<LocalDateTime>();
+		for (final CalendarEvent e : events) {
+			starts.add(e.getStartDate());
+		}
+		return starts;
+	}
+
+	private static RRule rule(final RepeatType freq) {
+		final RRule rule = new RRule("FREQ=" + freq);
+		rule.setFreq(freq);
+		return rule;
+	}
+
+	private static List<LocalDateTime> all(final RRule rule) {
+		return list(new Recurrence(rule, seconds(START), HOUR).occurrences(Long.MIN_VALUE, Long.MAX_VALUE));
+	}
+
+	private static List<LocalDateTime> list(final PrimitiveIterator.OfLong itr) {
+		final List<LocalDateTime> dates = new ArrayList<LocalDateTime>();
+		while (itr.hasNext()) {
+			dates.add(LocalDateTime.ofEpochSecond(itr.nextLong(), 0, ZoneOffset.UTC));
+		}
+		return dates;
+	}
+
+	private static List<LocalDateTime> dates(final String... dates) {
+		final List<LocalDateTime> list = new ArrayList<LocalDateTime>();
+		for (final String d : dates) {
+			list.add(LocalDateTime.parse(d));
+		}
+		return list;
+	}
+
+	private static long seconds(final LocalDateTime d) {
+		return d.toEpochSecond(ZoneOffset.UTC);
+	}
+}
@@ -0,0 +1,38 @@
+/**
+ * @author sik
+ *
+ */
+package com.sik.ivb.events;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sik.ivb.api.CalendarEvent;
+
+/**
+ * The original duplicate suppression, kept for tests and benchmarks as the
+ * reference for the type index: an event is dropped if one of the same type
+ * already kept starts on the same day - a scan of the kept events per event.
+ */
+public class SameDayScan {
+
+	public static List<CalendarEvent> suppressDupes(final List<CalendarEvent> events) {
+		final List<CalendarEvent> kept = new ArrayList<CalendarEvent>();
+		for (final CalendarEvent e : events) {
+			if (!sameDayAndType(e, kept)) {
+				kept.add(e);
+			}
+		}
+		return kept;
+	}
+
+	private static boolean sameDayAndType(final CalendarEvent e, final List<CalendarEvent> kept) {
+		for (final CalendarEvent k : kept) {
+			if (k.getEventType() == e.getEventType()
+					&& k.getStartDate().toLocalDate().equals(e.getStartDate().toLocalDate())) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
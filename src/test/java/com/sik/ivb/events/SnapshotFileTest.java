@@ -0,0 +1,83 @@
+/**
+ * @author sik
+ *
+ */
+package com.sik.ivb.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.sik.ivb.api.CalendarEvent;
+
+public class SnapshotFileTest {
+	private static final String OPEN_SERIES = "BEGIN:VEVENT\r\n"
+			+ "DTSTART:20200101T200000\r\nDTEND:20200101T230000\r\n"
+			+ "RRULE:FREQ=WEEKLY;BYDAY=WE,2SA\r\nEXDATE;VALUE=DATE:20310312\r\n"
+			+ "SUMMARY:Rehearsal - Bestätigt\r\nUID:r1\r\nEND:VEVENT\r\n";
+
+	@Test
+	public void restoredSnapshotMatches() throws IOException {
+		final Path file = Files.createTempDirectory("snapshottest").resolve("events.snapshot");
+		final String feed = SyntheticFeed.build(2000).replace("END:VCALENDAR", OPEN_SERIES + "END:VCALENDAR");
+		final EventManager saved = new EventManager(0, false, EventClassifier.DEFAULT);
+		assertFalse(saved.restore(file));
+		saved.updateFromFeed(ByteBuffer.wrap(feed.getBytes(StandardCharsets.UTF_8)));
+		assertTrue(Files.exists(file));
+
+		final EventManager restored = new EventManager(0, false, EventClassifier.DEFAULT);
+		assertTrue(restored.restore(file));
+		assertEquals(saved.getSnapshot().getVersion(), restored.getSnapshot().getVersion());
+		assertEquals(strings(saved.getAllEvents()), strings(restored.getAllEvents()));
+		final LocalDateTime from = LocalDateTime.of(2031, 3, 1, 0, 0);
+		final List<CalendarEvent> march = restored.getEventsBetween(from, from.plusMonths(1));
+		assertEquals(strings(saved.getEventsBetween(from, from.plusMonths(1))), strings(march));
+		assertEquals(strings(saved.getConfirmedGigs()), strings(restored.getConfirmedGigs()));
+
+		// refreshes carry on from the restored version, saving as they go
+		restored.updateFromFeed(ByteBuffer.wrap(SyntheticFeed.bytes(10)));
+		final EventManager next = new EventManager(0, false, EventClassifier.DEFAULT);
+		assertTrue(next.restore(file));
+		assertEquals(saved.getSnapshot().getVersion() + 1, next.getSnapshot().getVersion());
+		assertEquals(strings(restored.getAllEvents()), strings(next.getAllEvents()));
+	}
+
+	@Test
+	public void unusableFilesIgnored() throws IOException {
+		final Path dir = Files.createTempDirectory("snapshottest");
+		final EventManager em = new EventManager(0, false, EventClassifier.DEFAULT);
+		assertFalse(em.restore(dir.resolve("events.snapshot")));
+		em.updateFromFeed(ByteBuffer.wrap(SyntheticFeed.bytes(100)));
+		final byte[] good = Files.readAllBytes(dir.resolve("events.snapshot"));
+
+		final Path other = dir.resolve("other.snapshot");
+		Files.write(other, "not a snapshot".getBytes(StandardCharsets.UTF_8));
+		assertFalse(new EventManager(0, false, EventClassifier.DEFAULT).restore(other));
+
+		final Path truncated = dir.resolve("truncated.snapshot");
+		Files.write(truncated, Arrays.copyOf(good, good.length / 2));
+		final EventManager partial = new EventManager(0, false, EventClassifier.DEFAULT);
+		assertFalse(partial.restore(truncated));
+		assertTrue(partial.getAllEvents().isEmpty());
+	}
+
+	private static List<String> strings(final List<CalendarEvent> events) {
+		final List<String> strings = new ArrayList<String>();
+		for (final CalendarEvent e : events) {
+			strings.add(e.toString());
+		}
+		return strings;
+	}
+}
@@ -0,0 +1,93 @@
+/**
+ * @author sik
+ *
+ */
+package com.sik.ivb.events;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Builds a Google style iCalendar export of the requested size for tests and
+ * benchmarks - a mix of gigs, rehearsals (weekly RRULE with EXDATEs) and
+ * unavailability, with alarms, attendees and folded descriptions.
+ */
+public class SyntheticFeed {
+	private static final DateTimeFormatter ICS_DF = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+	private static final DateTimeFormatter ICS_DATE = DateTimeFormatter.ofPattern("yyyyMMdd");
+	private static final String CRLF = "\r\n";
+	private static final int FOLD_AT = 75;
+
+	public static String build(final int events) {
+		final LocalDateTime base = LocalDateTime.now().withHour(20).withMinute(0).withSecond(0).withNano(0);
+		final StringBuilder sb = new StringBuilder();
+		sb.append("BEGIN:VCALENDAR").append(CRLF)
+			.append("PRODID:-//Google Inc//Google Calendar 70.9054//EN").append(CRLF)
+			.append("VERSION:2.0").append(CRLF);
+		for (int i = 0; i < events; i++) {
+			final LocalDateTime start = base.plusDays(i % 700).plusHours(i % 3);
+			sb.append("BEGIN:VEVENT").append(CRLF);
+			switch (i % 4) {
+			case 0:
+				sb.append("DTSTART:").append(start.format(ICS_DF)).append(CRLF);
+				sb.append("DTEND:").append(start.plusHours(3).format(ICS_DF)).append(CRLF);
+				sb.append("SUMMARY:Gig confirmed ").append(i).append(CRLF);
+				sb.append("LOCATION:The Grapes\\, Trippet Lane\\, Sheffield S1 4EL").append(CRLF);
+				break;
+			case 1:
+				sb.append("DTSTART;TZID=Europe/London:").append(start.format(ICS_DF), 0, 15).append(CRLF);
+				sb.append("DTEND;TZID=Europe/London:").append(start.plusHours(2).format(ICS_DF), 0, 15).append(CRLF);
+				sb.append("RRULE:FREQ=WEEKLY;UNTIL=").append(start.plusWeeks(10).format(ICS_DF)).append(CRLF);
+				sb.append("EXDATE;TZID=Europe/London:").append(start.plusWeeks(2).format(ICS_DF), 0, 15).append(CRLF);
+				sb.append("SUMMARY:Rehearsal ").append(i).append(CRLF);
+				sb.append("LOCATION:").append(CRLF);
+				break;
+			case 2:
+				sb.append("DTSTART;VALUE=DATE:").append(start.format(ICS_DATE)).append(CRLF);
+				sb.append("DTEND;VALUE=DATE:").append(start.plusDays(2).format(ICS_DATE)).append(CRLF);
+				sb.append("SUMMARY:Steve unavailable").append(CRLF);
+				sb.append("LOCATION:").append(CRLF);
+				break;
+			default:
+				sb.append("DTSTART:").append(start.format(ICS_DF)).append(CRLF);
+				sb.append("DTEND:").append(start.plusHours(4).format(ICS_DF)).append(CRLF);
+				sb.append("SUMMARY:Gig - private party ").append(i).append(CRLF);
+				sb.append("LOCATION:Private venue").append(CRLF);
+				sb.append("CLASS:PRIVATE").append(CRLF);
+				break;
+			}
+			sb.append("DTSTAMP:").append(base.format(ICS_DF)).append(CRLF);
+			sb.append("UID:").append(i).append("-synthetic@google.com").append(CRLF);
+			sb.append("ATTENDEE;CUTYPE=INDIVIDUAL;ROLE=REQ-PARTICIPANT;PARTSTAT=ACCEPTED;CN=Mark IV;X-NUM-GUESTS=0:mailto:markiv.band@gmail.com").append(CRLF);
+			sb.append("CREATED:").append(base.minusDays(30).format(ICS_DF)).append(CRLF);
+			fold(sb, "DESCRIPTION:Set list A then B\\nLoad in from 6pm\\, sound check 7pm. Parking at the rear of the venue"
+					+ " - ask at the bar for the key. Fee GBP 300 (" + i + ")");
+			sb.append("LAST-MODIFIED:").append(base.minusDays(i % 20).format(ICS_DF)).append(CRLF);
+			sb.append("SEQUENCE:0").append(CRLF);
+			sb.append("STATUS:CONFIRMED").append(CRLF);
+			sb.append("TRANSP:OPAQUE").append(CRLF);
+			sb.append("BEGIN:VALARM").append(CRLF)
+				.append("ACTION:DISPLAY").append(CRLF)
+				.append("DESCRIPTION:This is an event reminder").append(CRLF)
+				.append("TRIGGER:-P0DT0H30M0S").append(CRLF)
+				.append("END:VALARM").append(CRLF);
+			sb.append("END:VEVENT").append(CRLF);
+		}
+		sb.append("END:VCALENDAR").append(CRLF);
+		return sb.toString();
+	}
+
+	public static byte[] bytes(final int events) {
+		return build(events).getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static void fold(final StringBuilder sb, final String line) {
+		int from = 0;
+		while (line.length() - from > FOLD_AT) {
+			sb.append(line, from, from + FOLD_AT).append(CRLF).append(' ');
+			from += FOLD_AT;
+		}
+		sb.append(line, from, line.length()).append(CRLF);
+	}
+}
@@ -0,0 +1,41 @@
+/**
+ * @author sik
+ *
+ */
+package com.sik.ivb.events;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.sik.ivb.MicroBench;
+import com.sik.ivb.api.CalendarEvent;
+import com.sik.ivb.api.EventType;
+
+/**
+ * getByType with duplicate suppression: the one pass over the start sorted
+ * type index vs the original scan of the kept events per event.
+ * Right-click and do: Run As > JUnit
+ */
+public class TypeIndexBenchmark {
+	private static final int EVENTS = 32000;
+
+	@Test
+	public void suppressDupes() {
+		final EventManager em = new EventManager(ByteBuffer.wrap(SyntheticFeed.bytes(EVENTS)));
+		final long startTime = LocalDateTime.now().minusDays(1).toEpochSecond(ZoneOffset.UTC);
+		final List<CalendarEvent> all = em.getByType(EventType.GIG, startTime, false);
+		final List<CalendarEvent> perDay = SameDayScan.suppressDupes(all);
+		assertEquals(perDay, em.getByType(EventType.GIG, startTime, true));
+
+		System.out.println(String.format("%,d gigs on %,d days", all.size(), perDay.size()));
+		MicroBench.time("same day scan (quadratic)", () -> SameDayScan.suppressDupes(all));
+		MicroBench.time("type index, one pass on epoch day", () -> em.getByType(EventType.GIG, startTime, true));
+		MicroBench.time("type index, no suppression", () -> em.getByType(EventType.GIG, startTime, false));
+	}
+}
@@ -0,0 +1,76 @@
+/**
+ * @author sik
+ *
+ */
+package com.sik.ivb.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.sik.ivb.api.CalendarEvent;
+import com.sik.ivb.api.EventType;
+
+public class TypeIndexTest {
+	private final EventManager em = new EventManager(ByteBuffer.wrap(SyntheticFeed.bytes(2000)));
+
+	@Test
+	public void byTypeMatchesScan() {
+		final LocalDateTime[] froms = { LocalDateTime.now().minusYears(1), LocalDateTime.now(),
+				LocalDateTime.now().plusDays(100), LocalDateTime.now().plusYears(10) };
+		for (final LocalDateTime from : froms) {
+			final long startTime = from.toEpochSecond(ZoneOffset.UTC);
+			final LocalDateTime after = LocalDateTime.ofEpochSecond(startTime, 0, ZoneOffset.UTC);
+			for (final EventType type : EventType.values()) {
+				final List<CalendarEvent> expected = new ArrayList<CalendarEvent>();
+				for (final CalendarEvent e : this.em.getAllEvents()) {
+					if (e.getEventType() == type && e.getStartDate().isAfter(after)) {
+						expected.add(e);
+					}
+				}
+				assertEquals(expected, this.em.getByType(type, startTime, false));
+			}
+			final List<CalendarEvent> expected = new ArrayList<CalendarEvent>();
+			for (final CalendarEvent e : this.em.getAllEvents()) {
+				if (e.getStartDate().isAfter(after)) {
+					expected.add(e);
+				}
+			}
+			assertEquals(expected, this.em.getEventsAfter(startTime));
+		}
+	}
+
+	@Test
+	public void dupesSuppressedAsBySameDayScan() {
+		final long startTime = LocalDateTime.now().minusYears(1).toEpochSecond(ZoneOffset.UTC);
+		for (final EventType type : EventType.values()) {
+			assertEquals(SameDayScan.suppressDupes(this.em.getByType(type, startTime, false)),
+					this.em.getByType(type, startTime, true));
+		}
+	}
+
+	@Test
+	public void confirmedGigsFromNowOnePerDay() {
+		final List<CalendarEvent> gigs = this.em.getConfirmedGigs();
+		assertFalse(gigs.isEmpty());
+		final LocalDateTime now = LocalDateTime.now();
+		CalendarEvent previous = null;
+		for (final CalendarEvent e : gigs) {
+			assertEquals(EventType.GIG, e.getEventType());
+			assertEquals(Boolean.TRUE, e.isConfirmed());
+			assertFalse(e.getStartDate().isBefore(now));
+			if (previous != null) {
+				assertFalse(previous.getStartDate().toLocalDate().equals(e.getStartDate().toLocalDate()));
+			}
+			previous = e;
+		}
+	}
+
+}
@@ -0,0 +1,197 @@
+/**
+ * @author sik
+ *
+ */
+package com.sik.ivb.google.calendar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sik.ivb.api.CalendarEvent;
+import com.sik.ivb.events.EventManager;
+import com.sik.ivb.events.SyntheticFeed;
+import com.sik.ivb.exception.MarkIVException;
+import com.sik.ivb.utils.PropsUtils;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Conditional GET against an embedded stand-in for the Google calendar server
+ */
+public class MarkIVCalendarFeedTest {
+	private static final String[] MEMBERS = { "dave", "pete", "steve" };
+	private static final long SLOW_MILLIS = 500;
+	private HttpServer server;
+	private Path dir;
+	private volatile byte[] body;
+	private volatile String etag;
+	private final AtomicLong bytesSent = new AtomicLong();
+	private final AtomicInteger notModified = new AtomicInteger();
+
+	@Before
+	public void init() throws IOException {
+		this.body = SyntheticFeed.bytes(200);
+		this.etag = "\"v1\"";
+		this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		this.server.createContext("/basic.ics", exchange -> {
+			if (this.etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				this.notModified.incrementAndGet();
+				exchange.sendResponseHeaders(304, -1);
+			} else {
+				exchange.getResponseHeaders().set("ETag", this.etag);
+				exchange.sendResponseHeaders(200, this.body.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(this.body);
+				}
+				this.bytesSent.addAndGet(this.body.length);
+			}
+			exchange.close();
+		});
+		// like the real server, answer requests concurrently
+		this.server.setExecutor(Executors.newCachedThreadPool());
+		this.server.start();
+
+		this.dir = Files.createTempDirectory("feedtest");
+		final Properties props = new Properties();
+		props.setProperty("FeedUrl", "http://localhost:" + this.server.getAddress().getPort() + "/basic.ics");
+		props.setProperty("FeedCacheFile", this.dir.resolve("basic.ics").toString());
+		new PropsUtils().writeProperties(props, this.dir.resolve("markiv.properties").toString());
+	}
+
+	@After
+	public void shutdown() {
+		this.server.stop(0);
+	}
+
+	@Test
+	public void notModifiedSkipsTransferAndParse() throws IOException {
+		final MarkIVCalendarFeed feed = new MarkIVCalendarFeed(this.dir.resolve("markiv.properties").toString());
+		final EventManager em = new EventManager(feed.getFeed());
+		assertEquals(this.body.length, this.bytesSent.get());
+		assertTrue(Files.exists(this.dir.resolve("basic.ics")));
+
+		final List<CalendarEvent> before = em.getAllEvents();
+		assertFalse(em.updateFromFeed(feed));
+		assertSame(before, em.getAllEvents());
+		assertEquals(this.body.length, this.bytesSent.get());
+		assertEquals(1, this.notModified.get());
+
+		// a restart revalidates the on-disk copy rather than downloading it again
+		final MarkIVCalendarFeed restarted = new MarkIVCalendarFeed(this.dir.resolve("markiv.properties").toString());
+		assertEquals(before.size(), new EventManager(restarted.getFeed()).getAllEvents().size());
+		assertEquals(this.body.length, this.bytesSent.get());
+		assertEquals(2, this.notModified.get());
+
+		this.body = SyntheticFeed.bytes(201);
+		this.etag = "\"v2\"";
+		assertTrue(em.updateFromFeed(feed));
+		assertNotSame(before, em.getAllEvents());
+		assertEquals(SyntheticFeed.bytes(200).length + this.body.length, this.bytesSent.get());
+	}
+
+	@Test
+	public void failedCacheWriteFetchedAgain() throws IOException {
+		final MarkIVCalendarFeed feed = new MarkIVCalendarFeed(this.dir.resolve("markiv.properties").toString());
+		final EventManager em = new EventManager(feed.getFeed());
+
+		this.body = SyntheticFeed.bytes(201);
+		this.etag = "\"v2\"";
+		// a non empty directory where the temp file goes - the cache write fails
+		final Path tmp = Files.createDirectory(this.dir.resolve("basic.ics.tmp"));
+		Files.createFile(tmp.resolve("in-the-way"));
+		try {
+			em.updateFromFeed(feed);
+			fail();
+		} catch (final MarkIVException e) {
+			// expected
+		}
+		Files.delete(tmp.resolve("in-the-way"));
+		Files.delete(tmp);
+
+		assertTrue(em.updateFromFeed(feed));
+		assertEquals(0, this.notModified.get());
+		assertEquals(new EventManager(ByteBuffer.wrap(this.body)).getAllEvents().size(), em.getAllEvents().size());
+	}
+
+	@Test
+	public void uncachedBodyNotParsedFetchedAgain() throws IOException {
+		final Properties props = new Properties();
+		props.setProperty("FeedUrl", "http://localhost:" + this.server.getAddress().getPort() + "/basic.ics");
+		new PropsUtils().writeProperties(props, this.dir.resolve("uncached.properties").toString());
+		final MarkIVCalendarFeed feed = new MarkIVCalendarFeed(this.dir.resolve("uncached.properties").toString());
+
+		// fetched but never parsed, as if the parse had failed
+		feed.getFeedIfModified().close();
+		final EventManager em = new EventManager(0, false, feed.getClassifier());
+		assertTrue(em.updateFromFeed(feed));
+		assertEquals(0, this.notModified.get());
+		assertFalse(em.updateFromFeed(feed));
+		assertEquals(1, this.notModified.get());
+	}
+
+	@Test
+	public void calendarsFetchedConcurrentlyAndMerged() throws IOException {
+		final String base = "http://localhost:" + this.server.getAddress().getPort() + "/";
+		final StringBuilder urls = new StringBuilder();
+		for (int i = 0; i < MEMBERS.length; i++) {
+			final byte[] calendar = SyntheticFeed.bytes(100 * (i + 1));
+			this.server.createContext("/" + MEMBERS[i] + ".ics", exchange -> {
+				try {
+					Thread.sleep(SLOW_MILLIS);
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				exchange.sendResponseHeaders(200, calendar.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(calendar);
+				}
+				exchange.close();
+			});
+			urls.append(i == 0 ? "" : ",").append(base).append(MEMBERS[i]).append(".ics");
+		}
+		final Properties props = new Properties();
+		props.setProperty("FeedUrl", urls.toString());
+		props.setProperty("FeedNames", String.join(",", MEMBERS));
+		new PropsUtils().writeProperties(props, this.dir.resolve("band.properties").toString());
+
+		final MarkIVCalendarFeed feed = new MarkIVCalendarFeed(this.dir.resolve("band.properties").toString());
+		final List<MarkIVCalendarFeed> calendars = feed.getCalendars();
+		assertEquals(MEMBERS.length, calendars.size());
+		assertSame(feed, calendars.get(0));
+
+		final long start = System.nanoTime();
+		final EventManager em = new EventManager(calendars, MEMBERS.length, 0, false, feed.getClassifier());
+		final long millis = (System.nanoTime() - start) / 1000000;
+		assertTrue("refresh took " + millis + "ms", millis < 2 * SLOW_MILLIS);
+
+		final Map<String, Integer> bySource = new HashMap<String, Integer>();
+		for (final CalendarEvent e : em.getAllEvents()) {
+			bySource.merge(e.getSource(), 1, Integer::sum);
+		}
+		for (int i = 0; i < MEMBERS.length; i++) {
+			assertEquals(new EventManager(ByteBuffer.wrap(SyntheticFeed.bytes(100 * (i + 1)))).getAllEvents().size(),
+					bySource.get(MEMBERS[i]).intValue());
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/**
+ * @author sik
+ *
+ */
+package com.sik.ivb.html;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class HtmlManagerTest {
+	private static final String HEADER = "<html>\r\n<head><title>Gigs – 2024</title></head>\r\n<body>";
+	private static final String TRAILER = "</body>\n</html>";
+
+	private final HtmlManager htmlMgr = new HtmlManager();
+	private Path dir;
+	private Path header;
+	private Path trailer;
+
+	@Before
+	public void init() throws IOException {
+		this.dir = Files.createTempDirectory("htmltest");
+		this.header = Files.write(this.dir.resolve("header.html"), HEADER.getBytes(StandardCharsets.UTF_8));
+		this.trailer = Files.write(this.dir.resolve("trailer.html"), TRAILER.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void pageIsTemplateBytesAroundBody() throws IOException {
+		final Path page = this.dir.resolve("gigs.html");
+		final String body = "<p>Café</p>\n";
+		this.htmlMgr.writePage(page.toString(), this.header.toString(), body, this.trailer.toString());
+
+		final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		expected.write(Files.readAllBytes(this.header));
+		expected.write(body.getBytes(StandardCharsets.UTF_8));
+		expected.write(Files.readAllBytes(this.trailer));
+		assertArrayEquals(expected.toByteArray(), Files.readAllBytes(page));
+		assertEquals(HEADER, this.htmlMgr.readTemplate(this.header.toString()));
+	}
+
+	@Test
+	public void pageLargerThanBufferStreamed() throws IOException {
+		final Path page = this.dir.resolve("avail.html");
+		final StringBuilder expected = new StringBuilder(HEADER);
+		this.htmlMgr.writePage(page.toString(), this.header.toString(), out -> {
+			for (int i = 0; i < 20000; i++) {
+				final String row = "<font color=\"green\">Sun " + i + " – Available</font>\n";
+				out.append(row);
+				expected.append(row);
+			}
+		}, this.trailer.toString());
+		expected.append(TRAILER);
+		assertEquals(expected.toString(), new String(Files.readAllBytes(page), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void failedPageLeavesPreviousInPlace() throws IOException {
+		final Path page = this.dir.resolve("news.html");
+		this.htmlMgr.writeHtmlFile(page.toString(), "old news");
+		try {
+			this.htmlMgr.writePage(page.toString(), this.header.toString(), out -> {
+				out.append("half a page");
+				throw new IOException("disk full");
+			}, this.trailer.toString());
+			fail();
+		} catch (final IOException e) {
+			assertEquals("disk full", e.getMessage());
+		}
+		assertEquals("old news", new String(Files.readAllBytes(page), StandardCharsets.UTF_8));
+		assertFalse(Files.exists(this.dir.resolve("news.html.tmp")));
+	}
+
+	@Test
+	public void editedTemplateIsReread() throws IOException {
+		assertEquals(TRAILER, this.htmlMgr.readTemplate(this.trailer.toString()));
+
+		// same size, so only the modification time shows the change
+		final FileTime modified = Files.getLastModifiedTime(this.trailer);
+		Files.write(this.trailer, "</BODY>\n</HTML>".getBytes(StandardCharsets.UTF_8));
+		Files.setLastModifiedTime(this.trailer, FileTime.fromMillis(modified.toMillis() + 1000));
+		assertEquals("</BODY>\n</HTML>", this.htmlMgr.readTemplate(this.trailer.toString()));
+
+		Files.write(this.trailer, "</html>".getBytes(StandardCharsets.UTF_8));
+		Files.setLastModifiedTime(this.trailer, modified);
+		assertEquals("</html>", this.htmlMgr.readTemplate(this.trailer.toString()));
+	}
+}
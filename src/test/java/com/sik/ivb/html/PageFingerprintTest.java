@@ -0,0 +1,71 @@
+/**
+ * @author sik
+ *
+ */
+package com.sik.ivb.html;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.sik.ivb.events.EventManager;
+import com.sik.ivb.events.EventSnapshot;
+import com.sik.ivb.events.SyntheticFeed;
+
+/**
+ * Each page's fingerprint follows its own slice of the calendar. The synthetic
+ * feed has a gig every fourth day, event i on day i
+ */
+public class PageFingerprintTest {
+	private static final String FEED = SyntheticFeed.build(700);
+
+	@Test
+	public void sameCalendarSameFingerprints() {
+		final Pages before = new Pages(FEED);
+		final Pages after = new Pages(FEED);
+		assertEquals(before.gigs, after.gigs);
+		assertEquals(before.avail, after.avail);
+		assertEquals(before.news, after.news);
+	}
+
+	@Test
+	public void changeBeyondPagesChangesNone() {
+		final Pages before = new Pages(FEED);
+		final Pages after = new Pages(this.rename(600));
+		assertEquals(before.gigs, after.gigs);
+		assertEquals(before.avail, after.avail);
+		assertEquals(before.news, after.news);
+	}
+
+	@Test
+	public void changeToLaterGigChangesItsPages() {
+		final Pages before = new Pages(FEED);
+		final Pages after = new Pages(this.rename(100));
+		assertNotEquals(before.gigs, after.gigs);
+		assertNotEquals(before.avail, after.avail);
+		// not the next gig
+		assertEquals(before.news, after.news);
+	}
+
+	private String rename(final int gig) {
+		return FEED.replace("SUMMARY:Gig confirmed " + gig + "\r\n", "SUMMARY:Gig moved " + gig + "\r\n");
+	}
+
+	private static final class Pages {
+		private final long gigs;
+		private final long avail;
+		private final long news;
+
+		private Pages(final String feed) {
+			final EventManager em = new EventManager(ByteBuffer.wrap(feed.getBytes(StandardCharsets.UTF_8)));
+			final EventSnapshot events = em.getSnapshot();
+			this.gigs = new GigsAvailabilityBuilder(em).gigsFingerprint(events).get();
+			this.avail = new GigsAvailabilityBuilder(em).availFingerprint(events).get();
+			this.news = new NewsPageBuilder(em).newsFingerprint(events).get();
+		}
+	}
+}
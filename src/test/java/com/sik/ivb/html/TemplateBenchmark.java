@@ -0,0 +1,81 @@
+/**
+ * @author sik
+ *
+ */
+package com.sik.ivb.html;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.sik.ivb.MicroBench;
+
+/**
+ * The 400 row availability body rendered with String.format and the
+ * formats the template replaced vs the compiled template. Right-click and do:
+ * Run As > JUnit
+ */
+public class TemplateBenchmark {
+	private static final int ROWS = 400;
+	private static final int PAGES = 200;
+	private static final String FONT_COLOR_FMT = "<font color=\"%s\">";
+	private static final String AVAIL_FMT = "<li>%s - %s %s";
+	private static final String FONT_END = "</font>";
+	private static final String[] COLOURS = { HtmlSnippets.GREEN, HtmlSnippets.AMBER, HtmlSnippets.RED };
+
+	private final String[] colours = new String[ROWS];
+	private final String[] dates = new String[ROWS];
+	private final String[] available = new String[ROWS];
+	private final String[] remarks = new String[ROWS];
+	private final Template row = PageTemplates.defaults().get(PageTemplate.AVAIL_ROW);
+
+	@Test
+	public void benchmark() {
+		for (int i = 0; i < ROWS; i++) {
+			this.colours[i] = COLOURS[i % COLOURS.length];
+			this.dates[i] = "Sat " + (i % 28 + 1) + " Jun 2024";
+			this.available[i] = i % 3 == 0 ? "Available" : "";
+			this.remarks[i] = i % 3 == 0 ? "" : "Gig confirmed " + i + "(The Grapes, Trippet Lane) *";
+		}
+		assertEquals(this.formatted(), this.templated());
+
+		MicroBench.time("String.format x " + PAGES, () -> {
+			int length = 0;
+			for (int p = 0; p < PAGES; p++) {
+				length += this.formatted().length();
+			}
+			return length;
+		});
+		MicroBench.time("Template x " + PAGES, () -> {
+			int length = 0;
+			for (int p = 0; p < PAGES; p++) {
+				length += this.templated().length();
+			}
+			return length;
+		});
+	}
+
+	private String formatted() {
+		final StringBuilder out = new StringBuilder();
+		for (int i = 0; i < ROWS; i++) {
+			out.append(String.format(FONT_COLOR_FMT, this.colours[i]));
+			out.append(String.format(AVAIL_FMT, this.dates[i], this.available[i], this.remarks[i]));
+			out.append(FONT_END + HtmlSnippets.NEWLINE);
+		}
+		return out.toString();
+	}
+
+	private String templated() {
+		final StringBuilder out = new StringBuilder();
+		try {
+			for (int i = 0; i < ROWS; i++) {
+				this.row.render(out, this.colours[i], this.dates[i], this.available[i], this.remarks[i]);
+			}
+		} catch (final IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return out.toString();
+	}
+}
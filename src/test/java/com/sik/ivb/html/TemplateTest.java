@@ -0,0 +1,83 @@
+/**
+ * @author sik
+ *
+ */
+package com.sik.ivb.html;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+import org.junit.Test;
+
+import com.sik.ivb.exception.MarkIVException;
+
+public class TemplateTest {
+
+	@Test
+	public void placeholdersInAnyOrder() {
+		final Template t = Template.compile("row", "${b}-${a}-${b} ${c} $ {a} ${", "a", "b", "c");
+		assertEquals("2-1-2 null $ {a} ${", t.format(1, "2", null));
+	}
+
+	@Test
+	public void unknownPlaceholderRejected() {
+		try {
+			Template.compile("row", "<li>${date} ${venue}", "date");
+			fail();
+		} catch (final MarkIVException e) {
+			assertEquals("Template row - unknown placeholder: ${venue}", e.getMessage());
+		}
+	}
+
+	@Test
+	public void defaultsRenderThePages() {
+		final PageTemplates templates = PageTemplates.defaults();
+		assertEquals("<center><b2>Gigs</b2><table align=\"center\" border=\"0\">\n"
+				+ " <tr>\n"
+				+ "  <td align=\"right\"><n1>Date/Time - </n1></td>\n"
+				+ "  <td align=\"left\"><n1>Venue(Details)</n1></td><br>\n"
+				+ " </tr>\n",
+				templates.get(PageTemplate.GIGS_HEAD).format());
+		assertEquals("<tr><td align=\"right\"><strong>Sat 1 June 8PM - </strong></td>"
+				+ "<td><strong>The Grapes</strong></td></tr>\n"
+				+ "<tr><td align=\"right\"></td><td> Trippet Lane</td></tr>\n",
+				templates.get(PageTemplate.GIG_ROW).format("Sat 1 June 8PM", "The Grapes", " Trippet Lane"));
+		assertEquals("<n1>Calendar Last Updated 2024-06-01</n1>\n",
+				templates.get(PageTemplate.CALENDAR_UPDATED).format(LocalDate.of(2024, 6, 1)));
+		assertEquals("<font color=\"#FFFF88\"><li>Sat 1 Jun 2024 -  Rehearsal *</font>\n",
+				templates.get(PageTemplate.AVAIL_ROW).format(HtmlSnippets.AMBER, "Sat 1 Jun 2024", "", "Rehearsal *"));
+		assertEquals("<br><center><p>Page updated Sat Jun 01 20:00:00 BST 2024</p></center>",
+				templates.get(PageTemplate.PAGE_UPDATED).format("Sat Jun 01 20:00:00 BST 2024"));
+		assertEquals("<tr><td><center>\n"
+				+ "<img src=\"images/m4front.jpg\" width=\"50%\" height=\"50%\"><br>\n\n"
+				+ " <n1>Photo courtesy of \n"
+				+ "   <a href=\"http://www.elementalcore.com\" target=\"_blank\">Ian Jukes Photography</a>\n"
+				+ " </td>\n"
+				+ "<tr><td><center><b2>News</b2></center></td></tr></tr>\n"
+				+ "<tr><td><center>",
+				templates.get(PageTemplate.NEWS_HEAD).format());
+		assertEquals("<li>Our next gig is on <strong>Sat 1 June 8PM</strong> at <strong>The Grapes</strong>"
+				+ " - Hope to see you there<br><br>",
+				templates.get(PageTemplate.NEXT_GIG).format("Sat 1 June 8PM", "The Grapes"));
+		assertEquals("<tr><td><center><p>Page last updated at Sat Jun 01 20:00:00 BST 2024</p></center></td></tr>",
+				templates.get(PageTemplate.NEWS_UPDATED).format("Sat Jun 01 20:00:00 BST 2024"));
+	}
+
+	@Test
+	public void siteFileOverridesDefaults() throws IOException {
+		final Path file = Files.createTempFile("templates", ".properties");
+		Files.write(file, "avail.row=<li class=\"${colour}\">${date} ${remarks} – ${available}</li>\\n\n"
+				.getBytes(StandardCharsets.UTF_8));
+		final PageTemplates templates = PageTemplates.load(file.toString());
+		assertEquals("<li class=\"green\">Sun 2 Jun 2024  – Available</li>\n",
+				templates.get(PageTemplate.AVAIL_ROW).format("green", "Sun 2 Jun 2024", "Available", ""));
+		assertEquals(PageTemplates.defaults().get(PageTemplate.NEXT_GIG).format("a", "b"),
+				templates.get(PageTemplate.NEXT_GIG).format("a", "b"));
+	}
+}
@@ -0,0 +1,97 @@
+/**
+ * @author sik
+ *
+ */
+package com.sik.ivb.site;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sik.ivb.events.SyntheticFeed;
+import com.sik.ivb.utils.PropsUtils;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Startup with and without a saved snapshot, against a stand-in for the
+ * Google calendar server that answers only once the test releases it
+ */
+public class SiteTest {
+	private static final long WAIT_MILLIS = 10000;
+
+	private HttpServer server;
+	private Path propsFile;
+	private volatile CountDownLatch release = new CountDownLatch(0);
+	private final AtomicInteger answered = new AtomicInteger();
+
+	@Before
+	public void init() throws IOException {
+		final byte[] body = SyntheticFeed.bytes(5000);
+		this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		this.server.createContext("/basic.ics", exchange -> {
+			try {
+				this.release.await(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+			exchange.close();
+			this.answered.incrementAndGet();
+		});
+		this.server.setExecutor(Executors.newCachedThreadPool());
+		this.server.start();
+
+		final Path dir = Files.createTempDirectory("sitetest");
+		final Properties props = new Properties();
+		props.setProperty("ProjectName", "band");
+		props.setProperty("FeedUrl", "http://localhost:" + this.server.getAddress().getPort() + "/basic.ics");
+		props.setProperty("SnapshotFile", dir.resolve("events.snapshot").toString());
+		this.propsFile = dir.resolve("markiv.properties");
+		new PropsUtils().writeProperties(props, this.propsFile.toString());
+	}
+
+	@After
+	public void shutdown() {
+		this.server.stop(0);
+	}
+
+	@Test
+	public void warmStartServesBeforeFetch() throws InterruptedException {
+		final Site cold = new Site(this.propsFile.toString());
+		assertEquals(1, this.answered.get());
+
+		// the server holds the warm start's fetch until released
+		this.release = new CountDownLatch(1);
+		final Site warm = new Site(this.propsFile.toString());
+		assertEquals(1, this.answered.get());
+		final long restored = warm.getEventManager().getSnapshot().getVersion();
+		assertEquals(cold.getEventManager().getSnapshot().getVersion(), restored);
+		assertEquals(cold.getEventManager().getAllEvents(), warm.getEventManager().getAllEvents());
+
+		// then the feed is loaded in the background
+		this.release.countDown();
+		final long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+		while (warm.getEventManager().getSnapshot().getVersion() == restored
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		assertEquals(restored + 1, warm.getEventManager().getSnapshot().getVersion());
+		assertEquals(cold.getEventManager().getAllEvents(), warm.getEventManager().getAllEvents());
+	}
+}
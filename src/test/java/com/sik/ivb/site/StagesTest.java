@@ -0,0 +1,77 @@
+/**
+ * @author sik
+ *
+ */
+package com.sik.ivb.site;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.sik.ivb.exception.MarkIVException;
+
+public class StagesTest {
+	private static final long STAGE_MILLIS = 300;
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(4);
+	private final Stages stages = new Stages("test", this.executor);
+
+	@After
+	public void shutdown() {
+		this.executor.shutdown();
+	}
+
+	@Test
+	public void independentStagesOverlap() {
+		final long t0 = System.nanoTime();
+		final CompletableFuture<Boolean> gigs = this.stages.then(this.stages.start("gigs", this::slow), "upload gigs",
+				() -> true);
+		final CompletableFuture<Void> avail = this.stages.start("avail", this::slow);
+		final CompletableFuture<Void> news = this.stages.start("news", this::slow);
+		final CompletableFuture<Void> gallery = this.stages.start("gallery", this::slow);
+		this.stages.await(gigs, avail, news, gallery);
+		final long millis = (System.nanoTime() - t0) / 1000000;
+
+		// four slow builds on four threads, then a quick upload
+		assertTrue("update took " + millis + "ms", millis < 2 * STAGE_MILLIS);
+		assertTrue(gigs.join());
+	}
+
+	@Test
+	public void failedStageSkipsDependentsAndIsReported() {
+		final AtomicBoolean uploaded = new AtomicBoolean();
+		final AtomicBoolean other = new AtomicBoolean();
+		final CompletableFuture<Boolean> upload = this.stages.then(this.stages.start("gigs", () -> {
+			throw new MarkIVException("template missing");
+		}), "upload gigs", () -> uploaded.getAndSet(true));
+		final CompletableFuture<Void> news = this.stages.start("news", () -> {
+			this.slow();
+			other.set(true);
+		});
+		try {
+			this.stages.await(upload, news);
+			fail();
+		} catch (final MarkIVException e) {
+			assertEquals("template missing", e.getMessage());
+		}
+		assertFalse(uploaded.get());
+		assertTrue(other.get());
+	}
+
+	private void slow() {
+		try {
+			Thread.sleep(STAGE_MILLIS);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,68 @@
+/**
+ * @author sik
+ *
+ */
+package com.sik.ivb.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.LocalDateTime;
+
+import org.junit.Test;
+
+import com.sik.ivb.MicroBench;
+
+/**
+ * DateTimeFormatter based formatDate vs the hand rolled parser and the
+ * epoch second cache. Right-click and do: Run As > JUnit
+ */
+public class M4DateUtilsBenchmark {
+	private static final int DATES = 200000;
+	private static final int DISTINCT = 100;
+
+	private final M4DateUtils dateUtils = new M4DateUtils();
+
+	@Test
+	public void benchmark() {
+		final String[] dates = new String[DATES];
+		final long[] seconds = new long[DATES];
+		final LocalDateTime base = LocalDateTime.of(2020, 1, 1, 20, 0);
+		for (int i = 0; i < DATES; i++) {
+			final LocalDateTime d = base.plusDays(i % DISTINCT).plusMinutes(i % 60);
+			dates[i] = "TZID=Europe/London:" + String.format("%04d%02d%02dT%02d%02d%02d", d.getYear(),
+					d.getMonthValue(), d.getDayOfMonth(), d.getHour(), d.getMinute(), d.getSecond());
+			seconds[i] = this.dateUtils.toEpochSecond(d);
+			assertEquals(d, this.dateUtils.parseDate(dates[i]));
+			assertEquals(d, this.dateUtils.formatDate(this.dateUtils.stdDate(dates[i])));
+		}
+
+		MicroBench.time("formatDate(stdDate(s))", () -> {
+			LocalDateTime last = null;
+			for (final String s : dates) {
+				last = this.dateUtils.formatDate(this.dateUtils.stdDate(s));
+			}
+			return last;
+		});
+		MicroBench.time("parseEpochSecond(s)", () -> {
+			long sum = 0;
+			for (final String s : dates) {
+				sum += this.dateUtils.parseEpochSecond(s, 0, s.length());
+			}
+			return sum;
+		});
+		MicroBench.time("parseDate(s)", () -> {
+			LocalDateTime last = null;
+			for (final String s : dates) {
+				last = this.dateUtils.parseDate(s);
+			}
+			return last;
+		});
+		MicroBench.time("fromEpochSecond (cached)", () -> {
+			LocalDateTime last = null;
+			for (final long s : seconds) {
+				last = this.dateUtils.fromEpochSecond(s);
+			}
+			return last;
+		});
+	}
+}
@@ -0,0 +1,62 @@
+/**
+ * @author sik
+ *
+ */
+package com.sik.ivb.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.time.LocalDateTime;
+
+import org.junit.Test;
+
+public class M4DateUtilsTest {
+	private final M4DateUtils dateUtils = new M4DateUtils();
+
+	@Test
+	public void parseMatchesFormatDate() {
+		final String[] dates = { "20200101T200000Z", "20200229T000000", "19991231T235959Z", "20210704",
+				"21000301T120000", "19700101T000000Z", "16000229T010203" };
+		for (final String d : dates) {
+			assertEquals(d, this.dateUtils.formatDate(d), this.dateUtils.parseDate(d));
+		}
+	}
+
+	@Test
+	public void parseSkipsPropertyParameters() {
+		final LocalDateTime expected = LocalDateTime.of(2020, 1, 1, 20, 0);
+		assertEquals(expected, this.dateUtils.parseDate("TZID=Europe/London:20200101T200000"));
+		assertEquals(expected, this.dateUtils.formatLocalDate("20200101T200000"));
+		assertEquals(LocalDateTime.of(2020, 1, 1, 12, 34, 56), this.dateUtils.parseDate("VALUE=DATE:20200101"));
+	}
+
+	@Test
+	public void parseRange() {
+		final String exDates = "20200115T200000,20200122T200000";
+		assertEquals(this.dateUtils.toEpochSecond(LocalDateTime.of(2020, 1, 22, 20, 0)),
+				this.dateUtils.parseEpochSecond(exDates, 16, exDates.length()));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void rejectsBadLength() {
+		this.dateUtils.parseDate("2020011T200000");
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void rejectsBadDay() {
+		this.dateUtils.parseDate("20190229T200000");
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void rejectsNonDigit() {
+		this.dateUtils.parseDate("2020O101T200000");
+	}
+
+	@Test
+	public void epochSecondCache() {
+		final long s = this.dateUtils.toEpochSecond(LocalDateTime.of(2020, 6, 1, 21, 0));
+		assertSame(this.dateUtils.fromEpochSecond(s), this.dateUtils.fromEpochSecond(s));
+		assertEquals(LocalDateTime.of(2020, 6, 1, 21, 0), this.dateUtils.fromEpochSecond(s));
+	}
+}